@@ -0,0 +1,78 @@
+package com.cuecloud;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server standing in for the CueCloud API in benchmarks.
+ * Every request is answered with the same body, optionally after a delay standing in for
+ * the API's own latency.
+ *
+ * @author nmvictor
+ */
+class BenchStubServer {
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    static {
+        // The JDK server writes headers and body separately; without this, Nagle's algorithm and
+        // delayed ACKs add ~40ms to every response and the benchmark measures nothing else.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    BenchStubServer(String responseBody, int threads) throws IOException {
+        this(responseBody, threads, 0);
+    }
+
+    BenchStubServer(final String responseBody, int threads, final long delayMillis) throws IOException {
+        final byte[] bytes = responseBody.getBytes(StandardCharsets.UTF_8);
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] buffer = new byte[4096];
+                try (InputStream in = exchange.getRequestBody()) {
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+                if (delayMillis > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return The base URL to hand to {@link CueCloud}, ending with a slash.
+     */
+    String baseURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1.0/";
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
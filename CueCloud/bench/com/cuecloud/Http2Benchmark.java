@@ -0,0 +1,72 @@
+package com.cuecloud;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link #CONCURRENCY} threads making blocking {@link CueCloud#getCueCompletions} calls at once through
+ * the HTTP/1.1 connection pool or the HTTP/2 transport, against {@link Http2StubServer}, which answers
+ * after {@link #SERVER_DELAY_MILLIS}. Scores are call latencies, with percentiles; the number of
+ * connections the server accepted is printed at the end of each run.
+ * Run on Java 11 or later with <code>ant bench -Dbench.args=Http2Benchmark</code>.
+ *
+ * @author nmvictor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(Http2Benchmark.CONCURRENCY)
+public class Http2Benchmark {
+
+    static final int CONCURRENCY = 500;
+    static final int SERVER_DELAY_MILLIS = 20;
+
+    static {
+        // Keep the sockets of every concurrent HTTP/1.1 call alive, not just the JDK's default of 5 per host.
+        System.setProperty("http.maxConnections", String.valueOf(CONCURRENCY));
+    }
+
+    @Param({"HTTP_1_1", "HTTP_2"})
+    public String protocol;
+
+    private Http2StubServer server;
+    private CueCloud cueCloud;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new Http2StubServer("{\"Data\": {\"NumTotalResults\": 0, \"CueCompletions\": []}, \"StatusCode\": 200}",
+                SERVER_DELAY_MILLIS);
+        cueCloud = new CueCloud("bench-key", "bench-pass", server.baseURL(),
+                CueCloudTransports.newTransport(CueCloudTransports.Protocol.valueOf(protocol), CONCURRENCY, 5000, 30000));
+        // Upgrades to HTTP/2 before the threads start, so they share the connection rather than each upgrading its own.
+        cueCloud.getCueCompletions("cue-0", null, null, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println(protocol + ": " + server.connectionCount() + " connection(s), at most "
+                + server.maxConcurrentRequests() + " requests in flight");
+        server.stop();
+    }
+
+    @Benchmark
+    public String getCueCompletions() throws Exception {
+        return cueCloud.getCueCompletions("cue-1", null, null, 1);
+    }
+}
@@ -0,0 +1,303 @@
+package com.cuecloud;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process server standing in for the CueCloud API in benchmarks, speaking HTTP/1.1 with keep-alive
+ * and cleartext HTTP/2 to clients that ask to upgrade (<code>Upgrade: h2c</code>), as the JDK's
+ * <code>HttpClient</code> does for <code>http</code> URLs. Every request is answered with the same body
+ * after a delay standing in for the API's own latency; over HTTP/2 the delays of concurrent streams
+ * overlap on one connection.
+ * <p>
+ * Only what the benchmark needs of HTTP/2 is implemented: request headers are not decoded, the
+ * response headers are encoded with the static table only, and responses fit in one frame.
+ *
+ * @author nmvictor
+ */
+class Http2StubServer {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int DATA = 0;
+    private static final int HEADERS = 1;
+    private static final int SETTINGS = 4;
+    private static final int PING = 6;
+    private static final int GOAWAY = 7;
+    private static final int WINDOW_UPDATE = 8;
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int INITIAL_WINDOW = 65535;
+
+    private final ServerSocket serverSocket;
+    private final byte[] body;
+    private final long delayMillis;
+    private final ScheduledExecutorService responders = Executors.newScheduledThreadPool(4);
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile boolean stopped;
+
+    Http2StubServer(String responseBody, long delayMillis) throws IOException {
+        this.body = responseBody.getBytes(StandardCharsets.UTF_8);
+        this.delayMillis = delayMillis;
+        this.serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "http2-stub-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (!stopped) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (IOException e) {
+                            // The client went away.
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+                                // ignore
+                            }
+                        }
+                    }
+                }, "http2-stub-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers HTTP/1.1 requests on the connection until one asks to upgrade, then speaks HTTP/2.
+     */
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        while (!stopped) {
+            String requestLine = readLine(in);
+            if (requestLine == null) {
+                return;
+            }
+            int contentLength = 0;
+            boolean upgrade = false;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                String header = line.toLowerCase(Locale.ROOT);
+                if (header.startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                } else if (header.startsWith("upgrade:") && header.contains("h2c")) {
+                    upgrade = true;
+                }
+            }
+            in.readFully(new byte[contentLength]);
+            if (upgrade) {
+                out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                new Http2Connection(in, out).serve();
+                return;
+            }
+            started();
+            sleep();
+            finished();
+            out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /**
+     * One HTTP/2 connection, answering each request on its stream once the delay has passed.
+     */
+    private final class Http2Connection {
+        private final DataInputStream in;
+        private final OutputStream out;
+        private final Object writeLock = new Object();
+        private long sendWindow = INITIAL_WINDOW;
+
+        Http2Connection(DataInputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        void serve() throws IOException {
+            writeFrame(SETTINGS, 0, 0, new byte[0]);
+            byte[] preface = new byte[PREFACE.length];
+            in.readFully(preface);
+            if (!Arrays.equals(preface, PREFACE)) {
+                throw new IOException("Not an HTTP/2 client");
+            }
+            // The request that asked to upgrade is stream 1.
+            respondLater(1);
+            byte[] header = new byte[9];
+            while (!stopped) {
+                in.readFully(header);
+                int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | (header[2] & 0xff);
+                int type = header[3] & 0xff;
+                int flags = header[4] & 0xff;
+                int stream = ((header[5] & 0x7f) << 24) | (header[6] & 0xff) << 16 | (header[7] & 0xff) << 8 | (header[8] & 0xff);
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == HEADERS || type == DATA) {
+                    if (type == DATA && length > 0) {
+                        writeFrame(WINDOW_UPDATE, 0, 0, increment(length));
+                        writeFrame(WINDOW_UPDATE, 0, stream, increment(length));
+                    }
+                    if ((flags & END_STREAM) != 0) {
+                        respondLater(stream);
+                    }
+                } else if (type == SETTINGS && (flags & ACK) == 0) {
+                    writeFrame(SETTINGS, ACK, 0, new byte[0]);
+                } else if (type == PING && (flags & ACK) == 0) {
+                    writeFrame(PING, ACK, 0, payload);
+                } else if (type == WINDOW_UPDATE && stream == 0) {
+                    synchronized (writeLock) {
+                        sendWindow += ((payload[0] & 0x7f) << 24) | (payload[1] & 0xff) << 16 | (payload[2] & 0xff) << 8 | (payload[3] & 0xff);
+                        writeLock.notifyAll();
+                    }
+                } else if (type == GOAWAY) {
+                    return;
+                }
+            }
+        }
+
+        private void respondLater(final int stream) {
+            started();
+            responders.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    finished();
+                    try {
+                        respond(stream);
+                    } catch (IOException | InterruptedException e) {
+                        // The client went away.
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void respond(int stream) throws IOException, InterruptedException {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            // :status 200, indexed; content-type, a literal with its name from the static table.
+            block.write(0x88);
+            block.write(0x0f);
+            block.write(31 - 15);
+            byte[] contentType = "application/json".getBytes(StandardCharsets.US_ASCII);
+            block.write(contentType.length);
+            block.write(contentType);
+            synchronized (writeLock) {
+                while (sendWindow < body.length) {
+                    writeLock.wait();
+                }
+                sendWindow -= body.length;
+                writeFrame(HEADERS, END_HEADERS, stream, block.toByteArray());
+                writeFrame(DATA, END_STREAM, stream, body);
+            }
+        }
+
+        private void writeFrame(int type, int flags, int stream, byte[] payload) throws IOException {
+            synchronized (writeLock) {
+                out.write(new byte[]{(byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                    (byte) type, (byte) flags, (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8), (byte) stream});
+                out.write(payload);
+                out.flush();
+            }
+        }
+    }
+
+    private static byte[] increment(int length) {
+        return new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length};
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = line.length();
+                return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private void started() {
+        int concurrent = inFlight.incrementAndGet();
+        int max;
+        while (concurrent > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, concurrent)) {
+            // retry
+        }
+    }
+
+    private void finished() {
+        inFlight.decrementAndGet();
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The base URL to hand to {@link CueCloud}, ending with a slash.
+     */
+    String baseURL() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/api/v1.0/";
+    }
+
+    /**
+     * @return Number of connections accepted.
+     */
+    int connectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * @return The largest number of requests waiting for their response at once.
+     */
+    int maxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    void stop() {
+        stopped = true;
+        responders.shutdownNow();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
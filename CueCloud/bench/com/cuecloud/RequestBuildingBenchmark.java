@@ -0,0 +1,90 @@
+package com.cuecloud;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The CPU-bound steps of building a request, measured without any I/O: encoding the
+ * query string, serializing the body and signing.
+ * Run with <code>ant bench -Dbench.args=RequestBuildingBenchmark</code>.
+ *
+ * @author nmvictor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuildingBenchmark {
+
+    private static final String API_PASS = "2152b0f3cc1649fb";
+    private static final String BASE_URL = "https://cuecloud.com/api/v1.0/";
+
+    private HashMap<String, Object> cuesQuery;
+    private HashMap<String, Object> createCueBody;
+    private String message;
+    private final JsonWriter writer = new JsonWriter();
+
+    @Setup
+    public void setUp() {
+        cuesQuery = new HashMap<>();
+        cuesQuery.put("CueID", null);
+        cuesQuery.put("GroupID", 12);
+        cuesQuery.put("NoteToSelf", "campaign 2014/05 & co");
+        cuesQuery.put("HasPendingCueCompletions", true);
+        cuesQuery.put("Status", CueCloud.CueStatus.Active);
+        cuesQuery.put("Page", 3);
+
+        // The same fields CueCloud.createCue sends.
+        createCueBody = new HashMap<>();
+        createCueBody.put("Title", "Describe this picture");
+        createCueBody.put("Amount", 0.25);
+        createCueBody.put("NumOpportunities", 10);
+        createCueBody.put("IsAnonymous", false);
+        createCueBody.put("PushNotificationOnCueCompletion", null);
+        createCueBody.put("DisallowAnonymousCueCompletions", true);
+        createCueBody.put("iFrameURL", null);
+        createCueBody.put("URLNotificationOnCueCompletion", true);
+        createCueBody.put("EmailNotificationOnCueCompletion", false);
+        createCueBody.put("LifetimeInMinutes", 1440);
+        createCueBody.put("TimeLimitToCompleteCueInMinutes", 30);
+        createCueBody.put("AutoApproveCueCompletionAfterThisManyMinutes", 2880);
+        createCueBody.put("NoteToSelf", "campaign 2014/05");
+        createCueBody.put("Keywords", "image,description");
+
+        message = "1400000000000000" + BASE_URL + "cues/create" + new flexjson.JSONSerializer().serialize(createCueBody);
+    }
+
+    @Benchmark
+    public String urlWithQueryParams() {
+        return CueCloud.urlWithQueryParams(BASE_URL + "cues/", cuesQuery);
+    }
+
+    @Benchmark
+    public String serializeCreateCueBody() {
+        return new flexjson.JSONSerializer().serialize(createCueBody);
+    }
+
+    @Benchmark
+    public int writeCreateCueBody() {
+        writer.reset();
+        writer.writeObject(createCueBody);
+        return writer.length();
+    }
+
+    @Benchmark
+    public String hmacSha256Encode() throws Exception {
+        return CueCloud.HMAC_SHA256encode(API_PASS, message);
+    }
+}
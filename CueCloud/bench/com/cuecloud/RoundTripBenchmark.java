@@ -0,0 +1,69 @@
+package com.cuecloud;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full calls through {@link CueCloud}, from building and signing the request to decoding the
+ * response, against an in-process stub server over loopback keep-alive connections.
+ * The stub runs in the benchmark JVM, so the allocation figures include the server's share;
+ * compare them between runs rather than reading them as the client's cost.
+ * Run with <code>ant bench -Dbench.args=RoundTripBenchmark</code>.
+ *
+ * @author nmvictor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final String CUES_PAGE;
+
+    static {
+        StringBuilder cues = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            cues.append(i == 0 ? "" : ",").append("{\"ID\": ").append(1000 + i)
+                    .append(", \"Title\": \"Describe this picture\", \"Amount\": 0.25, \"NumOpportunities\": 10, \"Status\": \"Active\"}");
+        }
+        CUES_PAGE = "{\"Data\": {\"NumTotalResults\": 500, \"Cues\": [" + cues + "]}, \"StatusCode\": 200}";
+    }
+
+    private BenchStubServer server;
+    private CueCloud cueCloud;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new BenchStubServer(CUES_PAGE, 8);
+        cueCloud = new CueCloud("bench-key", "bench-pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public Page<Cue> fetchCuesPage() throws Exception {
+        return cueCloud.fetchCues(null, null, null, CueCloud.CueStatus.Active, null, 2);
+    }
+
+    @Benchmark
+    public Balance fetchBalance() throws Exception {
+        return cueCloud.fetchBalance();
+    }
+}
@@ -0,0 +1,58 @@
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares signing a request with {@link CueCloud#HMAC_SHA256encode(String, String)}, which sets up
+ * the key and MAC and concatenates the message for every call, with {@link CueCloudSigner}.
+ * Run with <code>ant bench -Dbench.args=SignerBenchmark</code>; the <code>gc.alloc.rate.norm</code>
+ * column shows the bytes allocated per signature.
+ *
+ * @author nmvictor
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignerBenchmark {
+
+    private static final String API_PASS = "2152b0f3cc1649fb";
+
+    private CueCloudSigner signer;
+    private String nonce;
+    private String url;
+    private String body;
+    private byte[] bodyBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        signer = new CueCloudSigner(API_PASS);
+        nonce = "1400000000000000";
+        url = "https://cuecloud.com/api/v1.0/completions/approve/";
+        body = "{\"CueCompletionID\":\"1234567\"}";
+        bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String hmacSha256Encode() throws Exception {
+        return CueCloud.HMAC_SHA256encode(API_PASS, nonce + url + body);
+    }
+
+    @Benchmark
+    public String signer() {
+        return signer.sign(nonce, url, bodyBytes);
+    }
+}
@@ -0,0 +1,92 @@
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fan-out of {@link #CALLS} concurrent blocking {@link CueCloud#getCueCompletions} calls, on a pool of
+ * {@link #PLATFORM_THREADS} platform threads or on one virtual thread per call. The stub answers after
+ * {@link #SERVER_DELAY_MILLIS}, so throughput is bound by how many calls can wait at once rather than
+ * by the CPU. Scores are calls per second.
+ * Run on Java 21 or later with <code>ant bench -Dbench.args=VirtualThreadBenchmark</code>; on earlier
+ * versions the <code>virtual</code> case fails with <code>UnsupportedOperationException</code>.
+ *
+ * @author nmvictor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    static final int CALLS = 10000;
+    static final int PLATFORM_THREADS = 200;
+    static final int SERVER_DELAY_MILLIS = 20;
+    static final int MAX_CONNECTIONS = 1000;
+
+    static {
+        // Keep the sockets of every concurrent call alive, not just the JDK's default of 5 per host.
+        System.setProperty("http.maxConnections", String.valueOf(MAX_CONNECTIONS));
+    }
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private BenchStubServer server;
+    private CueCloud cueCloud;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new BenchStubServer("{\"Data\": {\"NumTotalResults\": 0, \"CueCompletions\": []}, \"StatusCode\": 200}",
+                MAX_CONNECTIONS, SERVER_DELAY_MILLIS);
+        cueCloud = new CueCloud("bench-key", "bench-pass", server.baseURL(), new KeepAliveHttpTransport(MAX_CONNECTIONS, 5000, 30000));
+        executor = "virtual".equals(threads) ? CueCloudExecutors.newVirtualThreadPerTaskExecutor()
+                : CueCloudExecutors.newDaemonThreadPool("bench-", PLATFORM_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int getCueCompletions() throws Exception {
+        List<Future<String>> futures = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            final String cueID = "cue-" + i;
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cueCloud.getCueCompletions(cueID, null, null, null);
+                }
+            }));
+        }
+        int length = 0;
+        for (Future<String> future : futures) {
+            length += future.get().length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,25 @@
+package com.cuecloud;
+
+import java.util.Map;
+
+/**
+ * The user's balance, as returned by {@link CueCloud#fetchBalance()}.
+ *
+ * @author nmvictor
+ */
+public class Balance extends CueCloudObject {
+
+    /**
+     * @param fields The JSON fields of the balance.
+     */
+    public Balance(Map<String, Object> fields) {
+        super(fields);
+    }
+
+    /**
+     * @return The balance in USD.
+     */
+    public Double getBalance() {
+        return getDouble("Balance");
+    }
+}
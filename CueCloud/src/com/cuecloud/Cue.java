@@ -0,0 +1,81 @@
+package com.cuecloud;
+
+import java.util.Map;
+
+/**
+ * A Cue, as returned by {@link CueCloud#fetchCues(String, Integer, Boolean, CueCloud.CueStatus, String, Integer)}.
+ *
+ * @author nmvictor
+ */
+public class Cue extends CueCloudObject {
+
+    /**
+     * @param fields The JSON fields of the Cue.
+     */
+    public Cue(Map<String, Object> fields) {
+        super(fields);
+    }
+
+    /**
+     * @return The ID of the Cue.
+     */
+    public String getID() {
+        return getString("ID");
+    }
+
+    /**
+     * @return The title of the Cue.
+     */
+    public String getTitle() {
+        return getString("Title");
+    }
+
+    /**
+     * @return The description of the Cue.
+     */
+    public String getDescription() {
+        return getString("Description");
+    }
+
+    /**
+     * @return The amount paid per completion, in USD.
+     */
+    public Double getAmount() {
+        return getDouble("Amount");
+    }
+
+    /**
+     * @return Number of opportunities for this Cue.
+     */
+    public Integer getNumOpportunities() {
+        return getInteger("NumOpportunities");
+    }
+
+    /**
+     * @return The status of the Cue, or <code>null</code> if the server sent an unknown status.
+     */
+    public CueCloud.CueStatus getStatus() {
+        return getEnum("Status", CueCloud.CueStatus.class);
+    }
+
+    /**
+     * @return The ID of the group the Cue belongs to.
+     */
+    public Integer getGroupID() {
+        return getInteger("GroupID");
+    }
+
+    /**
+     * @return The note to self given when the Cue was created.
+     */
+    public String getNoteToSelf() {
+        return getString("NoteToSelf");
+    }
+
+    /**
+     * @return The keywords of the Cue.
+     */
+    public String getKeywords() {
+        return getString("Keywords");
+    }
+}
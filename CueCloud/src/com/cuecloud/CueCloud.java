@@ -1,17 +1,23 @@
 package com.cuecloud;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLEncoder;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.codec.binary.Hex;
@@ -23,15 +29,54 @@ import org.apache.commons.codec.binary.Hex;
  * 
  */
 public class CueCloud {
+    private static final Logger LOG = Logger.getLogger(CueCloud.class.getName());
+    private static final byte[] NO_BODY = new byte[0];
+    private static final ThreadLocal<JsonWriter> BODY_WRITER = new ThreadLocal<JsonWriter>() {
+        @Override
+        protected JsonWriter initialValue() {
+            return new JsonWriter();
+        }
+    };
     private static final String API_VERSION = "api/v1.0/";
     private static final String DEFAULT_BASE_URL = "https://cuecloud.com/";
+    static final String DEPOSIT_PATH = CueCloudEndpoint.DEPOSIT.path;
+    static final String WITHDRAW_PATH = CueCloudEndpoint.WITHDRAW.path;
+    static final String BONUS_PATH = CueCloudEndpoint.BONUS.path;
+    /**
+     * Number of calls {@link #approveAll(Collection)} and {@link #declineAll(Collection)} make at once.
+     * Matches the default connection pool size of {@link KeepAliveHttpTransport}.
+     */
+    public static final int DEFAULT_BATCH_CONCURRENCY = KeepAliveHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    /**
+     * Header carrying the client's key for a call, by which a server that deduplicates calls recognises
+     * a repeat of it and applies the call only once. The CueCloud API is not documented to honour it;
+     * see {@link #setIdempotencyKeysHonoured(boolean)}.
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
     private final String baseURL;
+    /**
+     * The URL of each {@link CueCloudEndpoint}, by ordinal.
+     */
+    private final String[] endpointURLs;
     private final String apiKey;
     private final String apiPass;
+    private final CueCloudTransport transport;
+    private final CueCloudSigner signer;
+    private final CueCloudNonceGenerator nonces;
+    private volatile CueCloudRateLimiter rateLimiter;
+    private volatile CueCloudCircuitBreaker circuitBreaker;
+    private volatile CueCloudRetryPolicy retryPolicy;
+    private volatile CueCloudCache cache;
+    private volatile boolean coalescingReads;
+    private volatile boolean idempotencyKeysHonoured;
+    private volatile CueCloudMetrics metrics = CueCloudMetrics.NONE;
+    private volatile double bodyLogSampleRate;
+    private volatile boolean virtualThreads;
+    private final SingleFlight<byte[]> sharedReads = new SingleFlight<>();
 
     /**
      * Concatenates <code>uri</code> with a query string generated from
-     * <code>params</code>.
+     * <code>params</code>. Parameters whose value is <code>null</code> are left out.
      *
      * @param uri the base URI
      * @param params a <code>Map</code> of key/value pairs
@@ -42,6 +87,9 @@ public class CueCloud {
         StringBuilder query = new StringBuilder();
         char separator = '?';
         for (Entry<String, Object> param : params.entrySet()) {
+            if (param.getValue() == null) {
+                continue;
+            }
             query.append(separator);
             separator = '&';
             try {
@@ -76,6 +124,22 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if apiKey or apiPass values are null and neither are found in System environment variable.
      */
     public CueCloud(String apiKey, String apiPass,String baseURL) throws  CueCloudException{
+        this(apiKey, apiPass, baseURL, new KeepAliveHttpTransport());
+    }
+
+    /**
+     *  Construct CueCloud wrapper with custom URL and HTTP transport.
+     * @param apiKey  Your CueCloud API key. If this value if {@code NULL}, we will attempt to read the apiKey from the environment variable <code>CUECLOUD_ACCESS_KEY</code>.
+     * @param apiPass Your CueCloud API password. If this value if {@code NULL}, we will attempt to read the apiPassword from the environment variable <code>CUECLOUD_ACCESS_PASSWORD</code>.
+     * @param baseURL Custom URL to call the CueClud API methods.
+     * @param transport The transport used to send requests. Share one {@link KeepAliveHttpTransport} between instances to share its connections,
+     * or supply a stub to run against a local server in tests.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if apiKey or apiPass values are null and neither are found in System environment variable.
+     */
+    public CueCloud(String apiKey, String apiPass,String baseURL, CueCloudTransport transport) throws  CueCloudException{
+      if(transport == null) {
+          throw new CueCloudException("transport must be provided.");
+      }
       if(apiKey == null) {
            apiKey = System.getenv("CUECLOUD_ACCESS_KEY");
            if(apiKey == null) {
@@ -91,22 +155,227 @@ public class CueCloud {
         }
      
         this.baseURL = baseURL;
+        this.endpointURLs = new String[CueCloudEndpoint.values().length];
+        for(CueCloudEndpoint endpoint : CueCloudEndpoint.values()) {
+            endpointURLs[endpoint.ordinal()] = baseURL + endpoint.path;
+        }
         this.apiKey = apiKey;
         this.apiPass = apiPass;
+        this.transport = transport;
+        try {
+            this.signer = new CueCloudSigner(apiPass);
+        } catch (GeneralSecurityException e) {
+            throw new CueCloudException("Cannot sign requests: " + e.getMessage());
+        }
+        this.nonces = CueCloudNonceGenerator.forKey(apiKey);
+    }
+    
+    /**
+     * @return The transport this instance sends its requests through.
+     */
+    public CueCloudTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return The generator of the nonces requests are signed with, shared by every instance using the same API key.
+     * Persist it with {@link CueCloudNonceGenerator#persistTo(java.io.File)} so nonces keep growing across restarts.
+     */
+    public CueCloudNonceGenerator getNonceGenerator() {
+        return nonces;
+    }
+
+    /**
+     * Throttle the calls made by this instance. By default calls are not throttled.
+     * @param rateLimiter The limiter to apply to every call, or <code>null</code> to remove it.
+     */
+    public void setRateLimiter(CueCloudRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return The limiter applied to calls, or <code>null</code> if calls are not throttled.
+     */
+    public CueCloudRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Isolate the endpoint groups from each other, capping the calls in flight to each and failing
+     * calls to a group fast while its calls keep failing. By default calls are not isolated.
+     * @param circuitBreaker The breaker to apply to every call, or <code>null</code> to remove it.
+     */
+    public void setCircuitBreaker(CueCloudCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @return The breaker applied to calls, or <code>null</code> if calls are not isolated.
+     */
+    public CueCloudCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Retry failed calls. By default every call is made once.
+     * @param retryPolicy The policy deciding which calls are retried, or <code>null</code> to make every call once.
+     */
+    public void setRetryPolicy(CueCloudRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return The policy deciding which calls are retried, or <code>null</code> if calls are not retried.
+     */
+    public CueCloudRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Answer repeated read-only calls from a cache. By default every call goes to the server.
+     * @param cache The cache to use, or <code>null</code> to stop caching.
+     */
+    public void setCache(CueCloudCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return The cache read-only calls are answered from, or <code>null</code> if responses are not cached.
+     */
+    public CueCloudCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Share one request between threads making the same read-only call at the same time.
+     * When enabled, a GET issued while an identical one (same final URL) is in flight waits for it and
+     * receives its response instead of sending another request. Disabled by default.
+     * @param coalescingReads Whether identical concurrent GETs share a request.
+     */
+    public void setCoalescingReads(boolean coalescingReads) {
+        this.coalescingReads = coalescingReads;
+    }
+
+    /**
+     * @return Whether identical concurrent GETs share a request.
+     */
+    public boolean isCoalescingReads() {
+        return coalescingReads;
+    }
+
+    /**
+     * Declare that the server applies a call sent with an {@link #IDEMPOTENCY_KEY_HEADER} only once,
+     * however often it receives it. Only then are deposits, withdrawals and bonuses sent with a key
+     * retried after a timeout or server error, and re-sent by {@link CueCloudOutbox#replay()}. The
+     * CueCloud API is not documented to do so, so this is disabled by default: a repeat could pay twice.
+     * @param idempotencyKeysHonoured Whether the server deduplicates calls by their idempotency key.
+     */
+    public void setIdempotencyKeysHonoured(boolean idempotencyKeysHonoured) {
+        this.idempotencyKeysHonoured = idempotencyKeysHonoured;
+    }
+
+    /**
+     * @return Whether the server is taken to deduplicate calls by their idempotency key.
+     */
+    public boolean isIdempotencyKeysHonoured() {
+        return idempotencyKeysHonoured;
+    }
+
+    /**
+     * @return The number of GETs answered by sharing another thread's in-flight request.
+     */
+    public long getCoalescedReadCount() {
+        return sharedReads.getSharedCount();
+    }
+
+    /**
+     * Report measurements of every call to <code>metrics</code>. By default nothing is measured.
+     * @param metrics The listener to report to, or <code>null</code> to stop reporting.
+     */
+    public void setMetrics(CueCloudMetrics metrics) {
+        this.metrics = metrics == null ? CueCloudMetrics.NONE : metrics;
+    }
+
+    /**
+     * @return The listener calls are reported to; {@link CueCloudMetrics#NONE} if none is installed.
+     */
+    public CueCloudMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Log a sample of response bodies, for debugging. Bodies are logged at {@link Level#FINEST} to the
+     * <code>com.cuecloud.CueCloud</code> logger, and only when that level is enabled; they may contain
+     * payment details, so sampling is off by default. Calls themselves are logged at {@link Level#FINE}.
+     * @param sampleRate Fraction of the JSON string responses to log, between <code>0</code> (none) and <code>1</code> (all).
+     */
+    public void setBodyLogSampleRate(double sampleRate) {
+        if(!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        this.bodyLogSampleRate = sampleRate;
+    }
+
+    /**
+     * @return Fraction of the response bodies logged at {@link Level#FINEST}.
+     */
+    public double getBodyLogSampleRate() {
+        return bodyLogSampleRate;
+    }
+
+    /**
+     * Run the calls this client makes in the background, such as batches and {@link CueCloudAsync}
+     * calls, on virtual threads instead of pools of platform threads. Disabled by default.
+     * The blocking methods of this class can be called from virtual threads whether or not this is set,
+     * see {@link CueCloudExecutors}.
+     * @param virtualThreads Whether background calls run on virtual threads.
+     * @throws UnsupportedOperationException If <code>virtualThreads</code> is <code>true</code> and this JVM
+     * has no virtual threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        if(virtualThreads && !CueCloudExecutors.isVirtualThreadAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @return Whether background calls run on virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
     }
     
     /**
      * Wrapper Exception for all CueCloud operations.
      */
     public class CueCloudException extends  Exception{
+        private final int statusCode;
         
         public CueCloudException(String message) {
-            super(message);
+            this(message, -1, null);
+        }
+
+        public CueCloudException(String message, Throwable cause) {
+            this(message, -1, cause);
+        }
+
+        public CueCloudException(String message, int statusCode, Throwable cause) {
+            super(message, cause);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return The HTTP status the server answered with, or <code>-1</code> if the call failed without a response.
+         */
+        public int getStatusCode() {
+            return statusCode;
         }
         
     }
-    /**\
+    /**
      *  Get HMAC SHA256 encoding.
+     *  Requests are signed with a {@link CueCloudSigner}, which avoids setting up the key for every message.
      * @param key The key to use for encoding.
      * @param message The message to encode.
      * @return The encoded message in SHA256 form.
@@ -131,39 +400,48 @@ public class CueCloud {
      * @param httpMethod The HTTP method for this request. Can either be <code>GET, DELETE, POST </code> or <code> PUT</code>.
      * @param sig The signature for this request.
      * @param nonce The nonce for this request.
-     * @return  Returns the JSON string of this request.
+     * @param data Buffer holding the request body.
+     * @param length The length of the request body.
+     * @param idempotencyKey Sent as the {@link #IDEMPOTENCY_KEY_HEADER} header, unless <code>null</code>.
+     * @param handler Reads the response body.
+     * @return  Returns the value read by <code>handler</code>.
      * @throws MalformedURLException If <code>url</code> is malformed ir invalid.
      * @throws IOException  If we have IO error during the request. Probably due to connection failure.
      */
-    private String cueCloudHttpRequest(String url,String httpMethod,String sig,String nonce, String data) throws MalformedURLException, IOException {
-        URL obj = new URL(url);
-        HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-        con.setRequestMethod(httpMethod);
-        con.setRequestProperty("Access-Key", this.apiKey);
-        con.setRequestProperty("Access-Signature", sig);
-        con.setRequestProperty("Access-Nonce", nonce);
-        con.setRequestProperty("Content-Type", "application/json");
-        if(data != null && !data.isEmpty()) {
-            con.setDoOutput(true);
-            OutputStream os = con.getOutputStream();
-            os.write(data.getBytes());
-            os.flush();
-        }
-        int responseCode = con.getResponseCode();
-        
-        StringBuilder response;
-        try (BufferedReader in = new BufferedReader(
-                new InputStreamReader(con.getInputStream()))) {
-            String inputLine;
-            response = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
-                    }
+    private <T> T cueCloudHttpRequest(final String url,String httpMethod,String sig,String nonce, byte[] data, int length, String idempotencyKey, final CueCloudTransport.ResponseHandler<T> handler) throws MalformedURLException, IOException {
+        LinkedHashMap<String, String> headers = new LinkedHashMap<>();
+        headers.put("Access-Key", this.apiKey);
+        headers.put("Access-Signature", sig);
+        headers.put("Access-Nonce", nonce);
+        headers.put("Content-Type", "application/json");
+        if(idempotencyKey != null) {
+            headers.put(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
         }
+        byte[] body = length > 0 ? data : null;
         
-        //print result
-        System.out.println("Result: "+response);
-        return  response.toString();
+        return transport.execute(new CueCloudRequest(url, httpMethod, headers, body, length, endpointName(url), metrics), new CueCloudTransport.ResponseHandler<T>() {
+            @Override
+            public T handle(int statusCode, InputStream in) throws IOException {
+                if(statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    throw new HttpStatusException(statusCode, url);
+                }
+                return handler.handle(statusCode, in);
+            }
+        });
+    }
+
+    /**
+     * Thrown by {@link #cueCloudHttpRequest} when the server answers with an error status,
+     * so callers can tell throttling and server errors apart from connection failures.
+     */
+    private static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final int statusCode;
+
+        HttpStatusException(int statusCode, String url) {
+            super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+            this.statusCode = statusCode;
+        }
     }
     
     
@@ -177,36 +455,404 @@ public class CueCloud {
      * if any IO error when making HTTP connection of this request.
      */
     public String buildRequest(String url,String method, Object data) throws  CueCloudException{
+        return logSampled(url, method, buildRequest(url, method, data, CueCloudResponses.STRING));
+    }
+
+    /**
+     * Logs <code>result</code> at FINEST if this call is picked by the body log sample rate.
+     * @return <code>result</code>.
+     */
+    private String logSampled(String url, String method, String result) {
+        double sampleRate = bodyLogSampleRate;
+        if(sampleRate > 0 && LOG.isLoggable(Level.FINEST) && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            LOG.log(Level.FINEST, "{0} {1} response body: {2}", new Object[]{method, endpointName(url), result});
+        }
+        return result;
+    }
+    
+    /**
+     * Builds a HTTP request, signs it and makes the connection request, decoding the response with <code>handler</code>.
+     * @param url The URL to make the request for.
+     * @param method The CueCloud API method for this request.
+     * @param data Any data required by the request body.
+     * @param handler Reads the response body.
+     * @return The value read by <code>handler</code>.
+     * @throws com.cuecloud.CueCloud.CueCloudException  If URL is not provided, or if an error occurs when signing the request or
+     * if any IO error when making HTTP connection of this request.
+     */
+    private <T> T buildRequest(String url,String method, Object data, CueCloudTransport.ResponseHandler<T> handler) throws  CueCloudException{
         if(url == null) {
             throw new CueCloudException("Url must be provided to this method call");
         }
-        String nonce =  (System.currentTimeMillis() * 1000) + "";
-        String body = "";
+        byte[] bodyBytes = NO_BODY;
+        int bodyLength = 0;
         if(data != null){
-            if(data instanceof String) {
-                body = data.toString();
+            if(JsonWriter.isSupported(data)) {
+                // Encoded once into this thread's buffer; the same bytes are signed and sent.
+                JsonWriter writer = bodyWriter();
+                writer.writeObject((Map<?, ?>) data);
+                bodyBytes = writer.buffer();
+                bodyLength = writer.length();
             } else {
-              body= new flexjson.JSONSerializer().serialize(data);
+                String body = data instanceof String ? data.toString() : new flexjson.JSONSerializer().serialize(data);
+                bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+                bodyLength = bodyBytes.length;
             }
         }
-        
-        String message = nonce + url + body;
-        String sig = null;
+        return sendRequest(url, method, bodyBytes, bodyLength, handler);
+    }
+
+    /**
+     * Calls <code>endpoint</code> and returns the response as JSON.
+     * @param endpoint The call to make.
+     * @param values The value of each parameter of <code>endpoint</code>, in declared order; <code>null</code> for an absent one.
+     * @return JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException If signing the request or the HTTP connection fails.
+     */
+    private String call(CueCloudEndpoint endpoint, Object... values) throws CueCloudException {
+        return logSampled(endpointURLs[endpoint.ordinal()], endpoint.httpMethod, fetch(endpoint, CueCloudResponses.STRING, values));
+    }
+
+    /**
+     * Calls <code>endpoint</code>, decoding the response with <code>handler</code>.
+     * @param endpoint The call to make.
+     * @param handler Reads the response body.
+     * @param values The value of each parameter of <code>endpoint</code>, in declared order; <code>null</code> for an absent one.
+     * @return The value read by <code>handler</code>.
+     * @throws com.cuecloud.CueCloud.CueCloudException If signing the request or the HTTP connection fails.
+     */
+    private <T> T fetch(CueCloudEndpoint endpoint, CueCloudTransport.ResponseHandler<T> handler, Object... values) throws CueCloudException {
+        String url = endpointURLs[endpoint.ordinal()];
+        if(endpoint.encoding == CueCloudEndpoint.Encoding.QUERY) {
+            return sendRequest(endpoint.withQuery(url, values), endpoint.httpMethod, NO_BODY, 0, handler);
+        }
+        JsonWriter writer = bodyWriter();
+        endpoint.writeBody(writer, values);
+        return sendRequest(url, endpoint.httpMethod, writer.buffer(), writer.length(), handler);
+    }
+
+    /**
+     * Sends a POST with an idempotency key. The call is retried after it may have reached the server
+     * only if {@link #setIdempotencyKeysHonoured(boolean) the server honours the key}.
+     * @param methodPath The path of the call, relative to the base URL.
+     * @param data The request body.
+     * @param idempotencyKey Key the server recognises repeats of this call by.
+     * @return JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException If signing the request or the HTTP connection fails.
+     */
+    String postIdempotent(String methodPath, Map<String, Object> data, String idempotencyKey) throws CueCloudException {
+        String httpMethod = "POST";
+        String url = baseURL +methodPath;
+        JsonWriter writer = bodyWriter();
+        writer.writeObject(data);
+        CueCloudCache responseCache = cache;
+        String result;
         try {
-            sig = HMAC_SHA256encode(this.apiPass, message);
-        } catch(Exception e) {
-            throw new CueCloudException(e.getMessage()+"");
+            result = executeRequest(url, httpMethod, writer.buffer(), writer.length(), idempotencyKey, CueCloudResponses.STRING);
+        } catch(CueCloudException e) {
+            invalidateAfterFailure(responseCache, EndpointGroup.forUrl(baseURL, url), e);
+            throw e;
         }
-        String result = null;
-        
+        if(responseCache != null) {
+            invalidateAfter(responseCache, EndpointGroup.forUrl(baseURL, url));
+        }
+        return logSampled(url, httpMethod, result);
+    }
+
+    /**
+     * @return An empty writer for a request body: this thread's own, or a new one on a virtual thread,
+     * which is not reused and would only fill its thread-local map with a buffer per call.
+     */
+    private static JsonWriter bodyWriter() {
+        if(CueCloudExecutors.isVirtual(Thread.currentThread())) {
+            return new JsonWriter();
+        }
+        JsonWriter writer = BODY_WRITER.get();
+        writer.reset();
+        return writer;
+    }
+
+    /**
+     * Sends an encoded request, answering GETs from the cache or a shared request where configured.
+     * @param url The URL to make the request for.
+     * @param method The CueCloud API method for this request.
+     * @param bodyBytes The request body in its first <code>bodyLength</code> bytes.
+     * @param bodyLength The length of the request body; 0 for none.
+     * @param handler Reads the response body.
+     * @return The value read by <code>handler</code>.
+     * @throws com.cuecloud.CueCloud.CueCloudException If signing the request or the HTTP connection fails.
+     */
+    private <T> T sendRequest(String url, String method, byte[] bodyBytes, int bodyLength, CueCloudTransport.ResponseHandler<T> handler) throws CueCloudException {
+        CueCloudCache responseCache = cache;
+        if(!"GET".equals(method) || bodyLength > 0) {
+            T result;
+            try {
+                result = executeRequest(url, method, bodyBytes, bodyLength, null, handler);
+            } catch(CueCloudException e) {
+                invalidateAfterFailure(responseCache, EndpointGroup.forUrl(baseURL, url), e);
+                throw e;
+            }
+            if(responseCache != null) {
+                invalidateAfter(responseCache, EndpointGroup.forUrl(baseURL, url));
+            }
+            return result;
+        }
+        long ttlNanos = 0;
+        if(responseCache != null) {
+            ttlNanos = responseCache.timeToLiveNanos(endpointName(url));
+        }
+        boolean coalesce = coalescingReads;
+        if(ttlNanos <= 0 && !coalesce) {
+            return executeRequest(url, method, bodyBytes, bodyLength, null, handler);
+        }
+        String key = apiKey + ' ' + url;
+        long start = System.nanoTime();
+        byte[] response = ttlNanos > 0 ? responseCache.get(key) : null;
+        if(response != null) {
+            metrics.call(endpointName(url), method, HttpURLConnection.HTTP_OK, System.nanoTime() - start, 0);
+        } else {
+            long generation = ttlNanos > 0 ? responseCache.generation() : 0;
+            response = coalesce ? readShared(url) : executeRequest(url, method, bodyBytes, bodyLength, null, CueCloudResponses.BYTES);
+            if(ttlNanos > 0) {
+                responseCache.put(key, EndpointGroup.forUrl(baseURL, url), response, ttlNanos, generation);
+            }
+        }
+        try {
+            return handler.handle(HttpURLConnection.HTTP_OK, new ByteArrayInputStream(response));
+        } catch(IOException e) {
+            throw new CueCloudException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the response to a GET, sharing one request between all threads asking for <code>url</code> at once.
+     * @param url The URL to read.
+     * @return The response body.
+     * @throws com.cuecloud.CueCloud.CueCloudException If the shared request fails. Threads that waited for
+     * another thread's request get their own exception, caused by the original one.
+     */
+    private byte[] readShared(final String url) throws CueCloudException {
+        long start = System.nanoTime();
+        SingleFlight.Flight<byte[]> flight;
         try {
-            result =  cueCloudHttpRequest(url, method, sig, nonce,body);
-        } catch(Exception e) {
-            throw new CueCloudException(e.getMessage());
+            flight = sharedReads.execute(url, new SingleFlight.Call<byte[]>() {
+                @Override
+                public byte[] call() throws CueCloudException {
+                    return executeRequest(url, "GET", NO_BODY, 0, null, CueCloudResponses.BYTES);
+                }
+            });
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CueCloudException("Interrupted while waiting for a shared request", e);
+        }
+        CueCloudException failure = flight.getFailure();
+        if(flight.isShared()) {
+            metrics.call(endpointName(url), "GET", failure == null ? HttpURLConnection.HTTP_OK : failure.getStatusCode(), System.nanoTime() - start, 0);
+        }
+        if(failure != null) {
+            if(!flight.isShared()) {
+                throw failure;
+            }
+            throw new CueCloudException(failure.getMessage(), failure.getStatusCode(), failure);
+        }
+        return flight.getValue();
+    }
+
+    /**
+     * Drops the cached responses a successful state-changing call to <code>group</code> may have made stale.
+     * Every such call can move money, so the balance is always dropped; completions also change the
+     * pending counts of their Cues.
+     */
+    private static void invalidateAfter(CueCloudCache responseCache, EndpointGroup group) {
+        responseCache.invalidate(group);
+        responseCache.invalidate(EndpointGroup.Account);
+        if(group == EndpointGroup.Completions) {
+            responseCache.invalidate(EndpointGroup.Cues);
+        }
+    }
+
+    /**
+     * Drops the cached responses a failed state-changing call to <code>group</code> may have made stale.
+     * Only a client error (4xx) shows the call was refused; after a timeout, a dropped connection or a
+     * server error the call may still have been applied, so the cache is treated as after a success.
+     * @param responseCache The cache, or <code>null</code> if there is none.
+     */
+    private static void invalidateAfterFailure(CueCloudCache responseCache, EndpointGroup group, CueCloudException failure) {
+        int status = failure.getStatusCode();
+        if(responseCache != null && (status < 400 || status >= 500)) {
+            invalidateAfter(responseCache, group);
+        }
+    }
+
+    /**
+     * Sends a request, retrying it as the {@link CueCloudRetryPolicy retry policy} allows.
+     * @param url The URL to make the request for.
+     * @param method The CueCloud API method for this request.
+     * @param bodyBytes Buffer holding the encoded request body.
+     * @param bodyLength The length of the body.
+     * @param idempotencyKey Key the server recognises repeats of this call by, or <code>null</code>.
+     * @param handler Reads the response body.
+     * @return The value read by <code>handler</code>.
+     * @throws com.cuecloud.CueCloud.CueCloudException If the last attempt fails.
+     */
+    private <T> T executeRequest(String url,String method, byte[] bodyBytes, int bodyLength, String idempotencyKey, CueCloudTransport.ResponseHandler<T> handler) throws  CueCloudException{
+        CueCloudRetryPolicy policy = retryPolicy;
+        CueCloudMetrics callMetrics = metrics;
+        long start = System.nanoTime();
+        for(int attempt = 1; ; attempt++) {
+            try {
+                T result = attemptRequest(url, method, bodyBytes, bodyLength, idempotencyKey, handler);
+                callMetrics.call(endpointName(url), method, HttpURLConnection.HTTP_OK, System.nanoTime() - start, attempt);
+                if(LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "{0} {1} succeeded in {2} ms after {3} attempt(s)",
+                            new Object[]{method, endpointName(url), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), attempt});
+                }
+                return result;
+            } catch(CueCloudException e) {
+                if(policy == null || !policy.shouldRetry(attempt, e, isIdempotent(url, method, bodyLength, idempotencyKey))) {
+                    callMetrics.call(endpointName(url), method, e.getStatusCode(), System.nanoTime() - start, attempt);
+                    if(LOG.isLoggable(Level.FINE)) {
+                        LOG.log(Level.FINE, "{0} {1} failed after {2} attempt(s): {3}", new Object[]{method, endpointName(url), attempt, e.getMessage()});
+                    }
+                    throw e;
+                }
+                callMetrics.retry(endpointName(url), attempt, e.getStatusCode());
+                if(LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "{0} {1} attempt {2} failed, retrying: {3}", new Object[]{method, endpointName(url), attempt, e.getMessage()});
+                }
+                try {
+                    Thread.sleep(policy.backoffMillis(attempt));
+                } catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    callMetrics.call(endpointName(url), method, e.getStatusCode(), System.nanoTime() - start, attempt);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes one attempt at a request, signing it with a fresh nonce.
+     * @param url The URL to make the request for.
+     * @param method The CueCloud API method for this request.
+     * @param bodyBytes Buffer holding the encoded request body.
+     * @param bodyLength The length of the body.
+     * @param idempotencyKey Key the server recognises repeats of this call by, or <code>null</code>.
+     * @param handler Reads the response body.
+     * @return The value read by <code>handler</code>.
+     * @throws com.cuecloud.CueCloud.CueCloudException If signing or the HTTP request fails. The exception carries
+     * the HTTP status, if the server sent one, and the underlying failure as its cause.
+     */
+    private <T> T attemptRequest(String url,String method, byte[] bodyBytes, int bodyLength, String idempotencyKey, CueCloudTransport.ResponseHandler<T> handler) throws  CueCloudException{
+        T result = null;
+        CueCloudCircuitBreaker breaker = circuitBreaker;
+        EndpointGroup group = EndpointGroup.forUrl(baseURL, url);
+        if(breaker != null && breaker.rejectIfOpen(group)) {
+            // Fail before queueing for the rate limiter.
+            throw new CueCloudException("Circuit breaker for " + group + " calls is open");
+        }
+        CueCloudRateLimiter limiter = rateLimiter;
+        CueCloudRateLimiter.Permit permit = null;
+        if(limiter != null) {
+            try {
+                permit = limiter.acquire(group);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CueCloudException("Interrupted while waiting for the rate limiter");
+            }
+        }
+        // The bulkhead slot is taken once the limiter lets the call through, so time spent throttled by
+        // this client neither holds a slot nor counts as latency of the call.
+        CueCloudCircuitBreaker.Permit slot = null;
+        if(breaker != null) {
+            try {
+                slot = breaker.acquire(group);
+            } catch(InterruptedException e) {
+                if(permit != null) {
+                    permit.release(-1);
+                }
+                Thread.currentThread().interrupt();
+                throw new CueCloudException("Interrupted while waiting for a slot for " + group + " calls");
+            }
+            if(slot == null) {
+                if(permit != null) {
+                    permit.release(-1);
+                }
+                throw new CueCloudException(breaker.getState(group) == CueCloudCircuitBreaker.State.CLOSED
+                        ? "Too many " + group + " calls in flight" : "Circuit breaker for " + group + " calls is open");
+            }
+        }
+        int statusCode = -1;
+        try {
+            String nonce = null;
+            String sig = null;
+            try {
+                nonce = Long.toString(nonces.next());
+                sig = signer.sign(nonce, url, bodyBytes, 0, bodyLength);
+            } catch(Exception e) {
+                throw new CueCloudException(e.getMessage()+"", e);
+            }
+            try {
+                result =  cueCloudHttpRequest(url, method, sig, nonce, bodyBytes, bodyLength, idempotencyKey, handler);
+                statusCode = HttpURLConnection.HTTP_OK;
+            } catch(HttpStatusException e) {
+                statusCode = e.statusCode;
+                throw new CueCloudException(e.getMessage(), e.statusCode, e);
+            } catch(Exception e) {
+                throw new CueCloudException(e.getMessage(), e);
+            }
+        } finally {
+            if(permit != null) {
+                permit.release(statusCode);
+            }
+            if(slot != null) {
+                slot.release(statusCode);
+            }
         }
         
         return result;
     }
+
+    /**
+     * @param url The full URL of a call.
+     * @return The path of the call relative to the base URL, including any query string.
+     */
+    private String methodPath(String url) {
+        return baseURL != null && url.startsWith(baseURL) ? url.substring(baseURL.length()) : url;
+    }
+
+    /**
+     * @param url The full URL of a call.
+     * @return The name the call is reported under to {@link CueCloudMetrics}: its path without query string.
+     */
+    private String endpointName(String url) {
+        String path = methodPath(url);
+        int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    /**
+     * Whether repeating a call is harmless. Reads are; so are approving, declining and cancelling,
+     * which leave the same state however often they are applied. Deposits, withdrawals, bonuses and
+     * creating, assigning or submitting Cues are not, unless sent with an idempotency key the server
+     * is declared to honour.
+     * @param url The URL of the call.
+     * @param method The HTTP method of the call.
+     * @param bodyLength The length of the encoded request body.
+     * @param idempotencyKey The idempotency key the call is sent with, or <code>null</code>.
+     * @return <code>true</code> if the call may be retried after it might have reached the server.
+     */
+    private boolean isIdempotent(String url, String method, int bodyLength, String idempotencyKey) {
+        if(idempotencyKey != null && idempotencyKeysHonoured) {
+            return true;
+        }
+        if("GET".equals(method)) {
+            // assignCue and submitCueCompletion change state, and are the only GETs that send a body.
+            return bodyLength == 0;
+        }
+        String path = methodPath(url);
+        return path.startsWith("completions/approve/") || path.startsWith("completions/decline/") || path.startsWith("cues/cancel/");
+    }
     
     
     /**
@@ -216,10 +862,7 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String validateUser () throws CueCloudException {
-        String methodPath = "validate/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        return  buildRequest(url, httpMethod, null);
+        return call(CueCloudEndpoint.VALIDATE);
     }
     
     
@@ -230,10 +873,7 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String getKeywords() throws CueCloudException {
-        String methodPath = "cues/keywords/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        return  buildRequest(url, httpMethod, null);
+        return call(CueCloudEndpoint.KEYWORDS);
     }
     
     /**
@@ -242,10 +882,16 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String getBalance() throws CueCloudException {
-         String methodPath = "balance/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        return  buildRequest(url, httpMethod, null);
+        return call(CueCloudEndpoint.BALANCE);
+    }
+    
+    /**
+     * This will return the user's current balance, in USD, decoded from the response.
+     * @return The balance.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
+     */
+    public Balance fetchBalance() throws CueCloudException {
+        return fetch(CueCloudEndpoint.BALANCE, CueCloudResponses.BALANCE);
     }
     
     
@@ -259,14 +905,11 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String makeDeposit(double  amount, int creditCardLast4Digits) throws CueCloudException {
-          String methodPath = "payments/deposit/";
-        String httpMethod = "POST";
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("AmountInUSD", amount);
-        map.put("CreditCardLastFourDigits", creditCardLast4Digits);
-        
-        String url = baseURL +methodPath;
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.DEPOSIT, amount, creditCardLast4Digits);
+    }
+
+    static Map<String, Object> depositBody(double  amount, int creditCardLast4Digits) {
+        return CueCloudEndpoint.DEPOSIT.toMap(amount, creditCardLast4Digits);
     }
     
     /**
@@ -280,13 +923,11 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String withdrawFunds(double  amountInUSD) throws CueCloudException {
-        String methodPath = "payments/withdraw/";
-        String httpMethod = "POST";
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("AmountInUSD", amountInUSD);
-        
-        String url = baseURL +methodPath;
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.WITHDRAW, amountInUSD);
+    }
+
+    static Map<String, Object> withdrawalBody(double  amountInUSD) {
+        return CueCloudEndpoint.WITHDRAW.toMap(amountInUSD);
     }
     
     
@@ -306,18 +947,15 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String grantBonus(String cueCompletionID,Double amountInUSD, String reason, String noteToSelf) throws CueCloudException {
-        if(reason == null) {
-            reason = "Thanks for your hard work!";
-        }
-        String methodPath = "payments/bonus/";
-        String httpMethod = "POST";
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("Amount", amountInUSD);
-        map.put("CueCompletionID", cueCompletionID);
-        map.put("Reason", reason);
-        map.put("NoteToSelf", noteToSelf);
-        String url = baseURL +methodPath;
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.BONUS, amountInUSD, cueCompletionID, bonusReason(reason), noteToSelf);
+    }
+
+    private static String bonusReason(String reason) {
+        return reason == null ? "Thanks for your hard work!" : reason;
+    }
+
+    static Map<String, Object> bonusBody(String cueCompletionID,Double amountInUSD, String reason, String noteToSelf) {
+        return CueCloudEndpoint.BONUS.toMap(amountInUSD, cueCompletionID, bonusReason(reason), noteToSelf);
     }
     
    
@@ -332,17 +970,41 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String getPayments(PaymentType paymentType,Integer paymentID,String noteToSelf, Integer page) throws CueCloudException {
-      
-        String methodPath = "payments/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("PaymentType", paymentType);
-        map.put("PaymentID", paymentID);
-        map.put("Page", page);
-        map.put("NoteToSelf", noteToSelf);
-        url  = urlWithQueryParams(url, map);
-        return  buildRequest(url, httpMethod, null);
+        return call(CueCloudEndpoint.PAYMENTS, paymentType, paymentID, page, noteToSelf);
+    }
+    
+    /**
+     * List the payments, decoded from the response.
+     * 
+     * @param paymentType The Payment Type to filter. Optional.
+     * @param paymentID The Payment ID to filter. Optional.
+     * @param noteToSelf Note to self to filter. Optional.
+     * @param page The page to fetch, starting at 1. Optional, defaults to the first page.
+     * @return The page of payments.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
+     */
+    public Page<Payment> fetchPayments(PaymentType paymentType,Integer paymentID,String noteToSelf, Integer page) throws CueCloudException {
+        return fetch(CueCloudEndpoint.PAYMENTS, CueCloudResponses.page("Payments", page == null ? 1 : page, CueCloudResponses.PAYMENT),
+                paymentType, paymentID, page, noteToSelf);
+    }
+    
+   
+    /**
+     * Iterate over every payment matching the filters, fetching pages of
+     * {@link #fetchPayments(PaymentType, Integer, String, Integer)} lazily as the iteration advances.
+     * 
+     * @param paymentType The Payment Type to filter. Optional.
+     * @param paymentID The Payment ID to filter. Optional.
+     * @param noteToSelf Note to self to filter. Optional.
+     * @return The payments.
+     */
+    public PagedIterable<Payment> iteratePayments(final PaymentType paymentType, final Integer paymentID, final String noteToSelf) {
+        return new PagedIterable<>(new PagedIterable.PageSource<Payment>() {
+            @Override
+            public Page<Payment> fetch(int pageNumber) throws CueCloudException {
+                return fetchPayments(paymentType, paymentID, noteToSelf, pageNumber);
+            }
+        });
     }
    
     /**
@@ -353,13 +1015,7 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String approveCueCompletion(String cueCompletionID) throws CueCloudException {
-      
-        String methodPath = "completions/approve/";
-        String httpMethod = "POST";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("CueCompletionID", cueCompletionID);
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.APPROVE_COMPLETION, cueCompletionID);
     }
     
     /**
@@ -370,13 +1026,74 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String declineCueCompletion(String cueCompletionID) throws CueCloudException {
-      
-        String methodPath = "completions/decline/";
-        String httpMethod = "POST";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("CueCompletionID", cueCompletionID);
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.DECLINE_COMPLETION, cueCompletionID);
+    }
+   
+    /**
+     * This will approve every CueCompletion in <code>cueCompletionIDs</code>, making up to
+     * {@link #DEFAULT_BATCH_CONCURRENCY} calls at once.
+     * 
+     * @param cueCompletionIDs The IDs of the completed Cues.
+     * @return The outcome of every approval. A failed approval does not stop the others.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the calling thread is interrupted before the batch completes.
+     */
+    public CueCloudBatchResult<String> approveAll(Collection<String> cueCompletionIDs) throws CueCloudException {
+        return approveAll(cueCompletionIDs, DEFAULT_BATCH_CONCURRENCY);
+    }
+    
+    /**
+     * This will approve every CueCompletion in <code>cueCompletionIDs</code>.
+     * 
+     * @param cueCompletionIDs The IDs of the completed Cues.
+     * @param concurrency Maximum number of approvals in flight at once.
+     * @return The outcome of every approval. A failed approval does not stop the others.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the calling thread is interrupted before the batch completes.
+     */
+    public CueCloudBatchResult<String> approveAll(Collection<String> cueCompletionIDs, int concurrency) throws CueCloudException {
+        return runBatch(cueCompletionIDs, concurrency, new CueCloudBatch.Call<String>() {
+            @Override
+            public String call(String cueCompletionID) throws Exception {
+                return approveCueCompletion(cueCompletionID);
+            }
+        });
+    }
+    
+    /**
+     * This will decline every CueCompletion in <code>cueCompletionIDs</code>, making up to
+     * {@link #DEFAULT_BATCH_CONCURRENCY} calls at once.
+     * 
+     * @param cueCompletionIDs The IDs of the completed Cues.
+     * @return The outcome of every decline. A failed decline does not stop the others.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the calling thread is interrupted before the batch completes.
+     */
+    public CueCloudBatchResult<String> declineAll(Collection<String> cueCompletionIDs) throws CueCloudException {
+        return declineAll(cueCompletionIDs, DEFAULT_BATCH_CONCURRENCY);
+    }
+    
+    /**
+     * This will decline every CueCompletion in <code>cueCompletionIDs</code>.
+     * 
+     * @param cueCompletionIDs The IDs of the completed Cues.
+     * @param concurrency Maximum number of declines in flight at once.
+     * @return The outcome of every decline. A failed decline does not stop the others.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the calling thread is interrupted before the batch completes.
+     */
+    public CueCloudBatchResult<String> declineAll(Collection<String> cueCompletionIDs, int concurrency) throws CueCloudException {
+        return runBatch(cueCompletionIDs, concurrency, new CueCloudBatch.Call<String>() {
+            @Override
+            public String call(String cueCompletionID) throws Exception {
+                return declineCueCompletion(cueCompletionID);
+            }
+        });
+    }
+    
+    private <K> CueCloudBatchResult<K> runBatch(Collection<K> keys, int concurrency, CueCloudBatch.Call<K> call) throws CueCloudException {
+        try {
+            return CueCloudBatch.run(this, keys, concurrency, call);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CueCloudException("Interrupted before the batch completed.");
+        }
     }
    
     /**
@@ -387,13 +1104,7 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String cancelCue(String cueID) throws CueCloudException {
-      
-        String methodPath = "cues/cancel/";
-        String httpMethod = "POST";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("CueID", cueID);
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.CANCEL_CUE, cueID);
     }
     
     /**
@@ -408,21 +1119,46 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String getCueCompletions(String cueID, Integer cueCompletionID ,CueCompletionStatus cueStatus, Integer page) throws CueCloudException {
-      
-        String methodPath = "completions/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("CueID", cueID);
-        map.put("CueCompletionID", cueCompletionID);
-        map.put("Page", page);
-        map.put("Status", cueStatus);
-        url  = urlWithQueryParams(url, map);
-        return  buildRequest(url, httpMethod, null);
+        return call(CueCloudEndpoint.COMPLETIONS, cueID, cueCompletionID, page, cueStatus);
     }
     
     /**
-     * Create a new Cue.
+     * This will return CueCompletions for a particular Cue, decoded from the response.
+     * 
+     * @param cueID The ID of the Cue you want to get completions. This is not optional.
+     * @param cueCompletionID The ID of a completed Cue to filter. Optional.
+     * @param cueStatus The status of Cue completions to filter. Optional.
+     * @param page The page to fetch, starting at 1. Optional, defaults to the first page.
+     * @return The page of completions.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
+     */
+    public Page<CueCompletion> fetchCueCompletions(String cueID, Integer cueCompletionID ,CueCompletionStatus cueStatus, Integer page) throws CueCloudException {
+        return fetch(CueCloudEndpoint.COMPLETIONS, CueCloudResponses.page("CueCompletions", page == null ? 1 : page, CueCloudResponses.CUE_COMPLETION),
+                cueID, cueCompletionID, page, cueStatus);
+    }
+    
+    
+    /**
+     * Iterate over every CueCompletion of a Cue matching the filters, fetching pages of
+     * {@link #fetchCueCompletions(String, Integer, CueCompletionStatus, Integer)} lazily as the iteration advances.
+     * 
+     * @param cueID The ID of the Cue you want to get completions. This is not optional.
+     * @param cueCompletionID The ID of a completed Cue to filter. Optional.
+     * @param cueStatus The status of Cue completions to filter. Optional.
+     * @return The completions.
+     */
+    public PagedIterable<CueCompletion> iterateCueCompletions(final String cueID, final Integer cueCompletionID, final CueCompletionStatus cueStatus) {
+        return new PagedIterable<>(new PagedIterable.PageSource<CueCompletion>() {
+            @Override
+            public Page<CueCompletion> fetch(int pageNumber) throws CueCloudException {
+                return fetchCueCompletions(cueID, cueCompletionID, cueStatus, pageNumber);
+            }
+        });
+    }
+    
+    /**
+     * Create a new Cue. To post many similar Cues, build a {@link CueSpec} template and use
+     * {@link #createCues(List)} instead.
      * 
      * @param title The title of the Cue. Must be provided.
      * @param amount The amount for this Cue. Must be provided.
@@ -447,25 +1183,67 @@ public class CueCloud {
             String iFrameURL,Boolean uRLNotificationOnCueCompletion,Boolean emailNotificationOnCueCompletion,
             Integer lifetimeInMinutes,Integer timeLimitToCompleteCueInMinutes,
             Integer autoApproveCueCompletionAfterThisManyMinutes, String noteToSelf, String keywords) throws CueCloudException{
-          String methodPath = "cues/create";
-        String httpMethod = "POST";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("Title", title);
-        map.put("Amount",amount);
-        map.put("NumOpportunities", numOpportunities);
-        map.put("IsAnonymous", isAnonymous);
-        map.put("PushNotificationOnCueCompletion", pushNotificationOnCueCompletion);
-        map.put("DisallowAnonymousCueCompletions", disallowAnonymousCueCompletions);
-        map.put("iFrameURL", iFrameURL);
-        map.put("URLNotificationOnCueCompletion", uRLNotificationOnCueCompletion);
-        map.put("EmailNotificationOnCueCompletion", emailNotificationOnCueCompletion);
-        map.put("LifetimeInMinutes", lifetimeInMinutes); 
-        map.put("TimeLimitToCompleteCueInMinutes", timeLimitToCompleteCueInMinutes); 
-        map.put("AutoApproveCueCompletionAfterThisManyMinutes", autoApproveCueCompletionAfterThisManyMinutes); 
-        map.put("NoteToSelf", noteToSelf); 
-        map.put("Keywords", keywords); 
-        return buildRequest(url, httpMethod, map);
+        return createCue(new CueSpec.Builder()
+                .setTitle(title)
+                .setAmount(amount)
+                .setNumOpportunities(numOpportunities)
+                .setDescription(description)
+                .setAnonymous(isAnonymous)
+                .setPushNotificationOnCueCompletion(pushNotificationOnCueCompletion)
+                .setDisallowAnonymousCueCompletions(disallowAnonymousCueCompletions)
+                .setIFrameURL(iFrameURL)
+                .setURLNotificationOnCueCompletion(uRLNotificationOnCueCompletion)
+                .setEmailNotificationOnCueCompletion(emailNotificationOnCueCompletion)
+                .setLifetimeInMinutes(lifetimeInMinutes)
+                .setTimeLimitToCompleteCueInMinutes(timeLimitToCompleteCueInMinutes)
+                .setAutoApproveCueCompletionAfterThisManyMinutes(autoApproveCueCompletionAfterThisManyMinutes)
+                .setNoteToSelf(noteToSelf)
+                .setKeywords(keywords)
+                .build());
+    }
+    
+    /**
+     * Create a new Cue described by <code>spec</code>. Settings shared with the spec it was derived
+     * from are not encoded again.
+     * 
+     * @param spec The Cue to create.
+     * @return  JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
+     */
+    public String createCue(CueSpec spec) throws CueCloudException {
+        String httpMethod = CueCloudEndpoint.CREATE_CUE.httpMethod;
+        String url = endpointURLs[CueCloudEndpoint.CREATE_CUE.ordinal()];
+        JsonWriter writer = bodyWriter();
+        spec.writeTo(writer);
+        return logSampled(url, httpMethod, sendRequest(url, httpMethod, writer.buffer(), writer.length(), CueCloudResponses.STRING));
+    }
+    
+    /**
+     * Create every Cue in <code>specs</code>, making up to {@link #DEFAULT_BATCH_CONCURRENCY} calls at once.
+     * 
+     * @param specs The Cues to create.
+     * @return The outcome of every Cue. A failed Cue does not stop the others.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the calling thread is interrupted before the batch completes.
+     */
+    public CueCloudBatchResult<CueSpec> createCues(List<CueSpec> specs) throws CueCloudException {
+        return createCues(specs, DEFAULT_BATCH_CONCURRENCY);
+    }
+    
+    /**
+     * Create every Cue in <code>specs</code>.
+     * 
+     * @param specs The Cues to create.
+     * @param concurrency Maximum number of Cues being created at once.
+     * @return The outcome of every Cue. A failed Cue does not stop the others.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the calling thread is interrupted before the batch completes.
+     */
+    public CueCloudBatchResult<CueSpec> createCues(List<CueSpec> specs, int concurrency) throws CueCloudException {
+        return runBatch(specs, concurrency, new CueCloudBatch.Call<CueSpec>() {
+            @Override
+            public String call(CueSpec spec) throws Exception {
+                return createCue(spec);
+            }
+        });
     }
     
     
@@ -483,22 +1261,47 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String getCues(String cueID, Integer cueGroupID ,Boolean hasPendingCueCompletions, CueStatus cueStatus, String noteToSelf, Integer page) throws CueCloudException {
-      
-        String methodPath = "cues/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("CueID", cueID);
-        map.put("GroupID", cueGroupID);
-        map.put("NoteToSelf", noteToSelf);
-        map.put("HasPendingCueCompletions", hasPendingCueCompletions);
-        map.put("Status", cueStatus);
-        map.put("Page", page);
-        url  = urlWithQueryParams(url, map);
-        return  buildRequest(url, httpMethod, null);
+        return call(CueCloudEndpoint.CUES, cueID, cueGroupID, noteToSelf, hasPendingCueCompletions, cueStatus, page);
+    }
+    
+    /**
+     * This will get the Cues the user has created, decoded from the response.
+     * 
+     * @param cueID The ID of the Cue you want to filter. Optional.
+     * @param cueGroupID The ID of the Group to filter. Optional.
+     * @param hasPendingCueCompletions Optional Boolean to include Cues with pending completions.
+     * @param cueStatus The status of Cue to filter. Optional.
+     * @param noteToSelf Optional note for this request.
+     * @param page The page to fetch, starting at 1. Optional, defaults to the first page.
+     * @return The page of Cues.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
+     */
+    public Page<Cue> fetchCues(String cueID, Integer cueGroupID ,Boolean hasPendingCueCompletions, CueStatus cueStatus, String noteToSelf, Integer page) throws CueCloudException {
+        return fetch(CueCloudEndpoint.CUES, CueCloudResponses.page("Cues", page == null ? 1 : page, CueCloudResponses.CUE),
+                cueID, cueGroupID, noteToSelf, hasPendingCueCompletions, cueStatus, page);
     }
     
     
+    /**
+     * Iterate over every Cue matching the filters, fetching pages of
+     * {@link #fetchCues(String, Integer, Boolean, CueStatus, String, Integer)} lazily as the iteration advances.
+     * 
+     * @param cueID The ID of the Cue you want to filter. Optional.
+     * @param cueGroupID The ID of the Group to filter. Optional.
+     * @param hasPendingCueCompletions Optional Boolean to include Cues with pending completions.
+     * @param cueStatus The status of Cue to filter. Optional.
+     * @param noteToSelf Optional note for this request.
+     * @return The Cues.
+     */
+    public PagedIterable<Cue> iterateCues(final String cueID, final Integer cueGroupID, final Boolean hasPendingCueCompletions, final CueStatus cueStatus, final String noteToSelf) {
+        return new PagedIterable<>(new PagedIterable.PageSource<Cue>() {
+            @Override
+            public Page<Cue> fetch(int pageNumber) throws CueCloudException {
+                return fetchCues(cueID, cueGroupID, hasPendingCueCompletions, cueStatus, noteToSelf, pageNumber);
+            }
+        });
+    }
+    
     /**
      * This will try and check-in or check-out a Cue depending
      * on whether the Cue is already checked out by that user..
@@ -508,13 +1311,7 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String assignCue(String cueID) throws CueCloudException {
-      
-        String methodPath = "cues/";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("CueID", cueID);
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.ASSIGN_CUE, cueID);
     }
     
     
@@ -531,18 +1328,7 @@ public class CueCloud {
      * @throws com.cuecloud.CueCloud.CueCloudException Thrown if an error occurs during the operation.
      */
     public String submitCueCompletion(String assignmentID,String answerText,String videoURL,String videoThumbnailURL, String imageURL, Boolean isAnonymous) throws CueCloudException {
-      
-        String methodPath = "cues/complete";
-        String httpMethod = "GET";
-        String url = baseURL +methodPath;
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("AssignmentID", assignmentID);
-        map.put("AnswerText", answerText);
-        map.put("VideoURL", videoURL);
-        map.put("VideoThumbnailURL", videoThumbnailURL);
-        map.put("ImageURL", imageURL);
-        map.put("IsAnonymous", isAnonymous);
-        return  buildRequest(url, httpMethod, map);
+        return call(CueCloudEndpoint.SUBMIT_COMPLETION, assignmentID, answerText, videoURL, videoThumbnailURL, imageURL, isAnonymous);
     }
     /**
     /**
@@ -561,6 +1347,49 @@ public class CueCloud {
     }
     
     
+    /**
+     * Groups of API endpoints that are throttled together, see {@link CueCloudRateLimiter}.
+     * 
+     * @author nmvictor 
+     */
+    public enum EndpointGroup {
+        /**
+         * Deposits, withdrawals, bonuses and payment listings.
+         */
+        Payments,
+        /**
+         * Creating, listing, assigning and cancelling Cues.
+         */
+        Cues,
+        /**
+         * Submitting, listing, approving and declining Cue completions.
+         */
+        Completions,
+        /**
+         * Everything else, such as the balance and credential validation.
+         */
+        Account;
+
+        /**
+         * @param baseURL The base URL of the API.
+         * @param url The full URL of a call.
+         * @return The group the call belongs to.
+         */
+        static EndpointGroup forUrl(String baseURL, String url) {
+            String path = baseURL != null && url.startsWith(baseURL) ? url.substring(baseURL.length()) : url;
+            if(path.startsWith("payments/")) {
+                return Payments;
+            }
+            if(path.startsWith("completions/") || path.startsWith("cues/complete")) {
+                return Completions;
+            }
+            if(path.startsWith("cues/")) {
+                return Cues;
+            }
+            return Account;
+        }
+    }
+
     /**
      * Enumerated types of CueCloud Payment Types
      * 
@@ -0,0 +1,393 @@
+package com.cuecloud;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Asynchronous companion to {@link CueCloud}. Every API method is mirrored here and returns a
+ * {@link CueCloudFuture} immediately, so a single thread can issue many concurrent calls and
+ * react to their results through {@link CueCloudCallback callbacks}.
+ * <p>
+ * Calls run on an executor and at most <code>maxInFlight</code> of them run at once. Submitting never
+ * blocks: a call beyond that limit is queued and started as soon as an earlier call finishes. The
+ * limit bounds the threads calls occupy; the transport of the wrapped {@link CueCloud} separately
+ * bounds the requests on the wire, see {@link KeepAliveHttpTransport#getMaxConnectionsPerHost()}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudAsync {
+    /**
+     * Default maximum number of calls in flight.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    private final CueCloud cueCloud;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Queue<Call<?>> queued = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown;
+
+    /**
+     * Construct an asynchronous client with its own executor and the default in-flight limit.
+     * Calls run on virtual threads if <code>cueCloud</code> is in virtual thread mode, see
+     * {@link CueCloud#setVirtualThreads(boolean)}, and on a pool of daemon threads otherwise.
+     * @param cueCloud The client to make the calls with.
+     */
+    public CueCloudAsync(CueCloud cueCloud) {
+        this(cueCloud, newExecutor(cueCloud), DEFAULT_MAX_IN_FLIGHT, true);
+    }
+
+    /**
+     * Construct an asynchronous client running its calls on <code>executor</code>.
+     * The executor is not shut down by {@link #shutdown()}.
+     * @param cueCloud The client to make the calls with.
+     * @param executor The executor to run calls on.
+     * @param maxInFlight Maximum number of calls running at once. Must be positive.
+     */
+    public CueCloudAsync(CueCloud cueCloud, ExecutorService executor, int maxInFlight) {
+        this(cueCloud, executor, maxInFlight, false);
+    }
+
+    private CueCloudAsync(CueCloud cueCloud, ExecutorService executor, int maxInFlight, boolean ownsExecutor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.cueCloud = cueCloud;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    private static ExecutorService newExecutor(CueCloud cueCloud) {
+        if (cueCloud.isVirtualThreads()) {
+            return CueCloudExecutors.newVirtualThreadPerTaskExecutor();
+        }
+        return CueCloudExecutors.newDaemonThreadPool("cuecloud-async-", DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Submit a call without waiting: it starts at once if fewer than <code>maxInFlight</code> calls are
+     * running, and is queued otherwise.
+     * @param <T> The result type.
+     * @param call The call to run.
+     * @return The future result of the call; failed at once if this client has shut down its executor.
+     */
+    public <T> CueCloudFuture<T> submit(Callable<T> call) {
+        if (shutdown) {
+            return CueCloudFuture.failed(new RejectedExecutionException("CueCloudAsync has been shut down"));
+        }
+        Call<T> future = new Call<>(call);
+        queued.add(future);
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Starts queued calls while fewer than <code>maxInFlight</code> are running. Called after a call is
+     * queued and after a call finishes, so a call queued while every slot is taken is started by the
+     * call that frees one.
+     */
+    private void dispatch() {
+        while (!queued.isEmpty() && inFlight.tryAcquire()) {
+            final Call<?> future = queued.poll();
+            if (future == null) {
+                inFlight.release();
+                continue;
+            }
+            future.holdsSlot.set(true);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            future.run();
+                        } finally {
+                            // A call cancelled while queued does not run, and so does not free its slot itself.
+                            future.releaseSlot();
+                            dispatch();
+                            if (ownsExecutor && shutdown && queued.isEmpty()) {
+                                executor.shutdown();
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.releaseSlot();
+                future.fail(e);
+            }
+        }
+    }
+
+    /**
+     * A submitted call, which frees its in-flight slot as it completes, before its callbacks run.
+     */
+    private final class Call<T> extends CueCloudFuture<T> {
+        private final AtomicBoolean holdsSlot = new AtomicBoolean();
+
+        Call(Callable<T> callable) {
+            super(callable);
+        }
+
+        void releaseSlot() {
+            if (holdsSlot.compareAndSet(true, false)) {
+                inFlight.release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            releaseSlot();
+            super.done();
+        }
+    }
+
+    /**
+     * @return The client calls are made with.
+     */
+    public CueCloud getCueCloud() {
+        return cueCloud;
+    }
+
+    /**
+     * @return Maximum number of calls running at once.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return Number of calls currently running.
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * @return Number of calls submitted and waiting for a running call to finish.
+     */
+    public int getQueued() {
+        return queued.size();
+    }
+
+    /**
+     * Shut down the executor if it was created by this instance. Calls already submitted, queued ones
+     * included, still complete; calls submitted afterwards fail.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            shutdown = true;
+            if (queued.isEmpty()) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#validateUser()}.
+     * @see CueCloud#validateUser()
+     */
+    public CueCloudFuture<String> validateUser() {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.validateUser();
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#getKeywords()}.
+     * @see CueCloud#getKeywords()
+     */
+    public CueCloudFuture<String> getKeywords() {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.getKeywords();
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#getBalance()}.
+     * @see CueCloud#getBalance()
+     */
+    public CueCloudFuture<String> getBalance() {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.getBalance();
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#makeDeposit(double, int)}.
+     * @see CueCloud#makeDeposit(double, int)
+     */
+    public CueCloudFuture<String> makeDeposit(final double amount, final int creditCardLast4Digits) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.makeDeposit(amount, creditCardLast4Digits);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#withdrawFunds(double)}.
+     * @see CueCloud#withdrawFunds(double)
+     */
+    public CueCloudFuture<String> withdrawFunds(final double amountInUSD) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.withdrawFunds(amountInUSD);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#grantBonus(String, Double, String, String)}.
+     * @see CueCloud#grantBonus(String, Double, String, String)
+     */
+    public CueCloudFuture<String> grantBonus(final String cueCompletionID, final Double amountInUSD, final String reason, final String noteToSelf) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.grantBonus(cueCompletionID, amountInUSD, reason, noteToSelf);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#getPayments(CueCloud.PaymentType, Integer, String, Integer)}.
+     * @see CueCloud#getPayments(CueCloud.PaymentType, Integer, String, Integer)
+     */
+    public CueCloudFuture<String> getPayments(final CueCloud.PaymentType paymentType, final Integer paymentID, final String noteToSelf, final Integer page) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.getPayments(paymentType, paymentID, noteToSelf, page);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#approveCueCompletion(String)}.
+     * @see CueCloud#approveCueCompletion(String)
+     */
+    public CueCloudFuture<String> approveCueCompletion(final String cueCompletionID) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.approveCueCompletion(cueCompletionID);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#declineCueCompletion(String)}.
+     * @see CueCloud#declineCueCompletion(String)
+     */
+    public CueCloudFuture<String> declineCueCompletion(final String cueCompletionID) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.declineCueCompletion(cueCompletionID);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#cancelCue(String)}.
+     * @see CueCloud#cancelCue(String)
+     */
+    public CueCloudFuture<String> cancelCue(final String cueID) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.cancelCue(cueID);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#getCueCompletions(String, Integer, CueCloud.CueCompletionStatus, Integer)}.
+     * @see CueCloud#getCueCompletions(String, Integer, CueCloud.CueCompletionStatus, Integer)
+     */
+    public CueCloudFuture<String> getCueCompletions(final String cueID, final Integer cueCompletionID, final CueCloud.CueCompletionStatus cueStatus, final Integer page) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.getCueCompletions(cueID, cueCompletionID, cueStatus, page);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#createCue}.
+     * @see CueCloud#createCue
+     */
+    public CueCloudFuture<String> createCue(final String title, final double amount, final int numOpportunities, final String description,
+            final Boolean isAnonymous, final Boolean pushNotificationOnCueCompletion, final Boolean disallowAnonymousCueCompletions,
+            final String iFrameURL, final Boolean uRLNotificationOnCueCompletion, final Boolean emailNotificationOnCueCompletion,
+            final Integer lifetimeInMinutes, final Integer timeLimitToCompleteCueInMinutes,
+            final Integer autoApproveCueCompletionAfterThisManyMinutes, final String noteToSelf, final String keywords) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.createCue(title, amount, numOpportunities, description, isAnonymous, pushNotificationOnCueCompletion,
+                        disallowAnonymousCueCompletions, iFrameURL, uRLNotificationOnCueCompletion, emailNotificationOnCueCompletion,
+                        lifetimeInMinutes, timeLimitToCompleteCueInMinutes, autoApproveCueCompletionAfterThisManyMinutes, noteToSelf, keywords);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#getCues(String, Integer, Boolean, CueCloud.CueStatus, String, Integer)}.
+     * @see CueCloud#getCues(String, Integer, Boolean, CueCloud.CueStatus, String, Integer)
+     */
+    public CueCloudFuture<String> getCues(final String cueID, final Integer cueGroupID, final Boolean hasPendingCueCompletions, final CueCloud.CueStatus cueStatus, final String noteToSelf, final Integer page) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.getCues(cueID, cueGroupID, hasPendingCueCompletions, cueStatus, noteToSelf, page);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#assignCue(String)}.
+     * @see CueCloud#assignCue(String)
+     */
+    public CueCloudFuture<String> assignCue(final String cueID) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.assignCue(cueID);
+            }
+        });
+    }
+
+    /**
+     * @return Future result of {@link CueCloud#submitCueCompletion(String, String, String, String, String, Boolean)}.
+     * @see CueCloud#submitCueCompletion(String, String, String, String, String, Boolean)
+     */
+    public CueCloudFuture<String> submitCueCompletion(final String assignmentID, final String answerText, final String videoURL, final String videoThumbnailURL, final String imageURL, final Boolean isAnonymous) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return cueCloud.submitCueCompletion(assignmentID, answerText, videoURL, videoThumbnailURL, imageURL, isAnonymous);
+            }
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs one CueCloud call per item of a collection with bounded parallelism.
+ * New calls are only submitted as earlier ones complete, so a large batch never
+ * queues more than <code>concurrency</code> calls at a time. Calls run on a pool of
+ * <code>concurrency</code> threads, or on one virtual thread each in virtual thread mode.
+ *
+ * @author nmvictor
+ */
+class CueCloudBatch {
+
+    /**
+     * The call to make for each item.
+     *
+     * @param <K> The type of the items.
+     */
+    interface Call<K> {
+
+        /**
+         * @param key The item to make the call for.
+         * @return JSON string in response to the call.
+         * @throws Exception If the call fails.
+         */
+        String call(K key) throws Exception;
+    }
+
+    private CueCloudBatch() {
+    }
+
+    /**
+     * Make <code>call</code> for every item in <code>keys</code>.
+     * @param <K> The type of the items.
+     * @param cueCloud The client the calls are made with.
+     * @param keys The items.
+     * @param concurrency Maximum number of calls in flight at once. Must be positive.
+     * @param call The call to make for each item.
+     * @return The outcome of every call.
+     * @throws InterruptedException If the calling thread is interrupted while waiting; calls not yet started are cancelled.
+     */
+    static <K> CueCloudBatchResult<K> run(CueCloud cueCloud, Collection<K> keys, int concurrency, final Call<K> call) throws InterruptedException {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        ExecutorService executor = cueCloud.isVirtualThreads() ? CueCloudExecutors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, keys.size())));
+        List<CueCloudFuture<String>> futures = new ArrayList<>(keys.size());
+        try {
+            CueCloudAsync async = new CueCloudAsync(cueCloud, executor, concurrency);
+            for (final K key : keys) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                futures.add(async.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return call.call(key);
+                    }
+                }));
+            }
+            List<CueCloudBatchResult.Item<K>> items = new ArrayList<>(keys.size());
+            int i = 0;
+            for (K key : keys) {
+                CueCloudFuture<String> future = futures.get(i++);
+                try {
+                    items.add(new CueCloudBatchResult.Item<>(key, future.get(), null));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    items.add(new CueCloudBatchResult.Item<K>(key, null, cause instanceof Exception ? (Exception) cause : e));
+                }
+            }
+            return new CueCloudBatchResult<>(items);
+        } catch (InterruptedException e) {
+            for (CueCloudFuture<String> future : futures) {
+                future.cancel(false);
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batch of CueCloud calls, such as {@link CueCloud#approveAll(java.util.Collection)},
+ * with the result or failure of every item, in the order the items were given.
+ *
+ * @param <K> The type of the items in the batch, for example a <code>CueCompletionID</code>.
+ * @author nmvictor
+ */
+public class CueCloudBatchResult<K> {
+    private final List<Item<K>> items;
+
+    CueCloudBatchResult(List<Item<K>> items) {
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    /**
+     * The outcome of one item of a batch.
+     *
+     * @param <K> The type of the item.
+     */
+    public static class Item<K> {
+        private final K key;
+        private final String result;
+        private final Exception failure;
+
+        Item(K key, String result, Exception failure) {
+            this.key = key;
+            this.result = result;
+            this.failure = failure;
+        }
+
+        /**
+         * @return The item this outcome belongs to.
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * @return The JSON response for this item, or <code>null</code> if it failed.
+         */
+        public String getResult() {
+            return result;
+        }
+
+        /**
+         * @return The reason this item failed, or <code>null</code> if it succeeded.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return <code>true</code> if the call for this item succeeded.
+         */
+        public boolean isSuccess() {
+            return failure == null;
+        }
+    }
+
+    /**
+     * @return The outcome of every item, in the order the items were given.
+     */
+    public List<Item<K>> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The items whose call succeeded.
+     */
+    public List<K> getSucceeded() {
+        List<K> succeeded = new ArrayList<>();
+        for (Item<K> item : items) {
+            if (item.isSuccess()) {
+                succeeded.add(item.getKey());
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * @return The outcome of every item whose call failed, in the order the items were given. An item
+     * given more than once appears once for each call that failed.
+     */
+    public List<Item<K>> getFailed() {
+        List<Item<K>> failed = new ArrayList<>();
+        for (Item<K> item : items) {
+            if (!item.isSuccess()) {
+                failed.add(item);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return Number of items whose call succeeded.
+     */
+    public int getSuccessCount() {
+        int count = 0;
+        for (Item<K> item : items) {
+            if (item.isSuccess()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of items whose call failed.
+     */
+    public int getFailureCount() {
+        return items.size() - getSuccessCount();
+    }
+
+    /**
+     * @return <code>true</code> if every call in the batch succeeded.
+     */
+    public boolean isAllSucceeded() {
+        return getFailureCount() == 0;
+    }
+}
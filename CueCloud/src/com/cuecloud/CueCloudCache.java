@@ -0,0 +1,196 @@
+package com.cuecloud;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded in-memory cache of the responses to read-only CueCloud calls, such as
+ * {@link CueCloud#getKeywords()}, {@link CueCloud#getBalance()} or filtered
+ * {@link CueCloud#getCues(String, Integer, Boolean, CueCloud.CueStatus, String, Integer)} lookups.
+ * <p>
+ * Responses are kept for a time to live chosen by endpoint path, see
+ * {@link #setTimeToLive(String, long)}; calls to paths without one are never cached. When the cache is full,
+ * the least recently used response is evicted. A successful call that changes state, such as
+ * {@link CueCloud#createCue} or a payment, drops the cached responses of the endpoint groups it affects.
+ * <p>
+ * Install a cache with {@link CueCloud#setCache(CueCloudCache)}. Entries are keyed by API key and
+ * full URL, so one cache may be shared by several instances.
+ *
+ * @author nmvictor
+ */
+public class CueCloudCache {
+    /**
+     * Default maximum number of responses kept.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final int maxEntries;
+    private final Map<String, Long> timeToLiveNanos = new LinkedHashMap<>();
+    private final LinkedHashMap<String, CachedResponse> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long generation;
+
+    private static final class CachedResponse {
+        final CueCloud.EndpointGroup group;
+        final byte[] body;
+        final long expiresAt;
+
+        CachedResponse(CueCloud.EndpointGroup group, byte[] body, long expiresAt) {
+            this.group = group;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Construct a cache holding up to {@link #DEFAULT_MAX_ENTRIES} responses.
+     */
+    public CueCloudCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Construct a cache with the default times to live: 10 minutes for keywords, 5 minutes for credential
+     * validation, 5 seconds for the balance, 30 seconds for Cue and payment listings and 10 seconds for completions.
+     * @param maxEntries Maximum number of responses kept. Must be positive.
+     */
+    public CueCloudCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                if (size() > CueCloudCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        setTimeToLive("cues/keywords/", TimeUnit.MINUTES.toMillis(10));
+        setTimeToLive("validate/", TimeUnit.MINUTES.toMillis(5));
+        setTimeToLive("balance/", TimeUnit.SECONDS.toMillis(5));
+        setTimeToLive("cues/", TimeUnit.SECONDS.toMillis(30));
+        setTimeToLive("payments/", TimeUnit.SECONDS.toMillis(30));
+        setTimeToLive("completions/", TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Set how long responses from an endpoint are kept. The longest path matching a call applies,
+     * so <code>cues/keywords/</code> takes precedence over <code>cues/</code>.
+     * @param path The endpoint path relative to the API base URL, for example <code>balance/</code>.
+     * @param ttlMillis How long responses are kept, or <code>0</code> to stop caching the endpoint.
+     */
+    public synchronized void setTimeToLive(String path, long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis must not be negative");
+        }
+        timeToLiveNanos.put(path, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+    }
+
+    /**
+     * @param path The endpoint path relative to the API base URL, without query string.
+     * @return How long responses from <code>path</code> are kept, in milliseconds, or <code>0</code> if they are not cached.
+     */
+    public synchronized long getTimeToLive(String path) {
+        return TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos(path));
+    }
+
+    synchronized long timeToLiveNanos(String path) {
+        String best = null;
+        for (String prefix : timeToLiveNanos.keySet()) {
+            if (path.startsWith(prefix) && (best == null || prefix.length() > best.length())) {
+                best = prefix;
+            }
+        }
+        return best == null ? 0 : timeToLiveNanos.get(best);
+    }
+
+    /**
+     * @param key The cache key of a call.
+     * @return The cached response body, or <code>null</code> if there is none or it has expired.
+     */
+    synchronized byte[] get(String key) {
+        CachedResponse entry = entries.get(key);
+        if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+            hits.incrementAndGet();
+            return entry.body;
+        }
+        if (entry != null) {
+            entries.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return A token to pass to {@link #put}, taken before the call is made, so that a response
+     * read while an invalidation happened is not stored.
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void put(String key, CueCloud.EndpointGroup group, byte[] body, long ttlNanos, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        entries.put(key, new CachedResponse(group, body, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Drop every cached response from an endpoint group.
+     * @param group The endpoint group.
+     */
+    public synchronized void invalidate(CueCloud.EndpointGroup group) {
+        generation++;
+        for (Iterator<CachedResponse> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().group == group) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop every cached response.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * @return The number of responses currently cached, including expired ones not yet dropped.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of calls answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of cacheable calls that had to be sent to the server.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of responses dropped to make room for newer ones.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,23 @@
+package com.cuecloud;
+
+/**
+ * Receives the outcome of an asynchronous CueCloud call.
+ *
+ * @param <T> The result type.
+ * @author nmvictor
+ * @see CueCloudFuture#addCallback(CueCloudCallback)
+ */
+public interface CueCloudCallback<T> {
+
+    /**
+     * Called when the call completed successfully.
+     * @param result The result of the call.
+     */
+    void completed(T result);
+
+    /**
+     * Called when the call failed.
+     * @param cause The reason for the failure, usually a {@link CueCloud.CueCloudException}.
+     */
+    void failed(Exception cause);
+}
@@ -0,0 +1,425 @@
+package com.cuecloud;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the {@link CueCloud.EndpointGroup endpoint groups} of a {@link CueCloud} from taking each other
+ * down when one part of the API degrades. Each group gets:
+ * <ul>
+ * <li>A bulkhead: a cap on its calls in flight, set with {@link #setMaxConcurrentCalls(CueCloud.EndpointGroup, int, long)}.
+ * All groups share the connections of the transport, so a group whose calls hang would otherwise hold
+ * every connection and stall the others. A call over the cap waits a bounded time for a slot, then fails.</li>
+ * <li>A circuit breaker. Once the last calls of the group fail or run slow at more than the threshold
+ * rate, the breaker opens and calls to the group fail at once, without reaching the server. After
+ * {@link #setOpenDuration(long) a while} it lets a few probe calls through: if they all succeed in time the
+ * breaker closes again, otherwise it stays open for another period.</li>
+ * </ul>
+ * A call counts as failed if it got no response, which includes timeouts, or a <code>5xx</code> status.
+ * Other statuses are the caller's own errors or, for <code>429</code>, a matter for {@link CueCloudRateLimiter},
+ * and count as successes. A rejected call fails with a {@link CueCloud.CueCloudException} without a status,
+ * which {@link CueCloudRetryPolicy} does not retry. A call throttled by a {@link CueCloudRateLimiter} takes its
+ * slot only once the limiter lets it through, so time spent throttled by the client holds no slot and does
+ * not count as latency.
+ * <p>
+ * Install a breaker with {@link CueCloud#setCircuitBreaker(CueCloudCircuitBreaker)}; instances sharing a
+ * transport should share the breaker too, so their calls are counted against the same caps.
+ *
+ * @author nmvictor
+ */
+public class CueCloudCircuitBreaker {
+    /**
+     * Calls in flight allowed per group. Leaves two connections of a default {@link KeepAliveHttpTransport}
+     * to the other groups when one group hangs.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = KeepAliveHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST - 2;
+    /**
+     * How long a call waits for a slot in its group's bulkhead before it fails, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 2000;
+    /**
+     * Number of recent calls per group the failure and slow call rates are taken over.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    /**
+     * Number of calls a group must have made before its breaker may open.
+     */
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    /**
+     * Share of failed calls at which a breaker opens.
+     */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    /**
+     * A call taking longer than this, in milliseconds, counts as slow.
+     */
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 10000;
+    /**
+     * Share of slow calls at which a breaker opens.
+     */
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.5;
+    /**
+     * How long an open breaker fails calls before probing, in milliseconds.
+     */
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+    /**
+     * Number of probe calls a half-open breaker lets through, all of which must succeed for it to close.
+     */
+    public static final int DEFAULT_PROBE_CALLS = 3;
+
+    /**
+     * State of the breaker of a group.
+     */
+    public enum State {
+        /**
+         * Calls are made, and their outcomes recorded.
+         */
+        CLOSED,
+        /**
+         * Calls fail without being made.
+         */
+        OPEN,
+        /**
+         * A few probe calls are made to tell whether the group has recovered; other calls fail.
+         */
+        HALF_OPEN
+    }
+
+    private final Map<CueCloud.EndpointGroup, Group> groups = new EnumMap<>(CueCloud.EndpointGroup.class);
+    private volatile double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private volatile long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_CALL_MILLIS);
+    private volatile double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private volatile long openNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_MILLIS);
+    private volatile int probeCalls = DEFAULT_PROBE_CALLS;
+    private final int windowSize;
+    private final int minimumCalls;
+
+    /**
+     * Construct a breaker with the default window and limits for every group.
+     */
+    public CueCloudCircuitBreaker() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS);
+    }
+
+    /**
+     * Construct a breaker with the default limits for every group.
+     * @param windowSize Number of recent calls per group the failure and slow call rates are taken over. Must be positive.
+     * @param minimumCalls Number of calls a group must have made before its breaker may open; at most <code>windowSize</code>.
+     */
+    public CueCloudCircuitBreaker(int windowSize, int minimumCalls) {
+        if (minimumCalls < 1 || windowSize < minimumCalls) {
+            throw new IllegalArgumentException("Require 1 <= minimumCalls <= windowSize");
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        for (CueCloud.EndpointGroup group : CueCloud.EndpointGroup.values()) {
+            groups.put(group, new Group());
+        }
+    }
+
+    /**
+     * Set the bulkhead of <code>group</code>.
+     * @param group The endpoint group.
+     * @param maxConcurrentCalls Number of calls to <code>group</code> allowed in flight. Must be positive.
+     * @param maxWaitMillis How long a call over the cap waits for a slot before it fails; <code>0</code> to fail at once.
+     */
+    public void setMaxConcurrentCalls(CueCloud.EndpointGroup group, int maxConcurrentCalls, long maxWaitMillis) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis must not be negative");
+        }
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            g.maxConcurrentCalls = maxConcurrentCalls;
+            g.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            g.slotFreed.signalAll();
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * @param failureRateThreshold Share of failed calls, over the window, at which a breaker opens. Between 0 exclusive and 1 inclusive.
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+            throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @param slowCallMillis A call taking longer than this counts as slow. Must be positive.
+     * @param slowCallRateThreshold Share of slow calls, over the window, at which a breaker opens. Between 0 exclusive and 1 inclusive.
+     */
+    public void setSlowCallThreshold(long slowCallMillis, double slowCallRateThreshold) {
+        if (slowCallMillis < 1) {
+            throw new IllegalArgumentException("slowCallMillis must be positive");
+        }
+        if (!(slowCallRateThreshold > 0 && slowCallRateThreshold <= 1)) {
+            throw new IllegalArgumentException("slowCallRateThreshold must be in (0, 1]");
+        }
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * @param openMillis How long an open breaker fails calls before letting probe calls through. Must be positive.
+     */
+    public void setOpenDuration(long openMillis) {
+        if (openMillis < 1) {
+            throw new IllegalArgumentException("openMillis must be positive");
+        }
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @param probeCalls Number of probe calls a half-open breaker lets through, all of which must succeed for it to close. Must be positive.
+     */
+    public void setProbeCalls(int probeCalls) {
+        if (probeCalls < 1) {
+            throw new IllegalArgumentException("probeCalls must be positive");
+        }
+        this.probeCalls = probeCalls;
+    }
+
+    /**
+     * @param group The endpoint group.
+     * @return The state of the breaker of <code>group</code>. An open breaker whose period has passed is reported
+     * half-open, as the next call to the group will be a probe.
+     */
+    public State getState(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            if (g.state == State.OPEN && System.nanoTime() - g.openedAt >= openNanos) {
+                return State.HALF_OPEN;
+            }
+            return g.state;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * @param group The endpoint group.
+     * @return The number of calls to <code>group</code> currently in flight.
+     */
+    public int getInFlight(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            return g.inFlight;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * @param group The endpoint group.
+     * @return The number of calls to <code>group</code> failed without being made, by the bulkhead or the breaker.
+     */
+    public long getRejectedCount(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            return g.rejected;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Refuse a call to <code>group</code> while its breaker is open, before the call queues anywhere else.
+     * @param group The endpoint group of the call.
+     * @return <code>true</code> if the call must fail; <code>false</code> if it may go on to {@link #acquire(CueCloud.EndpointGroup)}.
+     */
+    boolean rejectIfOpen(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            if (g.state == State.OPEN && System.nanoTime() - g.openedAt < openNanos) {
+                g.rejected++;
+                return true;
+            }
+            return false;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Take a slot for a call to <code>group</code>, waiting up to the bulkhead's limit for one.
+     * The returned permit must be released exactly once.
+     * @param group The endpoint group of the call.
+     * @return The permit for the call, or <code>null</code> if the call must fail: the breaker is open, or no slot came free in time.
+     * @throws InterruptedException If interrupted while waiting. No permit is held in that case.
+     */
+    Permit acquire(CueCloud.EndpointGroup group) throws InterruptedException {
+        Group g = groups.get(group);
+        g.lock.lockInterruptibly();
+        try {
+            long now = System.nanoTime();
+            boolean probe = false;
+            if (g.state == State.OPEN) {
+                if (now - g.openedAt < openNanos) {
+                    g.rejected++;
+                    return null;
+                }
+                g.halfOpen();
+            }
+            if (g.state == State.HALF_OPEN) {
+                if (g.probesStarted >= probeCalls) {
+                    g.rejected++;
+                    return null;
+                }
+                probe = true;
+            }
+            long waitNanos = g.maxWaitNanos;
+            while (g.inFlight >= g.maxConcurrentCalls) {
+                if (waitNanos <= 0) {
+                    g.rejected++;
+                    return null;
+                }
+                waitNanos = g.slotFreed.awaitNanos(waitNanos);
+            }
+            if (probe) {
+                if (g.state != State.HALF_OPEN || g.probesStarted >= probeCalls) {
+                    // The breaker moved on while this call waited for a slot.
+                    g.rejected++;
+                    return null;
+                }
+                g.probesStarted++;
+            }
+            g.inFlight++;
+            return new Permit(g, g.generation, probe);
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Per-group bulkhead and breaker state, guarded by <code>lock</code>. Waiting happens on a
+     * {@link Condition}, never while holding a monitor.
+     */
+    private final class Group {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition slotFreed = lock.newCondition();
+        int maxConcurrentCalls = DEFAULT_MAX_CONCURRENT_CALLS;
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_WAIT_MILLIS);
+        int inFlight;
+        long rejected;
+        State state = State.CLOSED;
+        /**
+         * Changes whenever the state does, so the outcome of a call begun in an earlier state is not recorded.
+         */
+        long generation;
+        long openedAt;
+        int probesStarted;
+        int probesSucceeded;
+        /**
+         * Outcomes of the last calls in a ring: bit 0 set if the call failed, bit 1 if it was slow.
+         */
+        final byte[] outcomes = new byte[windowSize];
+        int next;
+        int recorded;
+        int failures;
+        int slowCalls;
+
+        void onComplete(long generationAtStart, boolean probe, boolean failed, boolean slow) {
+            lock.lock();
+            try {
+                inFlight--;
+                slotFreed.signal();
+                if (generationAtStart != generation) {
+                    return;
+                }
+                if (probe) {
+                    if (failed || slow) {
+                        open();
+                    } else if (++probesSucceeded >= probeCalls) {
+                        close();
+                    }
+                    return;
+                }
+                record(failed, slow);
+                if (recorded >= minimumCalls && (failures >= failureRateThreshold * recorded
+                        || slowCalls >= slowCallRateThreshold * recorded)) {
+                    open();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void record(boolean failed, boolean slow) {
+            if (recorded == outcomes.length) {
+                byte dropped = outcomes[next];
+                failures -= dropped & 1;
+                slowCalls -= (dropped >> 1) & 1;
+            } else {
+                recorded++;
+            }
+            outcomes[next] = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+            failures += failed ? 1 : 0;
+            slowCalls += slow ? 1 : 0;
+            next = (next + 1) % outcomes.length;
+        }
+
+        void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            generation++;
+        }
+
+        void halfOpen() {
+            state = State.HALF_OPEN;
+            probesStarted = 0;
+            probesSucceeded = 0;
+            generation++;
+        }
+
+        void close() {
+            state = State.CLOSED;
+            next = 0;
+            recorded = 0;
+            failures = 0;
+            slowCalls = 0;
+            generation++;
+        }
+    }
+
+    /**
+     * Permission to make one call. Released by {@link CueCloud} once the call completes.
+     */
+    final class Permit {
+        private final Group group;
+        private final long generation;
+        private final boolean probe;
+        private final long startedAt = System.nanoTime();
+        private boolean released;
+
+        private Permit(Group group, long generation, boolean probe) {
+            this.group = group;
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        /**
+         * Return the slot and record the outcome of the call with the breaker.
+         * @param statusCode The HTTP status of the response, or <code>-1</code> if the call failed without one.
+         */
+        void release(int statusCode) {
+            if (released) {
+                return;
+            }
+            released = true;
+            group.onComplete(generation, probe, statusCode < 0 || statusCode >= 500, System.nanoTime() - startedAt > slowCallNanos);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.cuecloud;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The calls of the API: for each, its path relative to the base URL, its HTTP method, and the names
+ * of its parameters, sent in the query string or as a JSON body. Parameter names are encoded once,
+ * when this class is loaded, and a call's parameters are encoded in one pass over the values given in
+ * the declared order. A <code>null</code> value is an absent parameter and is left out altogether,
+ * rather than sent as the literal <code>null</code>.
+ *
+ * @author nmvictor
+ */
+enum CueCloudEndpoint {
+    VALIDATE("validate/", "GET", Encoding.QUERY),
+    KEYWORDS("cues/keywords/", "GET", Encoding.QUERY),
+    BALANCE("balance/", "GET", Encoding.QUERY),
+    DEPOSIT("payments/deposit/", "POST", Encoding.BODY, "AmountInUSD", "CreditCardLastFourDigits"),
+    WITHDRAW("payments/withdraw/", "POST", Encoding.BODY, "AmountInUSD"),
+    BONUS("payments/bonus/", "POST", Encoding.BODY, "Amount", "CueCompletionID", "Reason", "NoteToSelf"),
+    PAYMENTS("payments/", "GET", Encoding.QUERY, "PaymentType", "PaymentID", "Page", "NoteToSelf"),
+    APPROVE_COMPLETION("completions/approve/", "POST", Encoding.BODY, "CueCompletionID"),
+    DECLINE_COMPLETION("completions/decline/", "POST", Encoding.BODY, "CueCompletionID"),
+    COMPLETIONS("completions/", "GET", Encoding.QUERY, "CueID", "CueCompletionID", "Page", "Status"),
+    /**
+     * The body is written by {@link CueSpec#writeTo(JsonWriter)}.
+     */
+    CREATE_CUE("cues/create", "POST", Encoding.BODY),
+    CANCEL_CUE("cues/cancel/", "POST", Encoding.BODY, "CueID"),
+    CUES("cues/", "GET", Encoding.QUERY, "CueID", "GroupID", "NoteToSelf", "HasPendingCueCompletions", "Status", "Page"),
+    ASSIGN_CUE("cues/", "GET", Encoding.BODY, "CueID"),
+    SUBMIT_COMPLETION("cues/complete", "GET", Encoding.BODY, "AssignmentID", "AnswerText", "VideoURL", "VideoThumbnailURL", "ImageURL", "IsAnonymous");
+
+    /**
+     * Where a call's parameters are sent.
+     */
+    enum Encoding {
+        QUERY,
+        BODY
+    }
+
+    final String path;
+    final String httpMethod;
+    final Encoding encoding;
+    private final String[] names;
+    private final String[] queryNames;
+    private final byte[][] memberNames;
+
+    private CueCloudEndpoint(String path, String httpMethod, Encoding encoding, String... names) {
+        this.path = path;
+        this.httpMethod = httpMethod;
+        this.encoding = encoding;
+        this.names = names;
+        this.queryNames = new String[names.length];
+        this.memberNames = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            queryNames[i] = encode(names[i]);
+            memberNames[i] = JsonWriter.encodeName(names[i]);
+        }
+    }
+
+    /**
+     * Append the query string of a call to <code>url</code>.
+     * @param url The URL of this endpoint.
+     * @param values The value of each parameter, in declared order; <code>null</code> for an absent one.
+     * @return <code>url</code> followed by the present parameters. A parameter whose value is empty is sent without one.
+     */
+    String withQuery(String url, Object... values) {
+        checkArity(values);
+        StringBuilder query = null;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            if (query == null) {
+                query = new StringBuilder(url.length() + 64).append(url).append('?');
+            } else {
+                query.append('&');
+            }
+            query.append(queryNames[i]);
+            String value = values[i].toString();
+            if (!value.isEmpty()) {
+                query.append('=').append(encode(value));
+            }
+        }
+        return query == null ? url : query.toString();
+    }
+
+    /**
+     * Write the body of a call as a JSON object.
+     * @param writer The writer to append the body to.
+     * @param values The value of each parameter, in declared order; <code>null</code> for an absent one.
+     */
+    void writeBody(JsonWriter writer, Object... values) {
+        checkArity(values);
+        writer.beginObject();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                writer.writeMember(memberNames[i], values[i]);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * @param values The value of each parameter, in declared order; <code>null</code> for an absent one.
+     * @return The present parameters by name, in declared order, to be kept and sent later with
+     * {@link JsonWriter#writeObject(Map)}, which writes the same body as {@link #writeBody(JsonWriter, Object...)}.
+     */
+    Map<String, Object> toMap(Object... values) {
+        checkArity(values);
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                map.put(names[i], values[i]);
+            }
+        }
+        return map;
+    }
+
+    private void checkArity(Object[] values) {
+        if (values.length != names.length) {
+            throw new IllegalArgumentException(this + " takes " + names.length + " parameters, not " + values.length);
+        }
+    }
+
+    static String encode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.cuecloud;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running blocking {@link CueCloud} calls concurrently, on platform threads or,
+ * on Java 21 and later, on virtual threads.
+ * <p>
+ * The library is built for Java 7, so virtual threads are reached by reflection and
+ * {@link #isVirtualThreadAvailable()} tells whether the running JVM has them. On a virtual thread,
+ * a blocked call parks the virtual thread and frees its carrier: the transport waits for
+ * connections on a {@link java.util.concurrent.Semaphore}, the rate limiter and shared reads wait on
+ * <code>java.util.concurrent</code> locks, and no I/O or wait happens inside a <code>synchronized</code>
+ * block. <code>HttpURLConnection</code> itself only stopped pinning carriers in JDK 19, which
+ * replaced its monitors with locks.
+ *
+ * @author nmvictor
+ */
+public final class CueCloudExecutors {
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private CueCloudExecutors() {
+    }
+
+    private static Method findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if this JVM can run tasks on virtual threads.
+     */
+    public static boolean isVirtualThreadAvailable() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return false;
+        }
+        try {
+            // Present but unusable as a preview feature on Java 19 and 20 without --enable-preview.
+            newVirtualThreadPerTaskExecutor().shutdown();
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task, for fanning out
+     * tens of thousands of blocking calls without a thread pool.
+     * @return A new executor. Shut it down when done.
+     * @throws UnsupportedOperationException If this JVM has no virtual threads.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new UnsupportedOperationException(cause);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    /**
+     * Create a fixed pool of daemon platform threads.
+     * @param namePrefix The prefix of the thread names, followed by a number.
+     * @param threads The number of threads. Must be positive.
+     * @return A new executor. Shut it down when done.
+     */
+    public static ExecutorService newDaemonThreadPool(final String namePrefix, int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param thread A thread.
+     * @return <code>true</code> if <code>thread</code> is a virtual thread. Virtual threads are
+     * not reused, so per-thread caches are of no use on them.
+     */
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
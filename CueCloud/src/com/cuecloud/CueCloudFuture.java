@@ -0,0 +1,103 @@
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link java.util.concurrent.Future} for the result of an asynchronous CueCloud call
+ * that can notify {@link CueCloudCallback callbacks} when it completes, so callers do not
+ * need to park a thread on {@link #get()}.
+ *
+ * @param <T> The result type.
+ * @author nmvictor
+ */
+public class CueCloudFuture<T> extends FutureTask<T> {
+    private final List<CueCloudCallback<? super T>> callbacks = new ArrayList<>();
+    private boolean notified;
+
+    /**
+     * Construct a future that will run <code>callable</code>.
+     * @param callable The call to run.
+     */
+    public CueCloudFuture(Callable<T> callable) {
+        super(callable);
+    }
+
+    /**
+     * Create a future that has already failed.
+     * @param <T> The result type.
+     * @param cause The reason for the failure.
+     * @return A completed future whose {@link #get()} throws an {@link ExecutionException} wrapping <code>cause</code>.
+     */
+    public static <T> CueCloudFuture<T> failed(final Exception cause) {
+        CueCloudFuture<T> future = new CueCloudFuture<>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                throw cause;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * Fail this future without running its call, if it has not completed yet.
+     * @param cause The reason for the failure.
+     */
+    void fail(Exception cause) {
+        setException(cause);
+    }
+
+    /**
+     * Register a callback to run when this future completes. If it has already completed the
+     * callback runs immediately on the calling thread; otherwise it runs on the thread that completes it.
+     * Callbacks are not run for cancelled futures.
+     * @param callback The callback to register.
+     * @return This future, for chaining.
+     */
+    public CueCloudFuture<T> addCallback(CueCloudCallback<? super T> callback) {
+        synchronized (callbacks) {
+            if (!notified && !isDone()) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<CueCloudCallback<? super T>> toNotify;
+        synchronized (callbacks) {
+            notified = true;
+            toNotify = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (CueCloudCallback<? super T> callback : toNotify) {
+            notify(callback);
+        }
+    }
+
+    private void notify(CueCloudCallback<? super T> callback) {
+        if (isCancelled()) {
+            return;
+        }
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            callback.failed(cause instanceof Exception ? (Exception) cause : e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.failed(e);
+            return;
+        }
+        callback.completed(result);
+    }
+}
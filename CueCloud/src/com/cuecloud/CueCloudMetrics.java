@@ -0,0 +1,78 @@
+package com.cuecloud;
+
+/**
+ * Receives measurements of the calls a {@link CueCloud} makes. Install one with
+ * {@link CueCloud#setMetrics(CueCloudMetrics)}; {@link InMemoryCueCloudMetrics} keeps latency
+ * histograms and counters per endpoint, and other implementations can forward to a metrics library.
+ * <p>
+ * Endpoints are named by their path relative to the API base URL, without query string,
+ * for example <code>cues/</code> or <code>payments/withdraw/</code>. Durations are in nanoseconds.
+ * Methods are called on the thread making the call and should return quickly.
+ *
+ * @author nmvictor
+ */
+public interface CueCloudMetrics {
+
+    /**
+     * Discards every measurement. Used when no metrics are installed.
+     */
+    CueCloudMetrics NONE = new CueCloudMetrics() {
+        @Override
+        public void call(String endpoint, String method, int statusCode, long latencyNanos, int attempts) {
+        }
+
+        @Override
+        public void exchange(String endpoint, String method, int statusCode, long connectNanos, long serverNanos,
+                long totalNanos, long bytesSent, long bytesReceived) {
+        }
+
+        @Override
+        public void retry(String endpoint, int attempt, int statusCode) {
+        }
+
+        @Override
+        public void connectionPool(String host, int inUse, int capacity) {
+        }
+    };
+
+    /**
+     * A call to the API completed, after any retries.
+     * @param endpoint The endpoint called.
+     * @param method The HTTP method.
+     * @param statusCode The status of the last response, or <code>-1</code> if the call failed without one.
+     * @param latencyNanos Time from the start of the call until its result was decoded, including retries and waits.
+     * @param attempts The number of requests sent, or <code>0</code> if the call was answered from the
+     * {@link CueCloudCache cache} or by sharing another thread's request.
+     */
+    void call(String endpoint, String method, int statusCode, long latencyNanos, int attempts);
+
+    /**
+     * One HTTP request and response, reported by the transport.
+     * @param endpoint The endpoint called.
+     * @param method The HTTP method.
+     * @param statusCode The response status, or <code>-1</code> if no response was received.
+     * @param connectNanos Time to obtain a connection: near zero when a kept-alive connection was reused.
+     * @param serverNanos Time from sending the request until the response status arrived.
+     * @param totalNanos Time from asking for a connection until the response body was read.
+     * @param bytesSent Size of the request body as sent, after any compression.
+     * @param bytesReceived Size of the response body read, as received before any decompression.
+     */
+    void exchange(String endpoint, String method, int statusCode, long connectNanos, long serverNanos,
+            long totalNanos, long bytesSent, long bytesReceived);
+
+    /**
+     * A failed attempt is about to be retried.
+     * @param endpoint The endpoint called.
+     * @param attempt The number of the attempt that failed, starting at 1.
+     * @param statusCode The status of the failed attempt, or <code>-1</code> if it failed without a response.
+     */
+    void retry(String endpoint, int attempt, int statusCode);
+
+    /**
+     * A request took a connection from the transport's pool for a host.
+     * @param host The host, as <code>protocol://host:port</code>.
+     * @param inUse The number of connections to the host now in use, including this one.
+     * @param capacity The maximum number of connections to the host.
+     */
+    void connectionPool(String host, int inUse, int capacity);
+}
@@ -0,0 +1,515 @@
+package com.cuecloud;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A local copy of the account's Cues and CueCompletions, kept in a file and indexed in memory, so
+ * reporting queries by status, Cue, group or note to self run locally instead of paging through
+ * {@link CueCloud#fetchCues} and {@link CueCloud#fetchCueCompletions}.
+ * <p>
+ * The mirror is filled with {@link #sync()}, or with {@link #syncCues()} and
+ * {@link #syncCueCompletions(String)} for finer control, which page through the API and record
+ * every Cue and completion that is new or has changed. Records are appended to the file, which
+ * is memory-mapped and scanned to rebuild the mirror when it is opened again; the latest record of
+ * an object wins, and a record cut short by a crash is discarded. Use {@link #compact()} to drop
+ * records that were replaced.
+ * <p>
+ * Queries and syncs may run from several threads; queries see each synced page as a whole.
+ *
+ * @author nmvictor
+ */
+public class CueCloudMirror implements Closeable {
+    private static final byte CUE = 'C';
+    private static final byte COMPLETION = 'P';
+    /**
+     * Size of the header of each record: its length and its kind.
+     */
+    private static final int HEADER_BYTES = 5;
+
+    private final CueCloud cueCloud;
+    private final File file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final JsonWriter writer = new JsonWriter();
+    private RandomAccessFile data;
+    private FileChannel channel;
+
+    private final Map<String, Cue> cues = new LinkedHashMap<>();
+    private final Map<CueCloud.CueStatus, Set<String>> cuesByStatus = new HashMap<>();
+    private final Map<Integer, Set<String>> cuesByGroup = new HashMap<>();
+    private final Map<String, Set<String>> cuesByNote = new HashMap<>();
+    private final Map<String, CueCompletion> completions = new LinkedHashMap<>();
+    private final Map<String, Set<String>> completionsByCue = new HashMap<>();
+    private final Map<CueCloud.CueCompletionStatus, Set<String>> completionsByStatus = new HashMap<>();
+    private int replacedRecords;
+
+    /**
+     * Open a mirror, loading what was recorded in <code>file</code> before.
+     * @param cueCloud The client to sync with.
+     * @param file The file to keep the mirror in; created if it does not exist.
+     * @throws IOException If the file cannot be read or created.
+     */
+    public CueCloudMirror(CueCloud cueCloud, File file) throws IOException {
+        this.cueCloud = cueCloud;
+        this.file = file;
+        open();
+    }
+
+    private void open() throws IOException {
+        data = new RandomAccessFile(file, "rw");
+        channel = data.getChannel();
+        long valid = load();
+        if (valid < channel.size()) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+    }
+
+    /**
+     * Reads every complete record of the file into memory.
+     * @return The length of the file up to the end of its last complete record.
+     */
+    private long load() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = 0;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            byte kind = buffer.get();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+            Map<String, Object> fields;
+            try (JsonReader reader = new JsonReader(new BufferInputStream(record))) {
+                fields = reader.nextObject();
+            }
+            if (kind == CUE) {
+                putCue(new Cue(fields));
+            } else if (kind == COMPLETION) {
+                putCompletion(new CueCompletion(fields));
+            }
+            position = buffer.position();
+        }
+        return position;
+    }
+
+    /**
+     * Record every Cue and the completions of every Cue.
+     * @return Number of Cues and completions that were new or changed.
+     * @throws com.cuecloud.CueCloud.CueCloudException If a call fails. What was synced before is kept.
+     * @throws IOException If the mirror cannot be written.
+     */
+    public int sync() throws CueCloud.CueCloudException, IOException {
+        int changed = syncCues();
+        for (String cueID : getCueIDs()) {
+            changed += syncCueCompletions(cueID);
+        }
+        return changed;
+    }
+
+    /**
+     * Record every Cue.
+     * @return Number of Cues that were new or changed.
+     * @throws com.cuecloud.CueCloud.CueCloudException If a call fails. The pages synced before are kept.
+     * @throws IOException If the mirror cannot be written.
+     */
+    public int syncCues() throws CueCloud.CueCloudException, IOException {
+        int changed = 0;
+        int read = 0;
+        for (int pageNumber = 1;; pageNumber++) {
+            Page<Cue> page = cueCloud.fetchCues(null, null, null, null, null, pageNumber);
+            changed += record(CUE, page.getItems());
+            read += page.getItems().size();
+            if (isLastPage(page, read)) {
+                return changed;
+            }
+        }
+    }
+
+    /**
+     * Record every completion of a Cue.
+     * @param cueID The ID of the Cue.
+     * @return Number of completions that were new or changed.
+     * @throws com.cuecloud.CueCloud.CueCloudException If a call fails. The pages synced before are kept.
+     * @throws IOException If the mirror cannot be written.
+     */
+    public int syncCueCompletions(String cueID) throws CueCloud.CueCloudException, IOException {
+        int changed = 0;
+        int read = 0;
+        for (int pageNumber = 1;; pageNumber++) {
+            Page<CueCompletion> page = cueCloud.fetchCueCompletions(cueID, null, null, pageNumber);
+            List<CueCompletion> items = new ArrayList<>(page.getItems().size());
+            for (CueCompletion completion : page.getItems()) {
+                if (completion.getCueID() == null) {
+                    // Listings of one Cue may leave out its ID; the index needs it.
+                    Map<String, Object> fields = new LinkedHashMap<>(completion.getFields());
+                    fields.put("CueID", cueID);
+                    completion = new CueCompletion(fields);
+                }
+                items.add(completion);
+            }
+            changed += record(COMPLETION, items);
+            read += items.size();
+            if (isLastPage(page, read)) {
+                return changed;
+            }
+        }
+    }
+
+    /**
+     * @param read Number of items read so far, including <code>page</code>.
+     */
+    private static boolean isLastPage(Page<?> page, int read) {
+        int total = page.getTotalResults();
+        return page.getItems().isEmpty() || (total >= 0 && read >= total);
+    }
+
+    /**
+     * Appends the objects of one page that are new or changed, and indexes them.
+     */
+    private int record(byte kind, List<? extends CueCloudObject> objects) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int changed = 0;
+            for (CueCloudObject object : objects) {
+                String id = object.getString("ID");
+                if (id == null) {
+                    continue;
+                }
+                CueCloudObject previous = kind == CUE ? cues.get(id) : completions.get(id);
+                if (previous != null && previous.getFields().equals(object.getFields())) {
+                    continue;
+                }
+                append(kind, object);
+                if (kind == CUE) {
+                    putCue((Cue) object);
+                } else {
+                    putCompletion((CueCompletion) object);
+                }
+                changed++;
+            }
+            if (changed > 0) {
+                channel.force(false);
+            }
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(byte kind, CueCloudObject object) throws IOException {
+        writer.reset();
+        writer.writeObject(object.getFields());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(writer.length()).put(kind).flip();
+        ByteBuffer body = ByteBuffer.wrap(writer.buffer(), 0, writer.length());
+        ByteBuffer[] record = {header, body};
+        while (body.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private void putCue(Cue cue) {
+        Cue previous = cues.put(cue.getID(), cue);
+        if (previous != null) {
+            replacedRecords++;
+            unindex(cuesByStatus, previous.getStatus(), previous.getID());
+            unindex(cuesByGroup, previous.getGroupID(), previous.getID());
+            unindex(cuesByNote, previous.getNoteToSelf(), previous.getID());
+        }
+        index(cuesByStatus, cue.getStatus(), cue.getID());
+        index(cuesByGroup, cue.getGroupID(), cue.getID());
+        index(cuesByNote, cue.getNoteToSelf(), cue.getID());
+    }
+
+    private void putCompletion(CueCompletion completion) {
+        CueCompletion previous = completions.put(completion.getID(), completion);
+        if (previous != null) {
+            replacedRecords++;
+            unindex(completionsByCue, previous.getCueID(), previous.getID());
+            unindex(completionsByStatus, previous.getStatus(), previous.getID());
+        }
+        index(completionsByCue, completion.getCueID(), completion.getID());
+        index(completionsByStatus, completion.getStatus(), completion.getID());
+    }
+
+    private static <K> void index(Map<K, Set<String>> index, K key, String id) {
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = index.get(key);
+        if (ids == null) {
+            ids = new LinkedHashSet<>();
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static <K> void unindex(Map<K, Set<String>> index, K key, String id) {
+        Set<String> ids = key == null ? null : index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Find Cues in the mirror. Each filter may be <code>null</code> to match any value.
+     * @param status The status of the Cues.
+     * @param groupID The ID of the group the Cues belong to.
+     * @param noteToSelf The note to self the Cues were created with.
+     * @return The matching Cues, in the order they were first recorded.
+     */
+    public List<Cue> findCues(CueCloud.CueStatus status, Integer groupID, String noteToSelf) {
+        lock.readLock().lock();
+        try {
+            Set<String> candidates = smallest(cues.keySet(), status == null ? null : ids(cuesByStatus, status),
+                    groupID == null ? null : ids(cuesByGroup, groupID), noteToSelf == null ? null : ids(cuesByNote, noteToSelf));
+            List<Cue> found = new ArrayList<>();
+            for (String id : candidates) {
+                Cue cue = cues.get(id);
+                if ((status == null || status == cue.getStatus()) && (groupID == null || groupID.equals(cue.getGroupID()))
+                        && (noteToSelf == null || noteToSelf.equals(cue.getNoteToSelf()))) {
+                    found.add(cue);
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find CueCompletions in the mirror. Each filter may be <code>null</code> to match any value.
+     * @param cueID The ID of the Cue the completions were submitted for.
+     * @param status The status of the completions.
+     * @return The matching completions, in the order they were first recorded.
+     */
+    public List<CueCompletion> findCueCompletions(String cueID, CueCloud.CueCompletionStatus status) {
+        lock.readLock().lock();
+        try {
+            Set<String> candidates = smallest(completions.keySet(), cueID == null ? null : ids(completionsByCue, cueID),
+                    status == null ? null : ids(completionsByStatus, status));
+            List<CueCompletion> found = new ArrayList<>();
+            for (String id : candidates) {
+                CueCompletion completion = completions.get(id);
+                if ((cueID == null || cueID.equals(completion.getCueID())) && (status == null || status == completion.getStatus())) {
+                    found.add(completion);
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <K> Set<String> ids(Map<K, Set<String>> index, K key) {
+        Set<String> ids = index.get(key);
+        return ids == null ? Collections.<String>emptySet() : ids;
+    }
+
+    /**
+     * @return The smallest of the given sets of candidates, ignoring <code>null</code> ones.
+     */
+    @SafeVarargs
+    private static Set<String> smallest(Set<String> all, Set<String>... filtered) {
+        Set<String> smallest = all;
+        for (Set<String> ids : filtered) {
+            if (ids != null && ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * @param cueID The ID of a Cue.
+     * @return The Cue, or <code>null</code> if it is not in the mirror.
+     */
+    public Cue getCue(String cueID) {
+        lock.readLock().lock();
+        try {
+            return cues.get(cueID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param cueCompletionID The ID of a completion.
+     * @return The completion, or <code>null</code> if it is not in the mirror.
+     */
+    public CueCompletion getCueCompletion(String cueCompletionID) {
+        lock.readLock().lock();
+        try {
+            return completions.get(cueCompletionID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The IDs of every Cue in the mirror.
+     */
+    public List<String> getCueIDs() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(cues.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of Cues in the mirror.
+     */
+    public int getCueCount() {
+        lock.readLock().lock();
+        try {
+            return cues.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of completions in the mirror.
+     */
+    public int getCueCompletionCount() {
+        lock.readLock().lock();
+        try {
+            return completions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The size of the mirror's file, in bytes.
+     * @throws IOException If the size cannot be read.
+     */
+    public long getFileSize() throws IOException {
+        lock.readLock().lock();
+        try {
+            return channel.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the file with only the latest record of each Cue and completion. The new file replaces
+     * the old one once it is complete, so a crash leaves one or the other.
+     * @throws IOException If the file cannot be rewritten.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (replacedRecords == 0) {
+                return;
+            }
+            File compacted = new File(file.getPath() + ".compact");
+            FileChannel current = channel;
+            RandomAccessFile currentData = data;
+            try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+                out.setLength(0);
+                channel = out.getChannel();
+                for (Cue cue : cues.values()) {
+                    append(CUE, cue);
+                }
+                for (CueCompletion completion : completions.values()) {
+                    append(COMPLETION, completion);
+                }
+                channel.force(true);
+            } finally {
+                channel = current;
+            }
+            currentData.close();
+            if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+                // Keep appending to a file holding every record, so syncs still work: the original if it
+                // is still there, or else the compacted one.
+                if (file.exists()) {
+                    compacted.delete();
+                    reopen(file);
+                    throw new IOException("Could not replace " + file + " with " + compacted);
+                }
+                reopen(compacted);
+                throw new IOException("Could not replace " + file + " with " + compacted + ", which is in use until the mirror is closed");
+            }
+            replacedRecords = 0;
+            reopen(file);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens <code>target</code> to append further records to. Called holding the write lock.
+     */
+    private void reopen(File target) throws IOException {
+        data = new RandomAccessFile(target, "rw");
+        channel = data.getChannel();
+        channel.position(channel.size());
+    }
+
+    /**
+     * Close the mirror's file. The mirror cannot be synced afterwards.
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            data.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a record straight from the mapped file.
+     */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
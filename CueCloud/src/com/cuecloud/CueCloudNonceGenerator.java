@@ -0,0 +1,133 @@
+package com.cuecloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out the <code>Access-Nonce</code> of the requests made with one API key. The server refuses a
+ * nonce it has seen, and expects them to grow, so every nonce is larger than the one before: the time
+ * in microseconds, as the API expects, or one more than the last nonce if that is already as large.
+ * Calls within the same microsecond, or while the clock is set back, thus still get distinct nonces.
+ * <p>
+ * Nonces are taken with a compare-and-set, without locking. All {@link CueCloud} instances in the JVM
+ * share the generator of their API key, obtained with {@link #forKey(String)}.
+ * <p>
+ * A process that restarts within the same microseconds, or with its clock behind, could hand out nonces
+ * again. {@link #persistTo(File)} prevents that: the generator then reserves the nonces up to a ceiling,
+ * {@link #RESERVED_NONCES} ahead, writing the ceiling to the file before handing out any nonce under it.
+ * A generator persisted to the same file later starts above the ceiling. The file is only written when
+ * a reservation runs out, about every ten seconds.
+ *
+ * @author nmvictor
+ */
+public final class CueCloudNonceGenerator {
+    /**
+     * Number of nonces reserved at once when persisted: ten seconds' worth of microseconds.
+     */
+    public static final long RESERVED_NONCES = 10000000L;
+
+    private static final ConcurrentMap<String, CueCloudNonceGenerator> GENERATORS = new ConcurrentHashMap<>();
+
+    private final AtomicLong last = new AtomicLong();
+    private final ReentrantLock reserving = new ReentrantLock();
+    private volatile long ceiling = Long.MAX_VALUE;
+    private RandomAccessFile state;
+
+    CueCloudNonceGenerator() {
+    }
+
+    /**
+     * @param apiKey An API key.
+     * @return The generator shared by every request made with <code>apiKey</code> in this JVM.
+     */
+    public static CueCloudNonceGenerator forKey(String apiKey) {
+        CueCloudNonceGenerator generator = GENERATORS.get(apiKey);
+        if (generator == null) {
+            CueCloudNonceGenerator created = new CueCloudNonceGenerator();
+            generator = GENERATORS.putIfAbsent(apiKey, created);
+            if (generator == null) {
+                generator = created;
+            }
+        }
+        return generator;
+    }
+
+    /**
+     * @return A nonce larger than every nonce handed out before.
+     * @throws IOException If the generator is persisted and a new reservation cannot be written.
+     */
+    public long next() throws IOException {
+        long nonce;
+        while (true) {
+            long previous = last.get();
+            nonce = Math.max(System.currentTimeMillis() * 1000, previous + 1);
+            if (last.compareAndSet(previous, nonce)) {
+                break;
+            }
+        }
+        if (nonce > ceiling) {
+            reserve(nonce);
+        }
+        return nonce;
+    }
+
+    /**
+     * Keep the ceiling of the nonces handed out in <code>file</code>, and start above the ceiling
+     * kept there before. Persist to a file once, before the first nonce is taken, and use a file per API key.
+     * @param file The file to keep the ceiling in; created if it does not exist.
+     * @throws IOException If the file cannot be read or written.
+     */
+    public void persistTo(File file) throws IOException {
+        reserving.lock();
+        try {
+            if (state != null) {
+                throw new IllegalStateException("Already persisted");
+            }
+            RandomAccessFile opened = new RandomAccessFile(file, "rw");
+            try {
+                long stored = opened.length() >= 8 ? opened.readLong() : 0;
+                while (true) {
+                    long previous = last.get();
+                    if (previous >= stored || last.compareAndSet(previous, stored)) {
+                        break;
+                    }
+                }
+                state = opened;
+                ceiling = Long.MIN_VALUE;
+                reserve(last.get());
+            } catch (IOException | RuntimeException e) {
+                state = null;
+                ceiling = Long.MAX_VALUE;
+                opened.close();
+                throw e;
+            }
+        } finally {
+            reserving.unlock();
+        }
+    }
+
+    /**
+     * Writes a ceiling above <code>nonce</code>, unless another thread already has. Nonces over the old
+     * ceiling are not handed out before it is on disk.
+     */
+    private void reserve(long nonce) throws IOException {
+        reserving.lock();
+        try {
+            if (nonce <= ceiling) {
+                return;
+            }
+            long reserved = nonce + RESERVED_NONCES;
+            state.seek(0);
+            state.writeLong(reserved);
+            state.getChannel().force(false);
+            ceiling = reserved;
+        } finally {
+            reserving.unlock();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.cuecloud;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the URL notifications CueCloud sends when a Cue created with
+ * <code>URLNotificationOnCueCompletion</code> is completed, so completions need not be polled for
+ * with {@link CueCloud#getCueCompletions(String, Integer, CueCloud.CueCompletionStatus, Integer)}.
+ * <p>
+ * The listener is a small HTTP server, built on the JDK's <code>com.sun.net.httpserver</code>, that
+ * accepts POSTs to one path. Each notification must carry an <code>Access-Nonce</code> and an
+ * <code>Access-Signature</code> computed like the signature of a request to the API: the HMAC-SHA256
+ * of <code>nonce + callbackURL + body</code> keyed with the API password, see
+ * {@link CueCloud#HMAC_SHA256encode(String, String)}. Notifications with a missing or wrong signature
+ * are refused with 401.
+ * <p>
+ * A verified notification is acknowledged at once and its completions are handed to the
+ * {@link CueCompletionHandler} on a bounded pool of worker threads. A completion already delivered,
+ * as when CueCloud retries a notification, is acknowledged but not handed over again. When the
+ * workers' queue is full the notification is answered with 503, so that it is sent again later,
+ * rather than accepted and dropped.
+ *
+ * @author nmvictor
+ */
+public class CueCloudNotificationListener {
+    private static final Logger LOG = Logger.getLogger(CueCloudNotificationListener.class.getName());
+    /**
+     * Default number of threads running the handler.
+     */
+    public static final int DEFAULT_WORKER_THREADS = 4;
+    /**
+     * Default number of completions waiting for a worker before notifications are refused.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    /**
+     * Number of delivered completion IDs remembered to recognise repeated notifications.
+     */
+    private static final int DEDUPLICATION_CAPACITY = 10000;
+    /**
+     * Notifications larger than this are refused.
+     */
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final CueCloudSigner signer;
+    private final String callbackURL;
+    private final CueCompletionHandler handler;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService httpThreads;
+    private final Map<String, Boolean> delivered;
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Construct a listener with the default number of workers and queue capacity. Call {@link #start()} to
+     * start accepting notifications.
+     * @param apiPass The API password notifications are signed with.
+     * @param callbackURL The URL given to CueCloud for notifications, as it is signed. Its path is the path listened on.
+     * @param address The local address to listen on; port <code>0</code> picks a free port.
+     * @param handler Receives the notified completions.
+     * @throws IOException If the address cannot be bound.
+     * @throws GeneralSecurityException If HMAC-SHA256 is not available.
+     */
+    public CueCloudNotificationListener(String apiPass, String callbackURL, InetSocketAddress address,
+            CueCompletionHandler handler) throws IOException, GeneralSecurityException {
+        this(apiPass, callbackURL, address, handler, DEFAULT_WORKER_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Construct a listener. Call {@link #start()} to start accepting notifications.
+     * @param apiPass The API password notifications are signed with.
+     * @param callbackURL The URL given to CueCloud for notifications, as it is signed. Its path is the path listened on.
+     * @param address The local address to listen on; port <code>0</code> picks a free port.
+     * @param handler Receives the notified completions.
+     * @param workerThreads Number of threads running <code>handler</code>. Must be positive.
+     * @param queueCapacity Number of completions that may wait for a worker. Must be positive.
+     * @throws IOException If the address cannot be bound.
+     * @throws GeneralSecurityException If HMAC-SHA256 is not available.
+     */
+    public CueCloudNotificationListener(String apiPass, String callbackURL, InetSocketAddress address,
+            CueCompletionHandler handler, int workerThreads, int queueCapacity) throws IOException, GeneralSecurityException {
+        if (workerThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("workerThreads and queueCapacity must be positive");
+        }
+        this.signer = new CueCloudSigner(apiPass);
+        this.callbackURL = callbackURL;
+        this.handler = handler;
+        this.delivered = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > DEDUPLICATION_CAPACITY;
+            }
+        });
+        final AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "cuecloud-notification-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.httpThreads = CueCloudExecutors.newDaemonThreadPool("cuecloud-notification-http-", 2);
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(httpThreads);
+        this.server.createContext(pathOf(callbackURL), new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange, receive(exchange));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    private static String pathOf(String callbackURL) {
+        String path = URI.create(callbackURL).getRawPath();
+        return path == null || path.isEmpty() ? "/" : path;
+    }
+
+    /**
+     * Start accepting notifications.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting notifications, waiting up to <code>delaySeconds</code> for exchanges in progress
+     * and then for the completions already accepted to be handled.
+     * @param delaySeconds Maximum time to wait, in seconds.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    public void stop(int delaySeconds) throws InterruptedException {
+        server.stop(delaySeconds);
+        httpThreads.shutdown();
+        workers.shutdown();
+        workers.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return The address the listener is bound to.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return Number of completions handed to the handler.
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * @return Number of completions notified again after they were delivered, and not handed over.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return Number of notifications refused, because of their signature or content or a full queue.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return Number of completions the handler threw an exception for.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return The HTTP status to answer <code>exchange</code> with.
+     */
+    private int receive(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return 405;
+        }
+        byte[] body = readBody(exchange.getRequestBody());
+        if (body == null) {
+            rejectedCount.incrementAndGet();
+            return 413;
+        }
+        String nonce = exchange.getRequestHeaders().getFirst("Access-Nonce");
+        String signature = exchange.getRequestHeaders().getFirst("Access-Signature");
+        if (nonce == null || signature == null || !MessageDigest.isEqual(
+                signer.sign(nonce, callbackURL, body).getBytes(StandardCharsets.US_ASCII), signature.getBytes(StandardCharsets.US_ASCII))) {
+            rejectedCount.incrementAndGet();
+            return 401;
+        }
+        List<CueCompletion> completions;
+        try {
+            completions = parse(body);
+        } catch (IOException e) {
+            rejectedCount.incrementAndGet();
+            return 400;
+        }
+        for (final CueCompletion completion : completions) {
+            final String key = completion.getID() != null ? completion.getID() : signature;
+            if (delivered.put(key, Boolean.TRUE) != null) {
+                duplicateCount.incrementAndGet();
+                continue;
+            }
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(completion);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Not delivered: forget it so the notification CueCloud sends again is handled.
+                delivered.remove(key);
+                rejectedCount.incrementAndGet();
+                return 503;
+            }
+        }
+        return 200;
+    }
+
+    private void dispatch(CueCompletion completion) {
+        receivedCount.incrementAndGet();
+        try {
+            handler.onCueCompletion(completion);
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            LOG.log(Level.WARNING, "Handling CueCompletion " + completion.getID() + " failed", e);
+        }
+    }
+
+    /**
+     * @return The body, or <code>null</code> if it is larger than {@link #MAX_BODY_BYTES}.
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                if (length >= MAX_BODY_BYTES) {
+                    return null;
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_BODY_BYTES));
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Reads the completions of a notification: a completion object, a list of them under
+     * <code>CueCompletions</code>, or either wrapped in <code>Data</code> as in API responses.
+     */
+    @SuppressWarnings("unchecked")
+    static List<CueCompletion> parse(byte[] body) throws IOException {
+        Map<String, Object> fields;
+        try (JsonReader reader = new JsonReader(new ByteArrayInputStream(body))) {
+            fields = reader.nextObject();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed notification", e);
+        }
+        if (fields.get("Data") instanceof Map) {
+            fields = (Map<String, Object>) fields.get("Data");
+        }
+        List<CueCompletion> completions = new ArrayList<>();
+        Object list = fields.get("CueCompletions");
+        if (list instanceof List) {
+            for (Object item : (List<Object>) list) {
+                if (!(item instanceof Map)) {
+                    throw new IOException("Malformed notification");
+                }
+                completions.add(new CueCompletion((Map<String, Object>) item));
+            }
+        } else {
+            completions.add(new CueCompletion(fields));
+        }
+        return completions;
+    }
+
+    /**
+     * Sends the status without a body. The exchange is finished by the caller closing it only once: finishing
+     * it hands the connection to the next request, which a second close would then read from.
+     */
+    private static void respond(HttpExchange exchange, int statusCode) throws IOException {
+        exchange.sendResponseHeaders(statusCode, -1);
+    }
+}
@@ -0,0 +1,111 @@
+package com.cuecloud;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Base class of the typed objects returned by the CueCloud API. Typed getters cover the
+ * documented fields; every field of the response, including ones this library does not know
+ * about yet, is available through {@link #get(String)}.
+ *
+ * @author nmvictor
+ */
+public abstract class CueCloudObject {
+    private final Map<String, Object> fields;
+
+    /**
+     * @param fields The JSON fields of this object.
+     */
+    protected CueCloudObject(Map<String, Object> fields) {
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * @param name The JSON field name, for example <code>"ID"</code>.
+     * @return The value of the field: a string, number, boolean, map, list or <code>null</code>.
+     */
+    public Object get(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * @return Every JSON field of this object.
+     */
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return The field as a string, or <code>null</code> if it is absent.
+     */
+    protected String getString(String name) {
+        Object value = fields.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return The field as a number, or <code>null</code> if it is absent or not numeric.
+     */
+    protected Number getNumber(String name) {
+        Object value = fields.get(name);
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.valueOf((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The field as an integer, or <code>null</code> if it is absent or not numeric.
+     */
+    protected Integer getInteger(String name) {
+        Number value = getNumber(name);
+        return value == null ? null : value.intValue();
+    }
+
+    /**
+     * @return The field as a double, or <code>null</code> if it is absent or not numeric.
+     */
+    protected Double getDouble(String name) {
+        Number value = getNumber(name);
+        return value == null ? null : value.doubleValue();
+    }
+
+    /**
+     * @return The field as a boolean, or <code>null</code> if it is absent.
+     */
+    protected Boolean getBoolean(String name) {
+        Object value = fields.get(name);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value == null ? null : Boolean.valueOf(value.toString());
+    }
+
+    /**
+     * @return The field as a constant of <code>type</code>, or <code>null</code> if it is absent or unknown.
+     */
+    protected <E extends Enum<E>> E getEnum(String name, Class<E> type) {
+        String value = getString(name);
+        if (value == null) {
+            return null;
+        }
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + fields;
+    }
+}
@@ -0,0 +1,583 @@
+package com.cuecloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends deposits, withdrawals and bonuses through a write-ahead log, so none is lost when the process
+ * dies or a call fails on the way.
+ * <p>
+ * Each call is given an idempotency key and recorded in the outbox file, which is synced to disk,
+ * before it is sent with its key in the {@link CueCloud#IDEMPOTENCY_KEY_HEADER} header. Once the
+ * server has answered, the call is marked done. Calls the server refused with a client error are
+ * marked done too, as sending them again would not change the answer. Calls that are not stay pending:
+ * <ul>
+ * <li>Calls the server turned away unapplied, by throttling them or timing out their request, are
+ * sent again by {@link #replay()}.</li>
+ * <li>Calls whose outcome is unknown, because the process died while they were pending or they failed
+ * with a connection error or server error, may have been applied. They are not sent again blindly,
+ * since nothing shows the CueCloud API deduplicates calls by their key: {@link #getUnknown()} lists
+ * them to be reconciled against the account, for example with {@link CueCloud#getPayments}, and then
+ * {@link #resolve(String) resolved} if they were applied or {@link #resend(String) sent again} if not.
+ * If {@link CueCloud#setIdempotencyKeysHonoured(boolean) the server is declared to honour the key},
+ * {@link #replay()} sends them again as well.</li>
+ * </ul>
+ * Call {@link #replay()} after opening the outbox to finish what a previous process left.
+ * <p>
+ * Calls made from many threads at once share disk syncs: while one thread syncs, the records of the
+ * others are gathered and then written and synced together, so a batch of payouts sent in parallel,
+ * for example from {@link CueCloudAsync}, costs far fewer syncs than calls. Marking a call done is
+ * not synced by itself; if it is lost, the call is pending again with an unknown outcome.
+ *
+ * @author nmvictor
+ */
+public class CueCloudOutbox implements Closeable {
+    private static final byte REQUEST = 'R';
+    private static final byte DONE = 'D';
+    /**
+     * Size of the header of each record: its length and its kind.
+     */
+    private static final int HEADER_BYTES = 5;
+    /**
+     * Once nothing is pending, the file is emptied if it has grown beyond this size.
+     */
+    private static final long TRUNCATE_BYTES = 1024 * 1024;
+
+    /**
+     * A call recorded in the outbox.
+     */
+    public static final class Entry {
+        private final String key;
+        private final String path;
+        private final Map<String, Object> body;
+        private boolean sending;
+        private boolean outcomeUnknown;
+
+        Entry(String key, String path, Map<String, Object> body) {
+            this.key = key;
+            this.path = path;
+            this.body = Collections.unmodifiableMap(body);
+        }
+
+        /**
+         * @return The idempotency key the call is sent with.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The path of the call, relative to the base URL.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return The request body of the call.
+         */
+        public Map<String, Object> getBody() {
+            return body;
+        }
+
+        /**
+         * @return <code>true</code> if the call may have been applied: it was left pending by a
+         * previous process, or its last attempt failed without the server refusing it.
+         */
+        public boolean isOutcomeUnknown() {
+            return outcomeUnknown;
+        }
+    }
+
+    private final CueCloud cueCloud;
+    private final File file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private RandomAccessFile data;
+    private FileChannel channel;
+    private List<ByteBuffer> unwritten = new ArrayList<>();
+    private long appendedRecords;
+    private long syncedRecords;
+    private boolean syncing;
+    private IOException failure;
+    private long syncCount;
+    private boolean closed;
+
+    /**
+     * Open an outbox, loading the calls a previous process left pending in <code>file</code>.
+     * @param cueCloud The client to send calls with.
+     * @param file The file to keep the outbox in; created if it does not exist.
+     * @throws IOException If the file cannot be read or created.
+     */
+    public CueCloudOutbox(CueCloud cueCloud, File file) throws IOException {
+        this.cueCloud = cueCloud;
+        this.file = file;
+        data = new RandomAccessFile(file, "rw");
+        channel = data.getChannel();
+        boolean complete = load();
+        if (!complete || pending.isEmpty() && channel.size() > 0) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Reads the pending calls of the file, up to the first record that is cut short or cannot be read,
+     * as a crash can leave a torn, zero-filled or garbage tail; that record and any after it are dropped.
+     * @return <code>true</code> if the file holds only requests that are still pending.
+     */
+    private boolean load() throws IOException {
+        byte[] bytes = new byte[(int) channel.size()];
+        data.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        boolean complete = true;
+        int end = 0;
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            byte kind = buffer.get();
+            if (length < 0 || length > buffer.remaining() || kind != REQUEST && kind != DONE) {
+                break;
+            }
+            Entry entry = parse(kind, bytes, buffer.position(), length);
+            if (entry == null) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            if (kind == REQUEST) {
+                entry.outcomeUnknown = true;
+                pending.put(entry.getKey(), entry);
+            } else {
+                pending.remove(entry.getKey());
+                complete = false;
+            }
+            end = buffer.position();
+        }
+        return complete && end == bytes.length;
+    }
+
+    /**
+     * @return The call a record is about, without a path or body for a {@link #DONE} record; or
+     * <code>null</code> if the record cannot be read.
+     */
+    private static Entry parse(byte kind, byte[] bytes, int offset, int length) {
+        Map<String, Object> fields;
+        try (JsonReader reader = new JsonReader(new ByteArrayInputStream(bytes, offset, length))) {
+            fields = reader.nextObject();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        Object key = fields.get("Key");
+        if (!(key instanceof String)) {
+            return null;
+        }
+        if (kind == DONE) {
+            return new Entry((String) key, null, Collections.<String, Object>emptyMap());
+        }
+        Object path = fields.get("Path");
+        Object body = fields.get("Body");
+        if (!(path instanceof String) || !(body instanceof Map)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> members = (Map<String, Object>) body;
+        return new Entry((String) key, (String) path, members);
+    }
+
+    /**
+     * Replaces the file with one holding only the pending calls, dropping those done and any record cut short.
+     */
+    private void rewrite() throws IOException {
+        File compacted = new File(file.getPath() + ".compact");
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            out.setLength(0);
+            FileChannel target = out.getChannel();
+            for (Entry entry : pending.values()) {
+                ByteBuffer record = encode(REQUEST, requestFields(entry));
+                while (record.hasRemaining()) {
+                    target.write(record);
+                }
+            }
+            target.force(true);
+        }
+        channel.close();
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Cannot replace " + file + " with " + compacted);
+        }
+        data = new RandomAccessFile(file, "rw");
+        channel = data.getChannel();
+        channel.position(channel.size());
+    }
+
+    /**
+     * Deposit into the account, as {@link CueCloud#makeDeposit(double, int)}.
+     * @param amount The amount in USD to deposit.
+     * @param creditCardLast4Digits The last for digits of users credit card.
+     * @return JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the call fails. Unless the server refused it, it stays pending.
+     * @throws IOException If the call cannot be recorded; it is then not sent.
+     */
+    public String makeDeposit(double amount, int creditCardLast4Digits) throws CueCloud.CueCloudException, IOException {
+        return send(record(CueCloud.DEPOSIT_PATH, CueCloud.depositBody(amount, creditCardLast4Digits)));
+    }
+
+    /**
+     * Withdraw funds, as {@link CueCloud#withdrawFunds(double)}.
+     * @param amountInUSD The amount in USD to withdraw.
+     * @return JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the call fails. Unless the server refused it, it stays pending.
+     * @throws IOException If the call cannot be recorded; it is then not sent.
+     */
+    public String withdrawFunds(double amountInUSD) throws CueCloud.CueCloudException, IOException {
+        return send(record(CueCloud.WITHDRAW_PATH, CueCloud.withdrawalBody(amountInUSD)));
+    }
+
+    /**
+     * Grant a bonus, as {@link CueCloud#grantBonus(String, Double, String, String)}.
+     * @param cueCompletionID The ID of the completed Cue.
+     * @param amountInUSD The amount in USD to grant as bonus
+     * @param reason Reason for the bonus. You may leave this as <code>null</code> as it is optional.
+     * @param noteToSelf Note to be viewed by the person who granted the bonus. You may leave this as <code>null</code> as it is optional.
+     * @return JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the call fails. Unless the server refused it, it stays pending.
+     * @throws IOException If the call cannot be recorded; it is then not sent.
+     */
+    public String grantBonus(String cueCompletionID, Double amountInUSD, String reason, String noteToSelf) throws CueCloud.CueCloudException, IOException {
+        return send(record(CueCloud.BONUS_PATH, CueCloud.bonusBody(cueCompletionID, amountInUSD, reason, noteToSelf)));
+    }
+
+    /**
+     * Send again, with the key it was first sent with, every pending call the server is known not to
+     * have applied; or every pending call, if {@link CueCloud#setIdempotencyKeysHonoured(boolean) the
+     * server is declared to honour the key}. Calls whose outcome is unknown are otherwise left pending,
+     * as listed by {@link #getUnknown()}. Calls being sent by other threads at the time are left to them.
+     * @return The outcome of every call sent, by idempotency key.
+     * @throws IOException If a call cannot be marked done.
+     */
+    public CueCloudBatchResult<String> replay() throws IOException {
+        boolean resendUnknown = cueCloud.isIdempotencyKeysHonoured();
+        List<Entry> entries = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Entry entry : pending.values()) {
+                if (!entry.sending && (resendUnknown || !entry.outcomeUnknown)) {
+                    entry.sending = true;
+                    entries.add(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<CueCloudBatchResult.Item<String>> items = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            try {
+                items.add(new CueCloudBatchResult.Item<>(entry.getKey(), send(entry), null));
+            } catch (CueCloud.CueCloudException e) {
+                items.add(new CueCloudBatchResult.Item<String>(entry.getKey(), null, e));
+            }
+        }
+        return new CueCloudBatchResult<>(items);
+    }
+
+    /**
+     * Mark a pending call done without sending it, once reconciling the account has shown it was applied.
+     * @param key The idempotency key of the call.
+     * @return <code>true</code> if the call was pending.
+     * @throws IOException If the outbox is closed.
+     */
+    public boolean resolve(String key) throws IOException {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = pending.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            return false;
+        }
+        done(entry);
+        return true;
+    }
+
+    /**
+     * Send a pending call again, once reconciling the account has shown it was not applied.
+     * @param key The idempotency key of the call.
+     * @return JSON string in response to this request.
+     * @throws com.cuecloud.CueCloud.CueCloudException Thrown if the call fails. Unless the server refused it, it stays pending.
+     * @throws IOException If the call cannot be marked done.
+     * @throws IllegalArgumentException If no call with this key is pending.
+     * @throws IllegalStateException If the call is being sent by another thread.
+     */
+    public String resend(String key) throws CueCloud.CueCloudException, IOException {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = pending.get(key);
+            if (entry == null) {
+                throw new IllegalArgumentException("No pending call with key " + key);
+            }
+            if (entry.sending) {
+                throw new IllegalStateException("Call " + key + " is being sent");
+            }
+            entry.sending = true;
+        } finally {
+            lock.unlock();
+        }
+        return send(entry);
+    }
+
+    /**
+     * Records a new call and waits until the record is on disk.
+     */
+    private Entry record(String path, Map<String, Object> body) throws IOException {
+        Entry entry = new Entry(UUID.randomUUID().toString(), path, body);
+        entry.sending = true;
+        ByteBuffer record = encode(REQUEST, requestFields(entry));
+        lock.lock();
+        try {
+            long sequence = append(record);
+            pending.put(entry.getKey(), entry);
+            while (syncedRecords < sequence) {
+                if (failure != null) {
+                    pending.remove(entry.getKey());
+                    throw new IOException("Writing the outbox failed", failure);
+                }
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                } else {
+                    sync();
+                }
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String send(Entry entry) throws CueCloud.CueCloudException, IOException {
+        try {
+            String result = cueCloud.postIdempotent(entry.getPath(), new LinkedHashMap<>(entry.getBody()), entry.getKey());
+            done(entry);
+            return result;
+        } catch (CueCloud.CueCloudException e) {
+            if (isRefused(e.getStatusCode())) {
+                done(entry);
+            } else {
+                lock.lock();
+                try {
+                    entry.sending = false;
+                    entry.outcomeUnknown = !isTurnedAway(e.getStatusCode());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the server answered with a client error that sending the call again would not change.
+     */
+    private static boolean isRefused(int statusCode) {
+        return statusCode >= HttpURLConnection.HTTP_BAD_REQUEST && statusCode < HttpURLConnection.HTTP_INTERNAL_ERROR
+                && statusCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT && statusCode != 429;
+    }
+
+    /**
+     * @return <code>true</code> if the server answered that it did not process the call and it may be sent again.
+     */
+    private static boolean isTurnedAway(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT || statusCode == 429;
+    }
+
+    /**
+     * Marks a call done. The record is written with the next sync, or dropped with the file once nothing is pending.
+     */
+    private void done(Entry entry) throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("Key", entry.getKey());
+        ByteBuffer record = encode(DONE, fields);
+        lock.lock();
+        try {
+            if (pending.remove(entry.getKey()) == null) {
+                return;
+            }
+            append(record);
+            if (pending.isEmpty() && !syncing && failure == null && channel.position() > TRUNCATE_BYTES) {
+                unwritten.clear();
+                syncedRecords = appendedRecords;
+                channel.truncate(0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a record for the next sync. Called holding the lock.
+     * @return The sequence number of the record.
+     */
+    private long append(ByteBuffer record) throws IOException {
+        if (closed) {
+            throw new IOException("Outbox is closed");
+        }
+        unwritten.add(record);
+        return ++appendedRecords;
+    }
+
+    /**
+     * Writes and syncs every queued record. Called holding the lock, which is released while writing
+     * so that other threads can queue the records of the next sync.
+     */
+    private void sync() {
+        syncing = true;
+        List<ByteBuffer> batch = unwritten;
+        unwritten = new ArrayList<>();
+        long through = appendedRecords;
+        lock.unlock();
+        IOException error = null;
+        try {
+            ByteBuffer[] records = batch.toArray(new ByteBuffer[batch.size()]);
+            ByteBuffer last = records[records.length - 1];
+            while (last.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+            syncing = false;
+            if (error == null) {
+                syncedRecords = through;
+                syncCount++;
+            } else {
+                // What reached the file is unknown; stop recording rather than risk sending unrecorded calls.
+                failure = error;
+            }
+            synced.signalAll();
+        }
+    }
+
+    /**
+     * @return Every call recorded and not yet done, oldest first.
+     */
+    public List<Entry> getPending() {
+        lock.lock();
+        try {
+            return new ArrayList<>(pending.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Every pending call that may have been applied, oldest first, to be reconciled and then
+     * {@link #resolve(String) resolved} or {@link #resend(String) sent again}.
+     */
+    public List<Entry> getUnknown() {
+        lock.lock();
+        try {
+            List<Entry> unknown = new ArrayList<>();
+            for (Entry entry : pending.values()) {
+                if (entry.outcomeUnknown) {
+                    unknown.add(entry);
+                }
+            }
+            return unknown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of calls recorded and not yet done.
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of records appended since the outbox was opened.
+     */
+    public long getRecordCount() {
+        lock.lock();
+        try {
+            return appendedRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of times the file was synced to disk since the outbox was opened.
+     */
+    public long getSyncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Map<String, Object> requestFields(Entry entry) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("Key", entry.getKey());
+        fields.put("Path", entry.getPath());
+        fields.put("Body", entry.getBody());
+        return fields;
+    }
+
+    private static ByteBuffer encode(byte kind, Map<String, Object> fields) {
+        JsonWriter writer = new JsonWriter();
+        writer.writeObject(fields);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + writer.length());
+        record.putInt(writer.length()).put(kind).put(writer.buffer(), 0, writer.length()).flip();
+        return record;
+    }
+
+    /**
+     * Write the records of calls marked done since the last sync, and close the file. Calls still
+     * pending are loaded again, with an unknown outcome, when the outbox is opened again.
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            closed = true;
+            if (!unwritten.isEmpty() && failure == null) {
+                sync();
+            }
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.cuecloud;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-side throttle for the calls a {@link CueCloud} makes, applied per
+ * {@link CueCloud.EndpointGroup endpoint group}.
+ * <p>
+ * Each group has two independent limits:
+ * <ul>
+ * <li>An optional token bucket, set with {@link #setRate(CueCloud.EndpointGroup, double, int)}, that caps the
+ * sustained request rate while allowing short bursts.</li>
+ * <li>An adaptive concurrency limit on the number of calls in flight. It grows by one for every
+ * window of successful calls and is cut whenever the server answers <code>429</code> or <code>5xx</code>,
+ * or a call takes much longer than the fastest recently seen, so throughput settles just below
+ * the point where the server starts throttling.</li>
+ * </ul>
+ * A caller over either limit waits in {@link CueCloud} until it may proceed.
+ * Install a limiter with {@link CueCloud#setRateLimiter(CueCloudRateLimiter)}; one limiter may be
+ * shared by several instances using the same API key, since the server throttles per account.
+ *
+ * @author nmvictor
+ */
+public class CueCloudRateLimiter {
+    /**
+     * Concurrency limit each group starts at.
+     */
+    public static final int DEFAULT_INITIAL_CONCURRENCY = KeepAliveHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    /**
+     * Lowest concurrency limit a group is cut to.
+     */
+    public static final int DEFAULT_MIN_CONCURRENCY = 1;
+    /**
+     * Highest concurrency limit a group grows to.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    /**
+     * A call taking this many times longer than the fastest recent call counts as a sign of overload.
+     */
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    private static final double THROTTLED_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+
+    private final Map<CueCloud.EndpointGroup, Group> groups = new EnumMap<>(CueCloud.EndpointGroup.class);
+    private volatile double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+    /**
+     * Construct a limiter with no rate limits and the default concurrency limits for every group.
+     */
+    public CueCloudRateLimiter() {
+        for (CueCloud.EndpointGroup group : CueCloud.EndpointGroup.values()) {
+            groups.put(group, new Group());
+        }
+    }
+
+    /**
+     * Limit the rate of calls to <code>group</code>.
+     * @param group The endpoint group.
+     * @param permitsPerSecond Sustained number of calls allowed per second. Must be positive.
+     * @param burst Number of calls that may be made at once after a quiet period. Must be positive.
+     */
+    public void setRate(CueCloud.EndpointGroup group, double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            g.permitsPerSecond = permitsPerSecond;
+            g.burst = burst;
+            g.tokens = burst;
+            g.refilledAt = System.nanoTime();
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the rate limit of <code>group</code>. Its concurrency limit still applies.
+     * @param group The endpoint group.
+     */
+    public void clearRate(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            g.permitsPerSecond = 0;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Set the bounds of the adaptive concurrency limit of <code>group</code> and restart it at <code>initial</code>.
+     * Setting all three to the same value fixes the limit.
+     * @param group The endpoint group.
+     * @param initial The limit to start at.
+     * @param min The lowest the limit is cut to. Must be positive.
+     * @param max The highest the limit grows to.
+     */
+    public void setConcurrencyLimits(CueCloud.EndpointGroup group, int initial, int min, int max) {
+        if (min < 1 || initial < min || max < initial) {
+            throw new IllegalArgumentException("Require 1 <= min <= initial <= max");
+        }
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            g.minLimit = min;
+            g.maxLimit = max;
+            g.limit = initial;
+            g.slotFreed.signalAll();
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * @param latencyTolerance How many times slower than the fastest recent call a call may be before the
+     * concurrency limit is cut. Must be greater than 1.
+     */
+    public void setLatencyTolerance(double latencyTolerance) {
+        if (!(latencyTolerance > 1)) {
+            throw new IllegalArgumentException("latencyTolerance must be greater than 1");
+        }
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * @param group The endpoint group.
+     * @return The sustained rate allowed for <code>group</code> in calls per second, or <code>0</code> if it is not rate limited.
+     */
+    public double getRate(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            return g.permitsPerSecond;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * @param group The endpoint group.
+     * @return The number of calls to <code>group</code> currently allowed in flight.
+     */
+    public int getConcurrencyLimit(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            return g.currentLimit();
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * @param group The endpoint group.
+     * @return The number of calls to <code>group</code> currently in flight.
+     */
+    public int getInFlight(CueCloud.EndpointGroup group) {
+        Group g = groups.get(group);
+        g.lock.lock();
+        try {
+            return g.inFlight;
+        } finally {
+            g.lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a call to <code>group</code> is allowed: first for a free concurrency slot, then for a token.
+     * The returned permit must be released exactly once.
+     * @param group The endpoint group of the call.
+     * @return The permit for the call.
+     * @throws InterruptedException If interrupted while waiting. No permit is held in that case.
+     */
+    Permit acquire(CueCloud.EndpointGroup group) throws InterruptedException {
+        Group g = groups.get(group);
+        long waitNanos;
+        g.lock.lockInterruptibly();
+        try {
+            while (g.inFlight >= g.currentLimit()) {
+                g.slotFreed.await();
+            }
+            g.inFlight++;
+            waitNanos = g.reserveToken(System.nanoTime());
+        } finally {
+            g.lock.unlock();
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                g.release();
+                throw e;
+            }
+        }
+        return new Permit(g);
+    }
+
+    /**
+     * Per-group limiter state, guarded by <code>lock</code>. Waiting happens on a {@link Condition}
+     * or outside the lock, never while holding a monitor.
+     */
+    private final class Group {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition slotFreed = lock.newCondition();
+        int inFlight;
+        double limit = DEFAULT_INITIAL_CONCURRENCY;
+        int minLimit = DEFAULT_MIN_CONCURRENCY;
+        int maxLimit = DEFAULT_MAX_CONCURRENCY;
+        long minLatencyNanos = Long.MAX_VALUE;
+        long lastDecreaseNanos = System.nanoTime();
+        double permitsPerSecond;
+        double burst;
+        double tokens;
+        long refilledAt;
+
+        int currentLimit() {
+            return (int) limit;
+        }
+
+        /**
+         * Take a token, going into debt if there is none.
+         * @return How long to wait before the token is actually available.
+         */
+        long reserveToken(long now) {
+            if (permitsPerSecond <= 0) {
+                return 0;
+            }
+            tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                slotFreed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onComplete(long startedAt, int statusCode) {
+            long now = System.nanoTime();
+            long latency = now - startedAt;
+            lock.lock();
+            try {
+                inFlight--;
+                boolean throttled = statusCode == 429 || statusCode >= 500;
+                boolean slow = false;
+                if (!throttled && statusCode > 0) {
+                    slow = minLatencyNanos != Long.MAX_VALUE && latency > minLatencyNanos * latencyTolerance;
+                    if (latency < minLatencyNanos) {
+                        minLatencyNanos = latency;
+                    } else {
+                        // Let the baseline drift up slowly so it follows lasting changes in server speed.
+                        minLatencyNanos += (latency - minLatencyNanos) >> 8;
+                    }
+                }
+                if (throttled || slow) {
+                    // Calls that started before the last cut were sent under the old limit; cut once per window.
+                    if (startedAt >= lastDecreaseNanos) {
+                        limit = Math.max(minLimit, limit * (throttled ? THROTTLED_BACKOFF : LATENCY_BACKOFF));
+                        lastDecreaseNanos = now;
+                        if (throttled) {
+                            tokens = Math.min(tokens, 0);
+                        }
+                    }
+                } else if (statusCode > 0) {
+                    limit = Math.min(maxLimit, limit + 1.0 / currentLimit());
+                }
+                if (inFlight < currentLimit()) {
+                    slotFreed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Permission to make one call. Released by {@link CueCloud} once the call completes.
+     */
+    final class Permit {
+        private final Group group;
+        private final long startedAt = System.nanoTime();
+        private boolean released;
+
+        private Permit(Group group) {
+            this.group = group;
+        }
+
+        /**
+         * Return the slot and feed the outcome of the call to the concurrency limit.
+         * @param statusCode The HTTP status of the response, or <code>-1</code> if the call failed without one.
+         */
+        void release(int statusCode) {
+            if (released) {
+                return;
+            }
+            released = true;
+            group.onComplete(startedAt, statusCode);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cuecloud;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A signed HTTP request ready to be handed to a {@link CueCloudTransport}.
+ *
+ * @author nmvictor
+ */
+public final class CueCloudRequest {
+    private final String url;
+    private final String method;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final int bodyLength;
+    private final String endpoint;
+    private final CueCloudMetrics metrics;
+
+    /**
+     * Construct a request that is not measured.
+     * @param url The full URL, including any query string.
+     * @param method The HTTP method. Can either be <code>GET, DELETE, POST </code> or <code> PUT</code>.
+     * @param headers The request headers to send. The map is copied.
+     * @param body The request body, or <code>null</code> if the request has no body.
+     */
+    public CueCloudRequest(String url, String method, Map<String, String> headers, byte[] body) {
+        this(url, method, headers, body, url, CueCloudMetrics.NONE);
+    }
+
+    /**
+     * Construct a request.
+     * @param url The full URL, including any query string.
+     * @param method The HTTP method. Can either be <code>GET, DELETE, POST </code> or <code> PUT</code>.
+     * @param headers The request headers to send. The map is copied.
+     * @param body The request body, or <code>null</code> if the request has no body.
+     * @param endpoint The name of the endpoint called, used when reporting metrics.
+     * @param metrics Receives the transport's measurements of this request.
+     */
+    public CueCloudRequest(String url, String method, Map<String, String> headers, byte[] body, String endpoint, CueCloudMetrics metrics) {
+        this(url, method, headers, body, body == null ? 0 : body.length, endpoint, metrics);
+    }
+
+    /**
+     * Construct a request whose body is the first <code>bodyLength</code> bytes of <code>body</code>.
+     * {@link CueCloud} encodes bodies into a buffer it reuses for the next request on the same thread,
+     * so a transport must not hold on to <code>body</code> once {@link CueCloudTransport#execute} returns.
+     * @param url The full URL, including any query string.
+     * @param method The HTTP method. Can either be <code>GET, DELETE, POST </code> or <code> PUT</code>.
+     * @param headers The request headers to send. The map is copied.
+     * @param body Buffer holding the request body, or <code>null</code> if the request has no body.
+     * @param bodyLength The length of the body.
+     * @param endpoint The name of the endpoint called, used when reporting metrics.
+     * @param metrics Receives the transport's measurements of this request.
+     */
+    public CueCloudRequest(String url, String method, Map<String, String> headers, byte[] body, int bodyLength, String endpoint, CueCloudMetrics metrics) {
+        if (bodyLength < 0 || bodyLength > (body == null ? 0 : body.length)) {
+            throw new IllegalArgumentException("bodyLength out of range");
+        }
+        this.url = url;
+        this.method = method;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        this.body = body;
+        this.bodyLength = bodyLength;
+        this.endpoint = endpoint;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The full URL of this request.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The HTTP method of this request.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The request headers, in the order they were added.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return Buffer holding the request body in its first {@link #getBodyLength()} bytes,
+     * or <code>null</code> if the request has no body.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return The length of the request body.
+     */
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * @return The name of the endpoint called, for example <code>cues/</code>.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return Receives the transport's measurements of this request, see {@link CueCloudMetrics#exchange}.
+     */
+    public CueCloudMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return <code>true</code> if this request carries a non-empty body.
+     */
+    public boolean hasBody() {
+        return bodyLength > 0;
+    }
+}
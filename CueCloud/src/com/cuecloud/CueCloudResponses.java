@@ -0,0 +1,155 @@
+package com.cuecloud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoders for CueCloud API responses. Typed responses are parsed in a single pass
+ * straight from the response stream with {@link JsonReader}.
+ *
+ * @author nmvictor
+ */
+final class CueCloudResponses {
+
+    /**
+     * Creates a typed object from its JSON fields.
+     *
+     * @param <T> The type of object.
+     */
+    interface Factory<T> {
+        T create(Map<String, Object> fields);
+    }
+
+    static final Factory<Cue> CUE = new Factory<Cue>() {
+        @Override
+        public Cue create(Map<String, Object> fields) {
+            return new Cue(fields);
+        }
+    };
+
+    static final Factory<CueCompletion> CUE_COMPLETION = new Factory<CueCompletion>() {
+        @Override
+        public CueCompletion create(Map<String, Object> fields) {
+            return new CueCompletion(fields);
+        }
+    };
+
+    static final Factory<Payment> PAYMENT = new Factory<Payment>() {
+        @Override
+        public Payment create(Map<String, Object> fields) {
+            return new Payment(fields);
+        }
+    };
+
+    /**
+     * Reads the whole body, unchanged.
+     */
+    static final CueCloudTransport.ResponseHandler<byte[]> BYTES = new CueCloudTransport.ResponseHandler<byte[]>() {
+        @Override
+        public byte[] handle(int statusCode, InputStream body) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    };
+
+    /**
+     * Reads the whole body as UTF-8 text, unchanged.
+     */
+    static final CueCloudTransport.ResponseHandler<String> STRING = new CueCloudTransport.ResponseHandler<String>() {
+        @Override
+        public String handle(int statusCode, InputStream body) throws IOException {
+            return new String(BYTES.handle(statusCode, body), StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Reads the <code>Data</code> object of the response into a {@link Balance}.
+     */
+    static final CueCloudTransport.ResponseHandler<Balance> BALANCE = new CueCloudTransport.ResponseHandler<Balance>() {
+        @Override
+        public Balance handle(int statusCode, InputStream body) throws IOException {
+            JsonReader json = new JsonReader(body);
+            Map<String, Object> fields = new LinkedHashMap<>();
+            if (json.peek() == JsonReader.Kind.OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    if ("Data".equals(name) && json.peek() == JsonReader.Kind.OBJECT) {
+                        fields = json.nextObject();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+            return new Balance(fields);
+        }
+    };
+
+    private CueCloudResponses() {
+    }
+
+    /**
+     * @param <T> The type of the items.
+     * @param itemsKey The name of the array holding the items inside <code>Data</code>, for example <code>"Cues"</code>.
+     * @param pageNumber The number of the page that was requested.
+     * @param factory Creates the items.
+     * @return A handler reading one page of a listing.
+     */
+    static <T> CueCloudTransport.ResponseHandler<Page<T>> page(final String itemsKey, final int pageNumber, final Factory<T> factory) {
+        return new CueCloudTransport.ResponseHandler<Page<T>>() {
+            @Override
+            public Page<T> handle(int statusCode, InputStream body) throws IOException {
+                JsonReader json = new JsonReader(body);
+                List<T> items = new ArrayList<>();
+                Map<String, Object> attributes = new LinkedHashMap<>();
+                if (json.peek() == JsonReader.Kind.OBJECT) {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String name = json.nextName();
+                        if ("Data".equals(name) && json.peek() == JsonReader.Kind.OBJECT) {
+                            readData(json, itemsKey, factory, items, attributes);
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                }
+                Object total = attributes.get("NumTotalResults");
+                return new Page<>(pageNumber, total instanceof Number ? ((Number) total).intValue() : -1, items, attributes);
+            }
+        };
+    }
+
+    private static <T> void readData(JsonReader json, String itemsKey, Factory<T> factory, List<T> items, Map<String, Object> attributes) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (itemsKey.equals(name) && json.peek() == JsonReader.Kind.ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (json.peek() == JsonReader.Kind.OBJECT) {
+                        items.add(factory.create(json.nextObject()));
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endArray();
+            } else {
+                attributes.put(name, json.nextValue());
+            }
+        }
+        json.endObject();
+    }
+}
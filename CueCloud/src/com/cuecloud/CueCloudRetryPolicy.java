@@ -0,0 +1,140 @@
+package com.cuecloud;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed CueCloud call is tried again, and how long to wait first.
+ * <p>
+ * A call is retried when the server answers with one of the retryable statuses, or when the
+ * request fails with an <code>IOException</code> such as a reset connection or a read timeout.
+ * Waits grow exponentially from <code>initialBackoffMillis</code> up to <code>maxBackoffMillis</code>,
+ * with random jitter so that clients failing together do not retry together.
+ * <p>
+ * Calls that are not idempotent, such as {@link CueCloud#makeDeposit(double, int)} or
+ * {@link CueCloud#grantBonus(String, Double, String, String)}, are only retried when the server
+ * cannot have applied them: the connection was refused, or the server answered <code>429</code>.
+ * <p>
+ * Every attempt is sent with a fresh nonce and signature. Install a policy with
+ * {@link CueCloud#setRetryPolicy(CueCloudRetryPolicy)}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudRetryPolicy {
+    /**
+     * Default total number of attempts, including the first.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /**
+     * Default wait before the first retry.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    /**
+     * Default upper bound on the wait between attempts.
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+    /**
+     * Statuses retried by default: throttling, and gateway or availability errors.
+     */
+    public static final Set<Integer> DEFAULT_RETRY_ON_STATUS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(429, 502, 503, 504)));
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Set<Integer> retryOnStatus;
+
+    /**
+     * Construct a policy with the default settings.
+     */
+    public CueCloudRetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_RETRY_ON_STATUS);
+    }
+
+    /**
+     * Construct a policy.
+     * @param maxAttempts Total number of attempts, including the first. Must be positive.
+     * @param initialBackoffMillis Wait before the first retry. Must be positive.
+     * @param maxBackoffMillis Upper bound on the wait between attempts.
+     * @param retryOnStatus HTTP statuses worth retrying.
+     */
+    public CueCloudRetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, Set<Integer> retryOnStatus) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        if (initialBackoffMillis < 1 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("Require 1 <= initialBackoffMillis <= maxBackoffMillis");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.retryOnStatus = Collections.unmodifiableSet(new HashSet<>(retryOnStatus));
+    }
+
+    /**
+     * @return Total number of attempts, including the first.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return Wait before the first retry.
+     */
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    /**
+     * @return Upper bound on the wait between attempts.
+     */
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * @return HTTP statuses worth retrying.
+     */
+    public Set<Integer> getRetryOnStatus() {
+        return retryOnStatus;
+    }
+
+    /**
+     * @param attempt The number of the attempt that failed, starting at 1.
+     * @param failure Why it failed.
+     * @param idempotent Whether repeating the call is harmless.
+     * @return <code>true</code> if the call should be made again.
+     */
+    public boolean shouldRetry(int attempt, CueCloud.CueCloudException failure, boolean idempotent) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        int statusCode = failure.getStatusCode();
+        if (statusCode > 0) {
+            return retryOnStatus.contains(statusCode) && (idempotent || statusCode == 429);
+        }
+        Throwable cause = failure.getCause();
+        if (cause instanceof ConnectException) {
+            return true;
+        }
+        return idempotent && cause instanceof IOException;
+    }
+
+    /**
+     * @param attempt The number of the attempt that failed, starting at 1.
+     * @return How long to wait before the next attempt: half of the exponential backoff for
+     * <code>attempt</code>, plus a random part of up to the other half.
+     */
+    public long backoffMillis(int attempt) {
+        long backoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoffMillis) {
+            backoff = maxBackoffMillis;
+        }
+        long half = backoff / 2;
+        return backoff - half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
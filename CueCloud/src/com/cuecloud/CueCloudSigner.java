@@ -0,0 +1,164 @@
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes the <code>Access-Signature</code> of a request: the hex encoded HMAC-SHA256 of
+ * <code>nonce + url + body</code>, keyed with the API password.
+ * <p>
+ * The key is set up once. Each thread signs with its own {@link Mac}, cloned from an
+ * initialised prototype, so there is no provider lookup or key initialisation per request.
+ * The nonce, URL and body are fed to the MAC one after the other instead of being concatenated,
+ * and the digest and hex digits are written to per-thread buffers; the only allocation per
+ * signature is the returned <code>String</code>.
+ * <p>
+ * Virtual threads are not reused, so they take a MAC and buffers from a small shared pool instead;
+ * signing never blocks, so no more than one set per carrier thread is in use at once.
+ * <p>
+ * Text is signed as UTF-8, which is also how {@link CueCloud} encodes request bodies.
+ *
+ * @author nmvictor
+ */
+public class CueCloudSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(newMac());
+        }
+    };
+
+    /**
+     * MACs and buffers for virtual threads, returned after each signature.
+     */
+    private final BlockingQueue<State> shared = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Per-thread MAC and scratch buffers.
+     */
+    private static final class State {
+        final Mac mac;
+        final byte[] digest;
+        final char[] hex;
+        byte[] text = new byte[256];
+
+        State(Mac mac) {
+            this.mac = mac;
+            this.digest = new byte[mac.getMacLength()];
+            this.hex = new char[digest.length * 2];
+        }
+    }
+
+    /**
+     * Construct a signer.
+     * @param apiPass The API password to sign with.
+     * @throws GeneralSecurityException If HMAC-SHA256 is not available.
+     */
+    public CueCloudSigner(String apiPass) throws GeneralSecurityException {
+        this.key = new SecretKeySpec(apiPass.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.prototype = Mac.getInstance(ALGORITHM);
+        this.prototype.init(key);
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // Some providers cannot clone; fall back to a fresh instance, still only once per thread.
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Sign a request.
+     * @param nonce The <code>Access-Nonce</code> of the request.
+     * @param url The full URL of the request, including any query string.
+     * @param body The request body, or <code>null</code> if it has none.
+     * @return The lower case hex encoded signature.
+     */
+    public String sign(String nonce, String url, byte[] body) {
+        return sign(nonce, url, body, 0, body == null ? 0 : body.length);
+    }
+
+    /**
+     * Sign a request whose body is a slice of <code>body</code>.
+     * @param nonce The <code>Access-Nonce</code> of the request.
+     * @param url The full URL of the request, including any query string.
+     * @param body Buffer holding the request body, or <code>null</code> if it has none.
+     * @param offset Offset of the body in <code>body</code>.
+     * @param length Length of the body.
+     * @return The lower case hex encoded signature.
+     */
+    public String sign(String nonce, String url, byte[] body, int offset, int length) {
+        if (!CueCloudExecutors.isVirtual(Thread.currentThread())) {
+            return sign(state.get(), nonce, url, body, offset, length);
+        }
+        State s = shared.poll();
+        if (s == null) {
+            s = new State(newMac());
+        }
+        try {
+            return sign(s, nonce, url, body, offset, length);
+        } finally {
+            shared.offer(s);
+        }
+    }
+
+    private static String sign(State s, String nonce, String url, byte[] body, int offset, int length) {
+        Mac mac = s.mac;
+        update(s, nonce);
+        update(s, url);
+        if (body != null && length > 0) {
+            mac.update(body, offset, length);
+        }
+        try {
+            mac.doFinal(s.digest, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        char[] hex = s.hex;
+        for (int i = 0; i < s.digest.length; i++) {
+            int b = s.digest[i] & 0xff;
+            hex[i * 2] = HEX_DIGITS[b >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Feeds <code>text</code> to the MAC as UTF-8. ASCII text, which nonces and encoded URLs
+     * always are, is copied into the thread's scratch buffer without allocating.
+     */
+    private static void update(State s, String text) {
+        int length = text.length();
+        if (s.text.length < length) {
+            s.text = new byte[Math.max(length, s.text.length * 2)];
+        }
+        byte[] bytes = s.text;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                s.mac.update(bytes, 0, i);
+                s.mac.update(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            bytes[i] = (byte) c;
+        }
+        s.mac.update(bytes, 0, length);
+    }
+}
@@ -0,0 +1,47 @@
+package com.cuecloud;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The HTTP layer used by {@link CueCloud} to send requests to the API.
+ * The default implementation is {@link KeepAliveHttpTransport}; a different
+ * implementation can be supplied to the {@link CueCloud} constructor, for example
+ * to point the client at a local stub server in tests.
+ * <p>
+ * Implementations must be safe to use from multiple threads.
+ *
+ * @author nmvictor
+ */
+public interface CueCloudTransport extends Closeable {
+
+    /**
+     * Sends <code>request</code> and hands the response to <code>handler</code>.
+     * The response stream is only valid for the duration of the handler call;
+     * the transport drains and releases it once the handler returns.
+     * @param <T> The type of value produced by the handler.
+     * @param request The request to send.
+     * @param handler Reads the response.
+     * @return The value returned by <code>handler</code>.
+     * @throws IOException If the request could not be sent or the response could not be read.
+     */
+    <T> T execute(CueCloudRequest request, ResponseHandler<T> handler) throws IOException;
+
+    /**
+     * Reads the response of a request sent through a {@link CueCloudTransport}.
+     *
+     * @param <T> The type of value produced from the response.
+     */
+    interface ResponseHandler<T> {
+
+        /**
+         * Handles a response.
+         * @param statusCode The HTTP status code of the response.
+         * @param body The response body. Never <code>null</code>, but may be empty.
+         * @return The value to return from {@link CueCloudTransport#execute}.
+         * @throws IOException If the body cannot be read, or the response is not acceptable.
+         */
+        T handle(int statusCode, InputStream body) throws IOException;
+    }
+}
@@ -0,0 +1,101 @@
+package com.cuecloud;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates the {@link CueCloudTransport} for an HTTP version: {@link KeepAliveHttpTransport}, a pool of
+ * HTTP/1.1 connections, or, on Java 11 and later, {@link Protocol#HTTP_2 an HTTP/2 transport} that sends
+ * every concurrent call to a host over the same connection.
+ * <p>
+ * The library is built for Java 7, so the HTTP/2 transport is built from its own source directory with
+ * Java 11 and loaded by reflection; {@link #isHttp2Available()} tells whether it can be used.
+ *
+ * @author nmvictor
+ */
+public final class CueCloudTransports {
+    private static final String HTTP2_TRANSPORT_CLASS = "com.cuecloud.Http2Transport";
+    private static final Constructor<?> HTTP2_TRANSPORT = findHttp2Transport();
+    /**
+     * Default number of concurrent requests per host over HTTP/2, as <code>Http2Transport.DEFAULT_MAX_CONCURRENT_REQUESTS</code>.
+     */
+    private static final int DEFAULT_HTTP2_CONCURRENT_REQUESTS = 100;
+
+    /**
+     * The HTTP version a transport speaks.
+     */
+    public enum Protocol {
+        /**
+         * HTTP/1.1 over a pool of kept-alive connections, one per call in flight.
+         */
+        HTTP_1_1,
+        /**
+         * HTTP/2, with the calls in flight multiplexed over a connection. Servers that do not speak
+         * HTTP/2 are talked to over HTTP/1.1.
+         */
+        HTTP_2
+    }
+
+    private CueCloudTransports() {
+    }
+
+    private static Constructor<?> findHttp2Transport() {
+        try {
+            Class.forName("java.net.http.HttpClient");
+            return Class.forName(HTTP2_TRANSPORT_CLASS).getConstructor(int.class, int.class, int.class);
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            // Older than Java 11, or built without the HTTP/2 sources.
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if {@link Protocol#HTTP_2} transports can be created in this JVM.
+     */
+    public static boolean isHttp2Available() {
+        return HTTP2_TRANSPORT != null;
+    }
+
+    /**
+     * Create a transport with the default timeouts, and 5 connections per host over HTTP/1.1
+     * or 100 concurrent requests per host over HTTP/2.
+     * @param protocol The HTTP version to speak.
+     * @return A new transport.
+     * @throws UnsupportedOperationException If <code>protocol</code> is {@link Protocol#HTTP_2} and {@link #isHttp2Available()} is <code>false</code>.
+     */
+    public static CueCloudTransport newTransport(Protocol protocol) {
+        return protocol == Protocol.HTTP_2
+                ? newTransport(protocol, DEFAULT_HTTP2_CONCURRENT_REQUESTS, KeepAliveHttpTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS, KeepAliveHttpTransport.DEFAULT_READ_TIMEOUT_MILLIS)
+                : new KeepAliveHttpTransport();
+    }
+
+    /**
+     * Create a transport.
+     * @param protocol The HTTP version to speak.
+     * @param maxConcurrentRequests Maximum number of requests in flight against a single host. Over HTTP/1.1
+     * this is also the number of connections per host; over HTTP/2 they share the connection. Must be positive.
+     * @param connectTimeoutMillis Connect timeout in milliseconds. <code>0</code> means no timeout.
+     * @param readTimeoutMillis Read timeout in milliseconds. <code>0</code> means no timeout.
+     * @return A new transport.
+     * @throws UnsupportedOperationException If <code>protocol</code> is {@link Protocol#HTTP_2} and {@link #isHttp2Available()} is <code>false</code>.
+     */
+    public static CueCloudTransport newTransport(Protocol protocol, int maxConcurrentRequests, int connectTimeoutMillis, int readTimeoutMillis) {
+        if (protocol != Protocol.HTTP_2) {
+            return new KeepAliveHttpTransport(maxConcurrentRequests, connectTimeoutMillis, readTimeoutMillis);
+        }
+        if (HTTP2_TRANSPORT == null) {
+            throw new UnsupportedOperationException("HTTP/2 needs Java 11 or later and " + HTTP2_TRANSPORT_CLASS);
+        }
+        try {
+            return (CueCloudTransport) HTTP2_TRANSPORT.newInstance(maxConcurrentRequests, connectTimeoutMillis, readTimeoutMillis);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Cannot create " + HTTP2_TRANSPORT_CLASS, cause);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create " + HTTP2_TRANSPORT_CLASS, e);
+        }
+    }
+}
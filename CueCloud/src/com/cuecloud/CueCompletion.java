@@ -0,0 +1,75 @@
+package com.cuecloud;
+
+import java.util.Map;
+
+/**
+ * A completion submitted for a Cue, as returned by
+ * {@link CueCloud#fetchCueCompletions(String, Integer, CueCloud.CueCompletionStatus, Integer)}.
+ *
+ * @author nmvictor
+ */
+public class CueCompletion extends CueCloudObject {
+
+    /**
+     * @param fields The JSON fields of the completion.
+     */
+    public CueCompletion(Map<String, Object> fields) {
+        super(fields);
+    }
+
+    /**
+     * @return The ID of the completion.
+     */
+    public String getID() {
+        return getString("ID");
+    }
+
+    /**
+     * @return The ID of the Cue this completion was submitted for.
+     */
+    public String getCueID() {
+        return getString("CueID");
+    }
+
+    /**
+     * @return The status of the completion, or <code>null</code> if the server sent an unknown status.
+     */
+    public CueCloud.CueCompletionStatus getStatus() {
+        return getEnum("Status", CueCloud.CueCompletionStatus.class);
+    }
+
+    /**
+     * @return The answer text of the submission.
+     */
+    public String getAnswerText() {
+        return getString("AnswerText");
+    }
+
+    /**
+     * @return The image URL of the submission.
+     */
+    public String getImageURL() {
+        return getString("ImageURL");
+    }
+
+    /**
+     * @return The video URL of the submission.
+     */
+    public String getVideoURL() {
+        return getString("VideoURL");
+    }
+
+    /**
+     * @return The video thumbnail URL of the submission.
+     */
+    public String getVideoThumbnailURL() {
+        return getString("VideoThumbnailURL");
+    }
+
+    /**
+     * @return Whether the submission was anonymous.
+     */
+    public Boolean getIsAnonymous() {
+        return getBoolean("IsAnonymous");
+    }
+}
@@ -0,0 +1,18 @@
+package com.cuecloud;
+
+/**
+ * Receives the CueCompletions delivered to a {@link CueCloudNotificationListener} or found by a
+ * {@link CueCompletionPoller}.
+ *
+ * @author nmvictor
+ */
+public interface CueCompletionHandler {
+
+    /**
+     * Called for each completion notified, on one of the listener's worker threads, or polled, on the polling thread.
+     * @param completion The completion the notification was sent for.
+     * @throws Exception If handling fails; the failure is logged. A notification is not delivered again;
+     * a polled completion is handed over again by the next poll.
+     */
+    void onCueCompletion(CueCompletion completion) throws Exception;
+}
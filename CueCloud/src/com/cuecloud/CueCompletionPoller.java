@@ -0,0 +1,270 @@
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Discovers new CueCompletions by polling, for when {@link CueCloudNotificationListener URL notifications}
+ * cannot be received. Each poll hands only the completions not seen before to a {@link CueCompletionHandler}.
+ * <p>
+ * A poll lists the Cues that have pending completions and, for each, reads its completions from a local
+ * cursor: the number of completions of the Cue already seen. The poller assumes that the listing of a
+ * Cue's completions of every status returns them oldest first and never removes any, so the ones after
+ * the cursor are the new ones, and only the pages from the one holding the cursor onwards are fetched.
+ * The API documentation does not promise this ordering; if a Cue's listing turns out shorter than its
+ * cursor, the poller logs it and reads that Cue again from the start, handing its completions over again.
+ * The cost of a poll is thus one page per Cue with pending completions plus the pages of new completions,
+ * however long the history.
+ * <p>
+ * Delivery is at least once: the cursor only moves past a completion once the handler has returned
+ * normally. If the handler throws, the failure is logged and the rest of that Cue is left for the next
+ * poll, which hands the failed completion over again.
+ * <p>
+ * When started with {@link #start(ScheduledExecutorService)}, the poller waits between polls for the time
+ * in which {@link #getTargetCompletionsPerPoll()} completions are expected to arrive, at the arrival rate
+ * observed so far, bounded by the minimum and maximum interval. Cursors can be saved with
+ * {@link #getCursors()} and restored with {@link #setCursor(String, int)} to resume after a restart
+ * without seeing old completions again.
+ *
+ * @author nmvictor
+ */
+public class CueCompletionPoller {
+    private static final Logger LOG = Logger.getLogger(CueCompletionPoller.class.getName());
+    /**
+     * Number of items per page of a listing.
+     */
+    static final int PAGE_SIZE = 50;
+    /**
+     * Default minimum time between polls, in milliseconds.
+     */
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 5000;
+    /**
+     * Default maximum time between polls, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 300000;
+    /**
+     * Weight of the latest poll in the estimated arrival rate.
+     */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final CueCloud cueCloud;
+    private final CueCompletionHandler handler;
+    private final ConcurrentMap<String, Integer> cursors = new ConcurrentHashMap<>();
+    private final ReentrantLock polling = new ReentrantLock();
+    private volatile long minIntervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+    private volatile long maxIntervalMillis = DEFAULT_MAX_INTERVAL_MILLIS;
+    private volatile double targetCompletionsPerPoll = 1;
+    private volatile double arrivalsPerSecond;
+    private volatile long intervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+    private long lastPollNanos;
+    private volatile ScheduledFuture<?> scheduled;
+    private volatile boolean stopped;
+
+    /**
+     * Construct a poller.
+     * @param cueCloud The client to poll with.
+     * @param handler Receives each new completion, on the polling thread.
+     */
+    public CueCompletionPoller(CueCloud cueCloud, CueCompletionHandler handler) {
+        this.cueCloud = cueCloud;
+        this.handler = handler;
+    }
+
+    /**
+     * Bound the time between polls.
+     * @param minIntervalMillis Minimum time between polls, in milliseconds. Must be positive.
+     * @param maxIntervalMillis Maximum time between polls, in milliseconds. At least <code>minIntervalMillis</code>.
+     */
+    public void setIntervalBounds(long minIntervalMillis, long maxIntervalMillis) {
+        if (minIntervalMillis < 1 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Intervals must be positive, the maximum at least the minimum");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.intervalMillis = Math.min(maxIntervalMillis, Math.max(minIntervalMillis, intervalMillis));
+    }
+
+    /**
+     * @param targetCompletionsPerPoll The number of new completions to aim for in each poll. Lower values
+     * find completions sooner, higher ones poll less often. Must be positive.
+     */
+    public void setTargetCompletionsPerPoll(double targetCompletionsPerPoll) {
+        if (!(targetCompletionsPerPoll > 0)) {
+            throw new IllegalArgumentException("targetCompletionsPerPoll must be positive");
+        }
+        this.targetCompletionsPerPoll = targetCompletionsPerPoll;
+    }
+
+    /**
+     * @return The number of new completions aimed for in each poll.
+     */
+    public double getTargetCompletionsPerPoll() {
+        return targetCompletionsPerPoll;
+    }
+
+    /**
+     * @return The time until the next poll, in milliseconds.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @return The estimated number of new completions per second.
+     */
+    public double getArrivalsPerSecond() {
+        return arrivalsPerSecond;
+    }
+
+    /**
+     * @param cueID The ID of a Cue.
+     * @return The number of completions of the Cue seen so far.
+     */
+    public int getCursor(String cueID) {
+        Integer cursor = cursors.get(cueID);
+        return cursor == null ? 0 : cursor;
+    }
+
+    /**
+     * Set the number of completions of a Cue already seen, for example to resume from saved cursors.
+     * @param cueID The ID of a Cue.
+     * @param seen The number of its completions, oldest first, not to hand over again.
+     */
+    public void setCursor(String cueID, int seen) {
+        cursors.put(cueID, seen);
+    }
+
+    /**
+     * @return The cursor of every Cue seen so far, by Cue ID.
+     */
+    public Map<String, Integer> getCursors() {
+        return Collections.unmodifiableMap(cursors);
+    }
+
+    /**
+     * Poll once, handing every new completion to the handler, and update the interval until the next poll.
+     * Polls made from several threads run one at a time.
+     * @return The new completions handed over.
+     * @throws com.cuecloud.CueCloud.CueCloudException If a call fails. The cursors of the Cues read before
+     * the failure are kept, so the next poll resumes there.
+     */
+    public List<CueCompletion> poll() throws CueCloud.CueCloudException {
+        polling.lock();
+        try {
+            long start = System.nanoTime();
+            List<CueCompletion> found = new ArrayList<>();
+            for (Cue cue : cueCloud.iterateCues(null, null, true, null, null)) {
+                if (cue.getID() != null) {
+                    pollCue(cue.getID(), found);
+                }
+            }
+            adapt(found.size(), start);
+            return found;
+        } catch (PagedIterable.PageFetchException e) {
+            if (e.getCause() instanceof CueCloud.CueCloudException) {
+                throw (CueCloud.CueCloudException) e.getCause();
+            }
+            throw e;
+        } finally {
+            polling.unlock();
+        }
+    }
+
+    private void pollCue(String cueID, List<CueCompletion> found) throws CueCloud.CueCloudException {
+        int seen = getCursor(cueID);
+        int pageNumber = seen / PAGE_SIZE + 1;
+        while (true) {
+            Page<CueCompletion> page = cueCloud.fetchCueCompletions(cueID, null, null, pageNumber);
+            int total = page.getTotalResults();
+            if (total >= 0 && total < seen) {
+                LOG.log(Level.WARNING, "Cue {0} lists {1} completions, fewer than the {2} seen; reading it again from the start",
+                        new Object[]{cueID, total, seen});
+                seen = 0;
+                cursors.put(cueID, seen);
+                pageNumber = 1;
+                continue;
+            }
+            List<CueCompletion> items = page.getItems();
+            int first = (pageNumber - 1) * PAGE_SIZE;
+            for (int i = Math.max(0, seen - first); i < items.size(); i++) {
+                CueCompletion completion = items.get(i);
+                try {
+                    handler.onCueCompletion(completion);
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Handling CueCompletion " + completion.getID() + " failed; it is handed over again by the next poll", e);
+                    return;
+                }
+                found.add(completion);
+                seen = first + i + 1;
+                cursors.put(cueID, seen);
+            }
+            if (items.size() < PAGE_SIZE || (total >= 0 && first + items.size() >= total)) {
+                return;
+            }
+            pageNumber++;
+        }
+    }
+
+    /**
+     * Folds the completions found into the arrival rate and sets the next interval from it.
+     */
+    private void adapt(int found, long start) {
+        if (lastPollNanos != 0) {
+            double seconds = Math.max(1e-3, (start - lastPollNanos) / 1e9);
+            arrivalsPerSecond = RATE_SMOOTHING * (found / seconds) + (1 - RATE_SMOOTHING) * arrivalsPerSecond;
+        }
+        lastPollNanos = start;
+        double rate = arrivalsPerSecond;
+        long interval = rate > 0 ? (long) (targetCompletionsPerPoll / rate * 1000) : maxIntervalMillis;
+        intervalMillis = Math.min(maxIntervalMillis, Math.max(minIntervalMillis, interval));
+    }
+
+    /**
+     * Poll now and then repeatedly on <code>scheduler</code>, waiting {@link #getIntervalMillis()} between polls.
+     * A failed poll is logged and the next one waits the maximum interval.
+     * @param scheduler The scheduler to poll on.
+     */
+    public void start(final ScheduledExecutorService scheduler) {
+        stopped = false;
+        schedule(scheduler, 0);
+    }
+
+    private void schedule(final ScheduledExecutorService scheduler, long delayMillis) {
+        if (stopped) {
+            return;
+        }
+        scheduled = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (CueCloud.CueCloudException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Polling for CueCompletions failed", e);
+                    intervalMillis = maxIntervalMillis;
+                }
+                schedule(scheduler, intervalMillis);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop polling. A poll in progress completes.
+     */
+    public void stop() {
+        stopped = true;
+        ScheduledFuture<?> next = scheduled;
+        if (next != null) {
+            next.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.cuecloud;
+
+/**
+ * An immutable description of a Cue to create with {@link CueCloud#createCue(CueSpec)} or
+ * {@link CueCloud#createCues(java.util.List)}, built with a {@link Builder}.
+ * <p>
+ * Cues posted in bulk usually share everything but their title, description, note and keywords.
+ * Build one spec with the shared settings and derive the others from it with {@link #toBuilder()}:
+ * the shared settings are encoded once, when the template is built, and reused by every spec
+ * derived from it that leaves them unchanged, so only the varying fields are encoded per Cue.
+ * <pre>
+ * CueSpec template = new CueSpec.Builder().setAmount(0.25).setNumOpportunities(10).setLifetimeInMinutes(1440).build();
+ * CueSpec cue = template.toBuilder().setTitle("Describe this picture").setKeywords("image").build();
+ * </pre>
+ *
+ * @author nmvictor
+ */
+public final class CueSpec {
+    private final String title;
+    private final double amount;
+    private final int numOpportunities;
+    private final String description;
+    private final Boolean isAnonymous;
+    private final Boolean pushNotificationOnCueCompletion;
+    private final Boolean disallowAnonymousCueCompletions;
+    private final String iFrameURL;
+    private final Boolean uRLNotificationOnCueCompletion;
+    private final Boolean emailNotificationOnCueCompletion;
+    private final Integer lifetimeInMinutes;
+    private final Integer timeLimitToCompleteCueInMinutes;
+    private final Integer autoApproveCueCompletionAfterThisManyMinutes;
+    private final String noteToSelf;
+    private final String keywords;
+    /**
+     * The shared settings, encoded as JSON members. Shared between specs, never modified.
+     */
+    private final byte[] settings;
+
+    private CueSpec(Builder builder, byte[] settings) {
+        this.title = builder.title;
+        this.amount = builder.amount;
+        this.numOpportunities = builder.numOpportunities;
+        this.description = builder.description;
+        this.isAnonymous = builder.isAnonymous;
+        this.pushNotificationOnCueCompletion = builder.pushNotificationOnCueCompletion;
+        this.disallowAnonymousCueCompletions = builder.disallowAnonymousCueCompletions;
+        this.iFrameURL = builder.iFrameURL;
+        this.uRLNotificationOnCueCompletion = builder.uRLNotificationOnCueCompletion;
+        this.emailNotificationOnCueCompletion = builder.emailNotificationOnCueCompletion;
+        this.lifetimeInMinutes = builder.lifetimeInMinutes;
+        this.timeLimitToCompleteCueInMinutes = builder.timeLimitToCompleteCueInMinutes;
+        this.autoApproveCueCompletionAfterThisManyMinutes = builder.autoApproveCueCompletionAfterThisManyMinutes;
+        this.noteToSelf = builder.noteToSelf;
+        this.keywords = builder.keywords;
+        this.settings = settings;
+    }
+
+    /**
+     * Builds {@link CueSpec}s. A builder is not thread-safe; the specs it builds are.
+     */
+    public static class Builder {
+        private String title;
+        private double amount;
+        private int numOpportunities;
+        private String description;
+        private Boolean isAnonymous;
+        private Boolean pushNotificationOnCueCompletion;
+        private Boolean disallowAnonymousCueCompletions;
+        private String iFrameURL;
+        private Boolean uRLNotificationOnCueCompletion;
+        private Boolean emailNotificationOnCueCompletion;
+        private Integer lifetimeInMinutes;
+        private Integer timeLimitToCompleteCueInMinutes;
+        private Integer autoApproveCueCompletionAfterThisManyMinutes;
+        private String noteToSelf;
+        private String keywords;
+        /**
+         * The encoded settings of the spec this builder was derived from, until a setting changes.
+         */
+        private byte[] settings;
+
+        /**
+         * Start a spec with no fields set.
+         */
+        public Builder() {
+        }
+
+        private Builder(CueSpec spec) {
+            this.title = spec.title;
+            this.amount = spec.amount;
+            this.numOpportunities = spec.numOpportunities;
+            this.description = spec.description;
+            this.isAnonymous = spec.isAnonymous;
+            this.pushNotificationOnCueCompletion = spec.pushNotificationOnCueCompletion;
+            this.disallowAnonymousCueCompletions = spec.disallowAnonymousCueCompletions;
+            this.iFrameURL = spec.iFrameURL;
+            this.uRLNotificationOnCueCompletion = spec.uRLNotificationOnCueCompletion;
+            this.emailNotificationOnCueCompletion = spec.emailNotificationOnCueCompletion;
+            this.lifetimeInMinutes = spec.lifetimeInMinutes;
+            this.timeLimitToCompleteCueInMinutes = spec.timeLimitToCompleteCueInMinutes;
+            this.autoApproveCueCompletionAfterThisManyMinutes = spec.autoApproveCueCompletionAfterThisManyMinutes;
+            this.noteToSelf = spec.noteToSelf;
+            this.keywords = spec.keywords;
+            this.settings = spec.settings;
+        }
+
+        /**
+         * @param title The title of the Cue. Must be provided.
+         * @return This builder.
+         */
+        public Builder setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        /**
+         * @param amount The amount for this Cue. Must be provided.
+         * @return This builder.
+         */
+        public Builder setAmount(double amount) {
+            this.amount = amount;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param numOpportunities Number of opportunities for this Cue. Must be provided.
+         * @return This builder.
+         */
+        public Builder setNumOpportunities(int numOpportunities) {
+            this.numOpportunities = numOpportunities;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param description The description of this Cue. Optional.
+         * @return This builder.
+         */
+        public Builder setDescription(String description) {
+            this.description = description;
+            return this;
+        }
+
+        /**
+         * @param isAnonymous If this is an anonymous Cue. Optional.
+         * @return This builder.
+         */
+        public Builder setAnonymous(Boolean isAnonymous) {
+            this.isAnonymous = isAnonymous;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param pushNotificationOnCueCompletion Whether to receive push notifications on Cue Completion. Optional.
+         * @return This builder.
+         */
+        public Builder setPushNotificationOnCueCompletion(Boolean pushNotificationOnCueCompletion) {
+            this.pushNotificationOnCueCompletion = pushNotificationOnCueCompletion;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param disallowAnonymousCueCompletions Whether to reject anonymous Cue completions. Optional.
+         * @return This builder.
+         */
+        public Builder setDisallowAnonymousCueCompletions(Boolean disallowAnonymousCueCompletions) {
+            this.disallowAnonymousCueCompletions = disallowAnonymousCueCompletions;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param iFrameURL Can be specified if you want a user to fill out a custom form on your site. Optional.
+         * @return This builder.
+         */
+        public Builder setIFrameURL(String iFrameURL) {
+            this.iFrameURL = iFrameURL;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param uRLNotificationOnCueCompletion Whether to receive URL notification on completion. Optional.
+         * @return This builder.
+         */
+        public Builder setURLNotificationOnCueCompletion(Boolean uRLNotificationOnCueCompletion) {
+            this.uRLNotificationOnCueCompletion = uRLNotificationOnCueCompletion;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param emailNotificationOnCueCompletion Whether to receive email notifications on completion. Optional.
+         * @return This builder.
+         */
+        public Builder setEmailNotificationOnCueCompletion(Boolean emailNotificationOnCueCompletion) {
+            this.emailNotificationOnCueCompletion = emailNotificationOnCueCompletion;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param lifetimeInMinutes Cue lifetime in minutes. Optional.
+         * @return This builder.
+         */
+        public Builder setLifetimeInMinutes(Integer lifetimeInMinutes) {
+            this.lifetimeInMinutes = lifetimeInMinutes;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param timeLimitToCompleteCueInMinutes Time limit to complete the Cue in minutes. Optional.
+         * @return This builder.
+         */
+        public Builder setTimeLimitToCompleteCueInMinutes(Integer timeLimitToCompleteCueInMinutes) {
+            this.timeLimitToCompleteCueInMinutes = timeLimitToCompleteCueInMinutes;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param autoApproveCueCompletionAfterThisManyMinutes Timeout to auto-approve completions. Optional.
+         * @return This builder.
+         */
+        public Builder setAutoApproveCueCompletionAfterThisManyMinutes(Integer autoApproveCueCompletionAfterThisManyMinutes) {
+            this.autoApproveCueCompletionAfterThisManyMinutes = autoApproveCueCompletionAfterThisManyMinutes;
+            settings = null;
+            return this;
+        }
+
+        /**
+         * @param noteToSelf Note to self on Cue creation. Optional.
+         * @return This builder.
+         */
+        public Builder setNoteToSelf(String noteToSelf) {
+            this.noteToSelf = noteToSelf;
+            return this;
+        }
+
+        /**
+         * @param keywords Keywords of this Cue. Optional.
+         * @return This builder.
+         */
+        public Builder setKeywords(String keywords) {
+            this.keywords = keywords;
+            return this;
+        }
+
+        /**
+         * @return A spec with the fields set on this builder. The shared settings are encoded here,
+         * unless they are unchanged from the spec this builder was derived from.
+         */
+        public CueSpec build() {
+            if (settings == null) {
+                JsonWriter writer = new JsonWriter(256);
+                writer.writeMember("Amount", amount);
+                writer.writeMember("NumOpportunities", numOpportunities);
+                writer.writeOptionalMember("IsAnonymous", isAnonymous);
+                writer.writeOptionalMember("PushNotificationOnCueCompletion", pushNotificationOnCueCompletion);
+                writer.writeOptionalMember("DisallowAnonymousCueCompletions", disallowAnonymousCueCompletions);
+                writer.writeOptionalMember("iFrameURL", iFrameURL);
+                writer.writeOptionalMember("URLNotificationOnCueCompletion", uRLNotificationOnCueCompletion);
+                writer.writeOptionalMember("EmailNotificationOnCueCompletion", emailNotificationOnCueCompletion);
+                writer.writeOptionalMember("LifetimeInMinutes", lifetimeInMinutes);
+                writer.writeOptionalMember("TimeLimitToCompleteCueInMinutes", timeLimitToCompleteCueInMinutes);
+                writer.writeOptionalMember("AutoApproveCueCompletionAfterThisManyMinutes", autoApproveCueCompletionAfterThisManyMinutes);
+                settings = writer.toByteArray();
+            }
+            return new CueSpec(this, settings);
+        }
+    }
+
+    /**
+     * @return A builder holding the fields of this spec, to derive another spec from it.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Append this spec to <code>writer</code> as the body of a <code>cues/create</code> request.
+     * Fields that are not set are left out.
+     * @param writer The writer to append to.
+     */
+    void writeTo(JsonWriter writer) {
+        writer.beginObject();
+        writer.writeRaw(settings);
+        writer.writeOptionalMember("Title", title);
+        writer.writeOptionalMember("Description", description);
+        writer.writeOptionalMember("NoteToSelf", noteToSelf);
+        writer.writeOptionalMember("Keywords", keywords);
+        writer.endObject();
+    }
+
+    /**
+     * @return The shared settings as encoded, to tell whether two specs share them.
+     */
+    byte[] encodedSettings() {
+        return settings;
+    }
+
+    /**
+     * @return The title of the Cue.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return The amount for this Cue.
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * @return Number of opportunities for this Cue.
+     */
+    public int getNumOpportunities() {
+        return numOpportunities;
+    }
+
+    /**
+     * @return The description of this Cue, or <code>null</code>.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return If this is an anonymous Cue, or <code>null</code>.
+     */
+    public Boolean getAnonymous() {
+        return isAnonymous;
+    }
+
+    /**
+     * @return Whether to receive push notifications on Cue Completion, or <code>null</code>.
+     */
+    public Boolean getPushNotificationOnCueCompletion() {
+        return pushNotificationOnCueCompletion;
+    }
+
+    /**
+     * @return Whether to reject anonymous Cue completions, or <code>null</code>.
+     */
+    public Boolean getDisallowAnonymousCueCompletions() {
+        return disallowAnonymousCueCompletions;
+    }
+
+    /**
+     * @return The URL of the custom form, or <code>null</code>.
+     */
+    public String getIFrameURL() {
+        return iFrameURL;
+    }
+
+    /**
+     * @return Whether to receive URL notification on completion, or <code>null</code>.
+     */
+    public Boolean getURLNotificationOnCueCompletion() {
+        return uRLNotificationOnCueCompletion;
+    }
+
+    /**
+     * @return Whether to receive email notifications on completion, or <code>null</code>.
+     */
+    public Boolean getEmailNotificationOnCueCompletion() {
+        return emailNotificationOnCueCompletion;
+    }
+
+    /**
+     * @return Cue lifetime in minutes, or <code>null</code>.
+     */
+    public Integer getLifetimeInMinutes() {
+        return lifetimeInMinutes;
+    }
+
+    /**
+     * @return Time limit to complete the Cue in minutes, or <code>null</code>.
+     */
+    public Integer getTimeLimitToCompleteCueInMinutes() {
+        return timeLimitToCompleteCueInMinutes;
+    }
+
+    /**
+     * @return Timeout to auto-approve completions, or <code>null</code>.
+     */
+    public Integer getAutoApproveCueCompletionAfterThisManyMinutes() {
+        return autoApproveCueCompletionAfterThisManyMinutes;
+    }
+
+    /**
+     * @return Note to self on Cue creation, or <code>null</code>.
+     */
+    public String getNoteToSelf() {
+        return noteToSelf;
+    }
+
+    /**
+     * @return Keywords of this Cue, or <code>null</code>.
+     */
+    public String getKeywords() {
+        return keywords;
+    }
+
+    @Override
+    public String toString() {
+        return "CueSpec[" + title + "]";
+    }
+}
@@ -0,0 +1,232 @@
+package com.cuecloud;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link CueCloudMetrics} that keeps its measurements in memory, as a timer and a set of counters per
+ * endpoint, in the manner of a metrics registry: call latency, connect and server time histograms,
+ * bytes sent and received, responses per status code and retries. Connection pool usage is kept per host.
+ * <p>
+ * All methods are thread-safe and lock-free on the recording path; read the values at any time,
+ * for example to publish them to a monitoring system on a schedule.
+ *
+ * @author nmvictor
+ */
+public class InMemoryCueCloudMetrics implements CueCloudMetrics {
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PoolMetrics> pools = new ConcurrentHashMap<>();
+
+    /**
+     * The measurements of one endpoint.
+     */
+    public static class EndpointMetrics {
+        private final LatencyHistogram callLatency = new LatencyHistogram();
+        private final LatencyHistogram connectTime = new LatencyHistogram();
+        private final LatencyHistogram serverTime = new LatencyHistogram();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final ConcurrentMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+
+        /**
+         * @return Latency of calls, including retries, cache hits and shared requests.
+         */
+        public LatencyHistogram getCallLatency() {
+            return callLatency;
+        }
+
+        /**
+         * @return Time to obtain a connection, per request sent.
+         */
+        public LatencyHistogram getConnectTime() {
+            return connectTime;
+        }
+
+        /**
+         * @return Time from sending a request until its response status arrived, per request sent.
+         */
+        public LatencyHistogram getServerTime() {
+            return serverTime;
+        }
+
+        /**
+         * @return Total size of the request bodies sent.
+         */
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        /**
+         * @return Total size of the response bodies read.
+         */
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * @return The number of attempts that were retried.
+         */
+        public long getRetryCount() {
+            return retries.get();
+        }
+
+        /**
+         * @return The number of requests that failed without a response.
+         */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * @param statusCode An HTTP status.
+         * @return The number of responses received with <code>statusCode</code>.
+         */
+        public long getStatusCount(int statusCode) {
+            AtomicLong counter = statusCounts.get(statusCode);
+            return counter == null ? 0 : counter.get();
+        }
+
+        /**
+         * @return The HTTP statuses received so far.
+         */
+        public Set<Integer> getStatusCodes() {
+            return Collections.unmodifiableSet(new TreeSet<>(statusCounts.keySet()));
+        }
+
+        private void countStatus(int statusCode) {
+            AtomicLong counter = statusCounts.get(statusCode);
+            if (counter == null) {
+                AtomicLong created = new AtomicLong();
+                counter = statusCounts.putIfAbsent(statusCode, created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Usage of the connection pool for one host.
+     */
+    public static class PoolMetrics {
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger peakInUse = new AtomicInteger();
+        private final AtomicInteger capacity = new AtomicInteger();
+
+        /**
+         * @return The number of connections in use when a connection was last taken.
+         */
+        public int getInUse() {
+            return inUse.get();
+        }
+
+        /**
+         * @return The highest number of connections in use at once.
+         */
+        public int getPeakInUse() {
+            return peakInUse.get();
+        }
+
+        /**
+         * @return The maximum number of connections to the host.
+         */
+        public int getCapacity() {
+            return capacity.get();
+        }
+
+        /**
+         * @return The fraction of the pool in use at its peak, between 0 and 1.
+         */
+        public double getPeakUtilisation() {
+            int max = capacity.get();
+            return max == 0 ? 0 : peakInUse.get() / (double) max;
+        }
+    }
+
+    @Override
+    public void call(String endpoint, String method, int statusCode, long latencyNanos, int attempts) {
+        endpoint(endpoint).callLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void exchange(String endpoint, String method, int statusCode, long connectNanos, long serverNanos,
+            long totalNanos, long bytesSent, long bytesReceived) {
+        EndpointMetrics metrics = endpoint(endpoint);
+        metrics.connectTime.record(connectNanos);
+        metrics.bytesSent.addAndGet(bytesSent);
+        metrics.bytesReceived.addAndGet(bytesReceived);
+        if (statusCode < 0) {
+            metrics.failures.incrementAndGet();
+        } else {
+            metrics.serverTime.record(serverNanos);
+            metrics.countStatus(statusCode);
+        }
+    }
+
+    @Override
+    public void retry(String endpoint, int attempt, int statusCode) {
+        endpoint(endpoint).retries.incrementAndGet();
+    }
+
+    @Override
+    public void connectionPool(String host, int inUse, int capacity) {
+        PoolMetrics pool = pools.get(host);
+        if (pool == null) {
+            PoolMetrics created = new PoolMetrics();
+            pool = pools.putIfAbsent(host, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        pool.capacity.set(capacity);
+        pool.inUse.set(inUse);
+        int peak;
+        while (inUse > (peak = pool.peakInUse.get()) && !pool.peakInUse.compareAndSet(peak, inUse)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return The measurements of every endpoint called so far, by endpoint.
+     */
+    public Map<String, EndpointMetrics> getEndpoints() {
+        return Collections.unmodifiableMap(endpoints);
+    }
+
+    /**
+     * @param endpoint The endpoint, for example <code>cues/</code>.
+     * @return The measurements of <code>endpoint</code>, empty if it has not been called.
+     */
+    public EndpointMetrics getEndpoint(String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        return metrics == null ? new EndpointMetrics() : metrics;
+    }
+
+    /**
+     * @return Connection pool usage of every host, by host.
+     */
+    public Map<String, PoolMetrics> getPools() {
+        return Collections.unmodifiableMap(pools);
+    }
+
+    private EndpointMetrics endpoint(String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics();
+            metrics = endpoints.putIfAbsent(endpoint, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,336 @@
+package com.cuecloud;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON reader. Values are read straight from the response stream
+ * as the caller walks the document, without first buffering the body into a <code>String</code>.
+ * <p>
+ * Objects become {@link LinkedHashMap}s, arrays {@link ArrayList}s, integral numbers
+ * {@link Long}s and other numbers {@link Double}s.
+ *
+ * @author nmvictor
+ */
+final class JsonReader implements Closeable {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+
+    /**
+     * The kind of the next value in the document.
+     */
+    enum Kind {
+        OBJECT, ARRAY, STRING, NUMBER, BOOLEAN, NULL, END
+    }
+
+    JsonReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    JsonReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * The separating comma before a member is consumed by {@link #hasNext()}, {@link #nextName()} or {@link #peek()},
+     * so callers can walk a document without tracking separators themselves.
+     * @return The kind of the next value, without consuming it.
+     */
+    Kind peek() throws IOException {
+        int c = skipSeparator();
+        switch (c) {
+            case '{':
+                return Kind.OBJECT;
+            case '[':
+                return Kind.ARRAY;
+            case '"':
+                return Kind.STRING;
+            case 't':
+            case 'f':
+                return Kind.BOOLEAN;
+            case 'n':
+                return Kind.NULL;
+            case -1:
+                return Kind.END;
+            default:
+                return Kind.NUMBER;
+        }
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * @return <code>true</code> if the current object or array has another member.
+     */
+    boolean hasNext() throws IOException {
+        int c = skipSeparator();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * @return The name of the next member of the current object. Consumes the following colon.
+     */
+    String nextName() throws IOException {
+        skipSeparator();
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() throws IOException {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            code = (code << 4) | hexValue(read());
+                        }
+                        value.append((char) code);
+                        break;
+                    default:
+                        value.append((char) c);
+                }
+            } else {
+                value.append((char) c);
+            }
+        }
+    }
+
+    Number nextNumber() throws IOException {
+        peekChar();
+        StringBuilder value = new StringBuilder();
+        boolean integral = true;
+        while (true) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                value.append(c);
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                value.append(c);
+                integral = false;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        if (value.length() == 0) {
+            throw syntaxError("Expected a value");
+        }
+        try {
+            return integral ? (Number) Long.valueOf(value.toString()) : (Number) Double.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number " + value);
+        }
+    }
+
+    boolean nextBoolean() throws IOException {
+        if (peekChar() == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    void nextNull() throws IOException {
+        expectLiteral("null");
+    }
+
+    /**
+     * Reads the next value, whatever its kind.
+     * @return A map, list, string, number, boolean or <code>null</code>.
+     */
+    Object nextValue() throws IOException {
+        switch (peek()) {
+            case OBJECT:
+                return nextObject();
+            case ARRAY:
+                List<Object> list = new ArrayList<>();
+                beginArray();
+                while (hasNext()) {
+                    list.add(nextValue());
+                }
+                endArray();
+                return list;
+            case STRING:
+                return nextString();
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return null;
+            case END:
+                throw syntaxError("Unexpected end of document");
+            default:
+                return nextNumber();
+        }
+    }
+
+    /**
+     * @return The next value, which must be an object, as a map of its members.
+     */
+    Map<String, Object> nextObject() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            map.put(name, nextValue());
+        }
+        endObject();
+        return map;
+    }
+
+    /**
+     * Skips the next value, including any nested members.
+     */
+    void skipValue() throws IOException {
+        switch (peek()) {
+            case OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            default:
+                nextValue();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peekChar() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+        }
+    }
+
+    /**
+     * Consumes the comma between two members, if the reader is positioned on one.
+     * @return The next non-whitespace character without consuming it, or <code>-1</code> at the end of the document.
+     */
+    private int skipSeparator() throws IOException {
+        int c = peekChar();
+        if (c == ',') {
+            pos++;
+            c = peekChar();
+        }
+        return c;
+    }
+
+    /**
+     * @return The next non-whitespace character without consuming it, or <code>-1</code> at the end of the document.
+     */
+    private int peekChar() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            pos++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of document");
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        pos = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private int hexValue(int c) throws IOException {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw syntaxError("Malformed unicode escape");
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON response: " + message);
+    }
+}
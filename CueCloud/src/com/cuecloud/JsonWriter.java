@@ -0,0 +1,331 @@
+package com.cuecloud;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON encoder for request payloads. A map is written as UTF-8 straight into a byte buffer
+ * that is reused from one request to the next, so the body exists once: the same bytes are signed
+ * and written to the connection, without an intermediate <code>String</code>.
+ * <p>
+ * Output matches what <code>flexjson.JSONSerializer</code> produces for the same map, so requests are
+ * unchanged on the wire. Only maps of strings, numbers, booleans, enums, characters, <code>null</code>
+ * and nested such maps are supported; check with {@link #isSupported(Object)} first.
+ * <p>
+ * Lists are written as arrays, so documents read with {@link JsonReader} can be written back, but
+ * {@link #isSupported(Object)} refuses them: flexjson leaves them out of request bodies.
+ * <p>
+ * Objects can also be written member by member, and members that repeat from one payload to the next
+ * can be encoded once, kept with {@link #toByteArray()} and appended with {@link #writeRaw(byte[])}.
+ * Member names can likewise be encoded once with {@link #encodeName(String)}.
+ *
+ * @author nmvictor
+ */
+final class JsonWriter {
+    /**
+     * Buffers grown beyond this size by a large payload are not kept for the next request.
+     */
+    private static final int MAX_RETAINED_BYTES = 64 * 1024;
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private byte[] buffer;
+    private int length;
+    private boolean first = true;
+
+    JsonWriter() {
+        this(512);
+    }
+
+    JsonWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * @param value A request payload.
+     * @return <code>true</code> if <code>value</code> is a map this writer can encode.
+     */
+    static boolean isSupported(Object value) {
+        if (!(value instanceof Map)) {
+            return false;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            Object v = entry.getValue();
+            if (!(entry.getKey() instanceof String) || !(isScalar(v) || isSupported(v))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isScalar(Object value) {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Enum || value instanceof Character;
+    }
+
+    /**
+     * Discard the previous payload so the buffer can be reused.
+     */
+    void reset() {
+        length = 0;
+        first = true;
+        if (buffer.length > MAX_RETAINED_BYTES) {
+            buffer = new byte[512];
+        }
+    }
+
+    /**
+     * @return The buffer holding the encoded payload in its first {@link #length()} bytes.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The length of the encoded payload.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return A copy of the encoded payload.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Append <code>map</code> as a JSON object.
+     * @param map A map accepted by {@link #isSupported(Object)}.
+     */
+    void writeObject(Map<?, ?> map) {
+        beginObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeMember((String) entry.getKey(), entry.getValue());
+        }
+        endObject();
+    }
+
+    /**
+     * Start a JSON object, to be filled with {@link #writeMember(String, Object)}.
+     */
+    void beginObject() {
+        append('{');
+        first = true;
+    }
+
+    /**
+     * Close the object started by {@link #beginObject()}.
+     */
+    void endObject() {
+        append('}');
+        first = false;
+    }
+
+    /**
+     * Append one member of the current object, preceded by a comma unless it is the first.
+     * @param name The name of the member.
+     * @param value A value accepted by {@link #isSupported(Object)} as a map value.
+     */
+    void writeMember(String name, Object value) {
+        if (!first) {
+            append(',');
+        }
+        first = false;
+        writeString(name);
+        append(':');
+        writeValue(value);
+    }
+
+    /**
+     * Append one member of the current object, unless its value is <code>null</code>: a request
+     * parameter that is absent is left out rather than sent as <code>null</code>.
+     * @param name The name of the member.
+     * @param value A value accepted by {@link #isSupported(Object)} as a map value, or <code>null</code>.
+     */
+    void writeOptionalMember(String name, Object value) {
+        if (value != null) {
+            writeMember(name, value);
+        }
+    }
+
+    /**
+     * Append one member of the current object, with a name encoded earlier by {@link #encodeName(String)}.
+     * @param encodedName The encoded name of the member, with its colon.
+     * @param value A value accepted by {@link #isSupported(Object)} as a map value.
+     */
+    void writeMember(byte[] encodedName, Object value) {
+        if (!first) {
+            append(',');
+        }
+        first = false;
+        append(encodedName);
+        writeValue(value);
+    }
+
+    /**
+     * @param name The name of a member.
+     * @return The name encoded as {@link #writeMember(String, Object)} writes it, followed by its colon.
+     */
+    static byte[] encodeName(String name) {
+        JsonWriter writer = new JsonWriter(name.length() + 8);
+        writer.writeString(name);
+        writer.append(':');
+        return writer.toByteArray();
+    }
+
+    /**
+     * Append members encoded earlier by {@link #writeMember(String, Object)} and kept with {@link #toByteArray()}.
+     * @param members The encoded members, separated by commas.
+     */
+    void writeRaw(byte[] members) {
+        if (members.length == 0) {
+            return;
+        }
+        if (!first) {
+            append(',');
+        }
+        first = false;
+        append(members);
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            append(NULL);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Enum) {
+            writeString(((Enum<?>) value).name());
+        } else if (value instanceof Character) {
+            writeString(value.toString());
+        } else if (value instanceof Map) {
+            writeObject((Map<?, ?>) value);
+        } else if (value instanceof List) {
+            append('[');
+            boolean firstItem = true;
+            for (Object item : (List<?>) value) {
+                if (!firstItem) {
+                    append(',');
+                }
+                firstItem = false;
+                writeValue(item);
+            }
+            append(']');
+        } else {
+            // Numbers and booleans; toString matches flexjson, including 1.0E21 and NaN.
+            writeAscii(value.toString());
+        }
+    }
+
+    private void writeString(String s) {
+        append('"');
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    append('\\');
+                    append('"');
+                    break;
+                case '\\':
+                    append('\\');
+                    append('\\');
+                    break;
+                case '\b':
+                    append('\\');
+                    append('b');
+                    break;
+                case '\f':
+                    append('\\');
+                    append('f');
+                    break;
+                case '\n':
+                    append('\\');
+                    append('n');
+                    break;
+                case '\r':
+                    append('\\');
+                    append('r');
+                    break;
+                case '\t':
+                    append('\\');
+                    append('t');
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x7f && c <= 0x9f)) {
+                        ensure(6);
+                        buffer[length++] = '\\';
+                        buffer[length++] = 'u';
+                        buffer[length++] = HEX_DIGITS[(c >> 12) & 0xf];
+                        buffer[length++] = HEX_DIGITS[(c >> 8) & 0xf];
+                        buffer[length++] = HEX_DIGITS[(c >> 4) & 0xf];
+                        buffer[length++] = HEX_DIGITS[c & 0xf];
+                    } else if (c < 0x80) {
+                        append(c);
+                    } else {
+                        i = writeUtf8(s, i, c);
+                    }
+            }
+        }
+        append('"');
+    }
+
+    /**
+     * Encodes the non-ASCII character at <code>i</code>, and its low surrogate if it has one.
+     * @return The index of the last character consumed.
+     */
+    private int writeUtf8(String s, int i, char c) {
+        ensure(4);
+        if (c < 0x800) {
+            buffer[length++] = (byte) (0xc0 | (c >> 6));
+            buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            return i;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            buffer[length++] = (byte) (0xf0 | (cp >> 18));
+            buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+            buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            buffer[length++] = (byte) (0x80 | (cp & 0x3f));
+            return i + 1;
+        }
+        if (Character.isSurrogate(c)) {
+            // Unpaired surrogate: encoded as '?', as String.getBytes(UTF_8) does.
+            buffer[length++] = '?';
+            return i;
+        }
+        buffer[length++] = (byte) (0xe0 | (c >> 12));
+        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+        return i;
+    }
+
+    private void writeAscii(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void append(char c) {
+        ensure(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void append(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
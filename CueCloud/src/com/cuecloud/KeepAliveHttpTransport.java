@@ -0,0 +1,413 @@
+package com.cuecloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Default {@link CueCloudTransport}, built on {@link HttpURLConnection}.
+ * <p>
+ * The JDK keeps a socket alive and hands it to the next request for the same host
+ * only when the previous response (or error) stream was read to the end and closed.
+ * This transport always drains and closes the stream it hands out, so consecutive
+ * calls reuse the same TCP/TLS connection instead of handshaking again.
+ * <p>
+ * The number of requests in flight against a single host is bounded, which also bounds
+ * the number of sockets the JDK has to keep around for that host. Callers above the
+ * bound wait for a connection to be released. Idle sockets are evicted by the JDK
+ * keep-alive cache once they exceed the server's <code>Keep-Alive</code> timeout
+ * (5 seconds if the server does not send one).
+ * <p>
+ * Responses are requested compressed with <code>Accept-Encoding: gzip, deflate</code>. A compressed
+ * response is inflated as the handler reads it, so the JSON parser reads straight from the socket
+ * without the body being held uncompressed first. Request bodies are sent compressed with gzip
+ * only if {@link #setRequestCompressionMinBytes(int)} is set, as the server must accept
+ * <code>Content-Encoding: gzip</code> on requests. The byte counters, such as {@link #getBytesReceived()}
+ * and {@link #getDecodedBytesReceived()}, show what compression saves.
+ *
+ * @author nmvictor
+ */
+public class KeepAliveHttpTransport implements CueCloudTransport {
+    /**
+     * Default number of concurrent connections per host. Matches the number of idle sockets
+     * the JDK keeps alive per host unless <code>http.maxConnections</code> is raised.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+    /**
+     * Default connect timeout in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    /**
+     * Default read timeout in milliseconds.
+     */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Responses with more than this many unread bytes are not drained; the socket is closed instead.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    /**
+     * Size of the buffer of compressed bytes read from the socket at a time.
+     */
+    private static final int INFLATE_BUFFER_BYTES = 8192;
+
+    private final int maxConnectionsPerHost;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    private volatile boolean responseCompression = true;
+    private volatile int requestCompressionMinBytes;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong uncompressedBytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong decodedBytesReceived = new AtomicLong();
+
+    /**
+     * Construct a transport with the default pool size and timeouts.
+     */
+    public KeepAliveHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Construct a transport.
+     * @param maxConnectionsPerHost Maximum number of requests in flight against a single host. Must be positive.
+     * @param connectTimeoutMillis Connect timeout in milliseconds. <code>0</code> means no timeout.
+     * @param readTimeoutMillis Read timeout in milliseconds. <code>0</code> means no timeout.
+     */
+    public KeepAliveHttpTransport(int maxConnectionsPerHost, int connectTimeoutMillis, int readTimeoutMillis) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public <T> T execute(CueCloudRequest request, ResponseHandler<T> handler) throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+        URL url = new URL(request.getUrl());
+        String host = hostOf(url);
+        Semaphore permits = permitsFor(host);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getHost());
+        }
+        try {
+            request.getMetrics().connectionPool(host, maxConnectionsPerHost - permits.availablePermits(), maxConnectionsPerHost);
+            return send(url, request, handler);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private <T> T send(URL url, CueCloudRequest request, ResponseHandler<T> handler) throws IOException {
+        long start = System.nanoTime();
+        long connected = start;
+        long responded = start;
+        int statusCode = -1;
+        CountingInputStream in = null;
+        CountingInputStream decoded = null;
+        byte[] body = request.getBody();
+        int bodyLength = request.getBodyLength();
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        boolean reusable = false;
+        try {
+            con.setConnectTimeout(connectTimeoutMillis);
+            con.setReadTimeout(readTimeoutMillis);
+            con.setUseCaches(false);
+            con.setRequestMethod(request.getMethod());
+            for (Entry<String, String> header : request.getHeaders().entrySet()) {
+                con.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (responseCompression) {
+                con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            }
+            if (request.hasBody()) {
+                int minBytes = requestCompressionMinBytes;
+                if (minBytes > 0 && bodyLength >= minBytes) {
+                    body = gzip(body, bodyLength);
+                    bodyLength = body.length;
+                    con.setRequestProperty("Content-Encoding", "gzip");
+                }
+                con.setDoOutput(true);
+                // Sent as it is written, with a Content-Length, instead of being copied into the JDK's own buffer first.
+                con.setFixedLengthStreamingMode(bodyLength);
+            }
+            // Reuses a kept-alive socket when one is idle, so this is near zero unless a handshake is needed.
+            con.connect();
+            connected = System.nanoTime();
+            if (request.hasBody()) {
+                try (OutputStream os = con.getOutputStream()) {
+                    os.write(body, 0, bodyLength);
+                }
+                bytesSent.addAndGet(bodyLength);
+                uncompressedBytesSent.addAndGet(request.getBodyLength());
+            }
+            statusCode = con.getResponseCode();
+            responded = System.nanoTime();
+            InputStream stream = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ? con.getErrorStream() : con.getInputStream();
+            in = new CountingInputStream(stream == null ? new ByteArrayInputStream(new byte[0]) : stream);
+            decoded = new CountingInputStream(decode(con.getContentEncoding(), in));
+            try {
+                return handler.handle(statusCode, decoded);
+            } finally {
+                // Also drained when the handler rejects the response, so error replies keep the socket alive too.
+                reusable = drain(decoded) && drain(in);
+                decoded.close();
+            }
+        } finally {
+            if (in != null) {
+                bytesReceived.addAndGet(in.count);
+                decodedBytesReceived.addAndGet(decoded == null ? in.count : decoded.count);
+            }
+            if (!reusable) {
+                // Anything left half-read cannot be handed to the next request.
+                con.disconnect();
+            }
+            long end = System.nanoTime();
+            request.getMetrics().exchange(request.getEndpoint(), request.getMethod(), statusCode,
+                    connected - start, statusCode < 0 ? end - connected : responded - connected, end - start,
+                    request.hasBody() ? bodyLength : 0, in == null ? 0 : in.count);
+        }
+    }
+
+    private static byte[] gzip(byte[] body, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Wraps a response body so it is inflated as it is read, according to its <code>Content-Encoding</code>.
+     * @param encoding The <code>Content-Encoding</code> of the response, or <code>null</code>.
+     * @param in The body as received.
+     * @return The stream to read the decoded body from.
+     * @throws IOException If the start of the body cannot be read.
+     */
+    static InputStream decode(String encoding, InputStream in) throws IOException {
+        if (encoding == null) {
+            return in;
+        }
+        String coding = encoding.trim().toLowerCase(Locale.ROOT);
+        boolean gzip = "gzip".equals(coding) || "x-gzip".equals(coding);
+        if (!gzip && !"deflate".equals(coding)) {
+            return in;
+        }
+        PushbackInputStream peek = new PushbackInputStream(in, 2);
+        int first = peek.read();
+        if (first == -1) {
+            // Nothing to inflate, as in answers to HEAD or with no content.
+            return peek;
+        }
+        int second = peek.read();
+        if (second != -1) {
+            peek.unread(second);
+        }
+        peek.unread(first);
+        if (gzip) {
+            return new GZIPInputStream(peek, INFLATE_BUFFER_BYTES);
+        }
+        // "deflate" means a zlib stream, but some servers send raw deflate data instead.
+        boolean zlib = second != -1 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(peek, inflater, INFLATE_BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Counts the bytes read through it, for {@link CueCloudMetrics#exchange}.
+     */
+    static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Reads whatever the handler left unread so the socket can be returned to the keep-alive cache.
+     * @return <code>true</code> if the stream was read to the end.
+     */
+    static boolean drain(InputStream in) {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int read;
+        try {
+            while ((read = in.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String hostOf(URL url) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+    }
+
+    private Semaphore permitsFor(String key) {
+        Semaphore permits = hostPermits.get(key);
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxConnectionsPerHost, true);
+            permits = hostPermits.putIfAbsent(key, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * @param responseCompression Whether to ask for compressed responses. On by default.
+     */
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    /**
+     * @return <code>true</code> if compressed responses are asked for.
+     */
+    public boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    /**
+     * Send request bodies of at least <code>minBytes</code> compressed with gzip, such as those of
+     * {@link CueCloud#createCues(java.util.List)}. Only for servers that accept compressed requests.
+     * @param minBytes The smallest body to compress, or <code>0</code> to send every body as it is, the default.
+     */
+    public void setRequestCompressionMinBytes(int minBytes) {
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("minBytes must not be negative");
+        }
+        this.requestCompressionMinBytes = minBytes;
+    }
+
+    /**
+     * @return The smallest request body sent compressed, or <code>0</code> if none is.
+     */
+    public int getRequestCompressionMinBytes() {
+        return requestCompressionMinBytes;
+    }
+
+    /**
+     * @return Number of request body bytes sent, after compression.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return Number of request body bytes before compression; equal to {@link #getBytesSent()} if nothing was compressed.
+     */
+    public long getUncompressedBytesSent() {
+        return uncompressedBytesSent.get();
+    }
+
+    /**
+     * @return Number of response body bytes received, as sent by the server.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return Number of response body bytes after decompression; equal to {@link #getBytesReceived()} if nothing was compressed.
+     */
+    public long getDecodedBytesReceived() {
+        return decodedBytesReceived.get();
+    }
+
+    /**
+     * @return Maximum number of requests in flight against a single host.
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * @return Connect timeout in milliseconds.
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @return Read timeout in milliseconds.
+     */
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Stops this transport from accepting new requests. Requests already in flight complete normally.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
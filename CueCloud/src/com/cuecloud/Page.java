@@ -0,0 +1,72 @@
+package com.cuecloud;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a paginated CueCloud listing, such as the Cues returned by
+ * {@link CueCloud#getCues(String, Integer, Boolean, CueCloud.CueStatus, String, Integer)}.
+ *
+ * @param <T> The type of the items on the page.
+ * @author nmvictor
+ */
+public class Page<T> {
+    private final int pageNumber;
+    private final int totalResults;
+    private final List<T> items;
+    private final Map<String, Object> attributes;
+
+    /**
+     * Construct a page.
+     * @param pageNumber The number of this page, starting at 1.
+     * @param totalResults Total number of items across all pages, or <code>-1</code> if the server did not say.
+     * @param items The items on this page.
+     */
+    public Page(int pageNumber, int totalResults, List<T> items) {
+        this(pageNumber, totalResults, items, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Construct a page.
+     * @param pageNumber The number of this page, starting at 1.
+     * @param totalResults Total number of items across all pages, or <code>-1</code> if the server did not say.
+     * @param items The items on this page.
+     * @param attributes The other fields of the listing, such as <code>NumberOfCueCompletionsApproved</code>.
+     */
+    public Page(int pageNumber, int totalResults, List<T> items, Map<String, Object> attributes) {
+        this.pageNumber = pageNumber;
+        this.totalResults = totalResults;
+        this.items = Collections.unmodifiableList(items);
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * @return The number of this page, starting at 1.
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    /**
+     * @return Total number of items across all pages, or <code>-1</code> if unknown.
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+
+    /**
+     * @return The items on this page.
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The fields of the listing other than the items, for example
+     * <code>NumTotalResults</code> or <code>NumberOfCueCompletionsPendingReview</code>.
+     */
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+}
@@ -0,0 +1,176 @@
+package com.cuecloud;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over every item of a paginated CueCloud listing, fetching pages lazily:
+ * a page is only requested once the items of the previous page have been consumed,
+ * and iteration stops after the last page. Only one page is held in memory at a time.
+ * <p>
+ * With {@link #prefetchingOn(ExecutorService)}, page N+1 is fetched in the background
+ * while the caller is still working through page N. A caller that stops before the end, for example
+ * by breaking out of a for-each loop, thus costs one extra page request, which may also fill the
+ * {@link CueCloudCache cache}; to avoid it, iterate with the {@link CloseableIterator} returned by
+ * {@link #iterator()} in a try-with-resources statement, whose close cancels the outstanding fetch.
+ * <p>
+ * A failure to fetch a page surfaces from {@link Iterator#hasNext()} as a {@link PageFetchException}.
+ *
+ * @param <T> The type of the items.
+ * @author nmvictor
+ */
+public class PagedIterable<T> implements Iterable<T> {
+    private final PageSource<T> source;
+    private final ExecutorService prefetchExecutor;
+
+    /**
+     * Fetches a single page of a listing.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface PageSource<T> {
+
+        /**
+         * @param pageNumber The page to fetch, starting at 1.
+         * @return The page.
+         * @throws com.cuecloud.CueCloud.CueCloudException If the page could not be fetched.
+         */
+        Page<T> fetch(int pageNumber) throws CueCloud.CueCloudException;
+    }
+
+    /**
+     * An iterator that can be closed when it is abandoned before the end.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+
+        /**
+         * Stop iterating: cancel the page being prefetched, if any. The iterator has no items afterwards.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Thrown from the iterator when a page could not be fetched. The cause is the underlying failure,
+     * usually a {@link CueCloud.CueCloudException}.
+     */
+    public static class PageFetchException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public PageFetchException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Construct an iterable that fetches pages on the iterating thread.
+     * @param source Fetches the pages.
+     */
+    public PagedIterable(PageSource<T> source) {
+        this(source, null);
+    }
+
+    private PagedIterable(PageSource<T> source, ExecutorService prefetchExecutor) {
+        this.source = source;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * @param executor The executor to fetch the next page on while the current one is consumed.
+     * @return An iterable over the same listing that prefetches pages on <code>executor</code>.
+     */
+    public PagedIterable<T> prefetchingOn(ExecutorService executor) {
+        return new PagedIterable<>(source, executor);
+    }
+
+    @Override
+    public CloseableIterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    private class PageIterator implements CloseableIterator<T> {
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+        private int nextPage = 1;
+        private int seen;
+        private boolean lastPage;
+        private Future<Page<T>> prefetched;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (lastPage) {
+                    return false;
+                }
+                Page<T> page = take();
+                current = page.getItems().iterator();
+                seen += page.getItems().size();
+                lastPage = page.getItems().isEmpty() || (page.getTotalResults() >= 0 && seen >= page.getTotalResults());
+                if (!lastPage && prefetchExecutor != null) {
+                    prefetched = prefetchExecutor.submit(fetchTask(nextPage));
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        @Override
+        public void close() {
+            lastPage = true;
+            current = Collections.<T>emptyList().iterator();
+            if (prefetched != null) {
+                prefetched.cancel(true);
+                prefetched = null;
+            }
+        }
+
+        private Page<T> take() {
+            int pageNumber = nextPage++;
+            try {
+                if (prefetched != null) {
+                    Future<Page<T>> future = prefetched;
+                    prefetched = null;
+                    return future.get();
+                }
+                return source.fetch(pageNumber);
+            } catch (CueCloud.CueCloudException e) {
+                lastPage = true;
+                throw new PageFetchException("Could not fetch page " + pageNumber + ": " + e.getMessage(), e);
+            } catch (ExecutionException e) {
+                lastPage = true;
+                throw new PageFetchException("Could not fetch page " + pageNumber + ": " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lastPage = true;
+                throw new PageFetchException("Interrupted while fetching page " + pageNumber, e);
+            }
+        }
+
+        private Callable<Page<T>> fetchTask(final int pageNumber) {
+            return new Callable<Page<T>>() {
+                @Override
+                public Page<T> call() throws Exception {
+                    return source.fetch(pageNumber);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.cuecloud;
+
+import java.util.Map;
+
+/**
+ * A payment, as returned by {@link CueCloud#fetchPayments(CueCloud.PaymentType, Integer, String, Integer)}.
+ *
+ * @author nmvictor
+ */
+public class Payment extends CueCloudObject {
+
+    /**
+     * @param fields The JSON fields of the payment.
+     */
+    public Payment(Map<String, Object> fields) {
+        super(fields);
+    }
+
+    /**
+     * @return The ID of the payment.
+     */
+    public String getID() {
+        return getString("ID");
+    }
+
+    /**
+     * @return The type of the payment, or <code>null</code> if the server sent an unknown type.
+     */
+    public CueCloud.PaymentType getPaymentType() {
+        return getEnum("PaymentType", CueCloud.PaymentType.class);
+    }
+
+    /**
+     * @return The amount of the payment, in USD.
+     */
+    public Double getAmount() {
+        return getDouble("Amount");
+    }
+
+    /**
+     * @return The note to self given with the payment.
+     */
+    public String getNoteToSelf() {
+        return getString("NoteToSelf");
+    }
+}
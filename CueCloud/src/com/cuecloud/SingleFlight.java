@@ -0,0 +1,117 @@
+package com.cuecloud;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent identical calls: the first caller for a key makes the call, and callers
+ * arriving with the same key while it is in flight wait for it and share its outcome instead of
+ * making their own. Once the call completes the key is forgotten, so later callers call again.
+ *
+ * @param <V> The result type.
+ * @author nmvictor
+ */
+final class SingleFlight<V> {
+    private final ConcurrentMap<String, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * The call to make.
+     *
+     * @param <V> The result type.
+     */
+    interface Call<V> {
+        V call() throws CueCloud.CueCloudException;
+    }
+
+    /**
+     * The outcome of a call, as seen by one of the callers that asked for it.
+     *
+     * @param <V> The result type.
+     */
+    static final class Flight<V> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private V value;
+        private CueCloud.CueCloudException failure;
+        private Throwable error;
+        private boolean shared;
+
+        /**
+         * @return The result, or <code>null</code> if the call failed.
+         * @throws RuntimeException If the call failed unexpectedly.
+         * @throws Error If the call failed with an error.
+         */
+        V getValue() {
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            if (error != null) {
+                throw (RuntimeException) error;
+            }
+            return value;
+        }
+
+        /**
+         * @return Why the call failed, or <code>null</code> if it succeeded.
+         */
+        CueCloud.CueCloudException getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return <code>true</code> if this caller waited for another caller's call rather than making it.
+         */
+        boolean isShared() {
+            return shared;
+        }
+
+        private Flight<V> asShared() {
+            Flight<V> copy = new Flight<>();
+            copy.value = value;
+            copy.failure = failure;
+            copy.error = error;
+            copy.shared = true;
+            return copy;
+        }
+    }
+
+    /**
+     * Make <code>call</code>, or wait for the identical call already in flight.
+     * @param key Identifies the call. Callers with equal keys share one call.
+     * @param call The call to make if none is in flight.
+     * @return The outcome of the call.
+     * @throws RuntimeException If the call failed unexpectedly; waiting callers get it from {@link Flight#getValue()}.
+     * @throws Error As for <code>RuntimeException</code>.
+     * @throws InterruptedException If interrupted while waiting for another caller's call.
+     */
+    Flight<V> execute(String key, Call<V> call) throws InterruptedException {
+        Flight<V> flight = new Flight<>();
+        Flight<V> leader = flights.putIfAbsent(key, flight);
+        if (leader != null) {
+            shared.incrementAndGet();
+            leader.done.await();
+            return leader.asShared();
+        }
+        try {
+            flight.value = call.call();
+        } catch (CueCloud.CueCloudException e) {
+            flight.failure = e;
+        } catch (RuntimeException | Error e) {
+            flight.error = e;
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+        return flight;
+    }
+
+    /**
+     * @return The number of callers that shared another caller's call instead of making their own.
+     */
+    long getSharedCount() {
+        return shared.get();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudAsync}, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudAsyncTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudAsyncTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(16, 5000, 5000));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Many calls submitted from one thread all complete, never exceeding the in-flight limit.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testInFlightLimit() throws Exception {
+        System.out.println("inFlightLimit");
+        server.delay(10);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CueCloudAsync async = new CueCloudAsync(cueCloud, executor, 4);
+        final CountDownLatch done = new CountDownLatch(40);
+        final AtomicInteger completed = new AtomicInteger();
+        try {
+            for (int i = 0; i < 40; i++) {
+                async.approveCueCompletion("completion-" + i).addCallback(new CueCloudCallback<String>() {
+                    @Override
+                    public void completed(String result) {
+                        completed.incrementAndGet();
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void failed(Exception cause) {
+                        done.countDown();
+                    }
+                });
+            }
+            assertEquals(done.await(10, TimeUnit.SECONDS), true);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(40, completed.get());
+        assertEquals(40, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 4, true);
+        assertEquals(0, async.getInFlight());
+    }
+
+    /**
+     * Submitting beyond the in-flight limit queues the call instead of blocking the caller; queued calls
+     * start as running ones finish, and still complete after the client is shut down.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSubmitDoesNotBlock() throws Exception {
+        System.out.println("submitDoesNotBlock");
+        final CountDownLatch release = new CountDownLatch(1);
+        server.respondWith(new StubCueCloudServer.Responder() {
+            @Override
+            public String respond(StubCueCloudServer.Received request) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "{\"StatusCode\": 200}";
+            }
+        });
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CueCloudAsync async = new CueCloudAsync(cueCloud, executor, 2);
+        List<CueCloudFuture<String>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                futures.add(async.approveCueCompletion("completion-" + i));
+            }
+            assertEquals(2, async.getInFlight());
+            assertEquals(48, async.getQueued());
+            assertEquals(1L, release.getCount());
+            release.countDown();
+            for (CueCloudFuture<String> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(50, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 2, true);
+        assertEquals(0, async.getQueued());
+
+        server.respondWith(200, "{\"StatusCode\": 200}");
+        server.delay(20);
+        CueCloudAsync owned = new CueCloudAsync(cueCloud);
+        futures.clear();
+        for (int i = 0; i < CueCloudAsync.DEFAULT_MAX_IN_FLIGHT + 8; i++) {
+            futures.add(owned.getBalance());
+        }
+        owned.shutdown();
+        for (CueCloudFuture<String> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        try {
+            owned.getBalance().get();
+            fail("Expected the call to be rejected after shutdown");
+        } catch (ExecutionException e) {
+            assertEquals(e.getCause() instanceof RejectedExecutionException, true);
+        }
+    }
+
+    /**
+     * Failures are reported through the future and through callbacks added after completion.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFailureIsReported() throws Exception {
+        System.out.println("failureIsReported");
+        server.respondWith(503, "{\"StatusCode\": 503}");
+        CueCloudAsync async = new CueCloudAsync(cueCloud);
+        CueCloudFuture<String> future = async.getBalance();
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException expected) {
+            assertEquals(expected.getCause() instanceof CueCloud.CueCloudException, true);
+        }
+        final List<Exception> failures = new ArrayList<>();
+        future.addCallback(new CueCloudCallback<String>() {
+            @Override
+            public void completed(String result) {
+            }
+
+            @Override
+            public void failed(Exception cause) {
+                failures.add(cause);
+            }
+        });
+        assertEquals(1, failures.size());
+        async.shutdown();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloud#approveAll} and {@link CueCloud#declineAll}, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudBatchTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudBatchTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Every completion is approved, failures are reported per ID and concurrency stays within the limit.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testApproveAll() throws Exception {
+        System.out.println("approveAll");
+        server.delay(5);
+        server.failRequestsContaining("bad-");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add((i % 10 == 0 ? "bad-" : "good-") + i);
+        }
+        CueCloudBatchResult<String> result = cueCloud.approveAll(ids, 3);
+        assertEquals(50, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 3, true);
+        assertEquals(45, result.getSuccessCount());
+        assertEquals(5, result.getFailureCount());
+        assertEquals("bad-10", result.getFailed().get(1).getKey());
+        assertEquals(5, result.getFailed().size());
+        assertEquals(ids.get(1), result.getItems().get(1).getKey());
+        assertEquals(result.isAllSucceeded(), false);
+    }
+
+    /**
+     * An ID given more than once gets an outcome for each call, so the counts add up to the input.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDuplicateIDs() throws Exception {
+        System.out.println("duplicateIDs");
+        server.failRequestsContaining("bad-");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add("bad-1");
+            ids.add("good-1");
+        }
+        CueCloudBatchResult<String> result = cueCloud.approveAll(ids, 2);
+        assertEquals(6, result.getItems().size());
+        assertEquals(3, result.getSuccessCount());
+        assertEquals(3, result.getFailed().size());
+        assertEquals(result.getSuccessCount() + result.getFailed().size(), ids.size());
+    }
+
+    /**
+     * Declines are sent to the decline endpoint.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDeclineAll() throws Exception {
+        System.out.println("declineAll");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add("completion-" + i);
+        }
+        CueCloudBatchResult<String> result = cueCloud.declineAll(ids);
+        assertEquals(result.isAllSucceeded(), true);
+        assertEquals("/api/v1.0/completions/decline/", server.lastReceived().uri);
+    }
+}
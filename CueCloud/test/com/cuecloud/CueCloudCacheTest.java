@@ -0,0 +1,179 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudCache}, applied by {@link CueCloud} against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudCacheTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private CueCloudCache cache;
+
+    public CueCloudCacheTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+        cache = new CueCloudCache();
+        cueCloud.setCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Repeated reads are answered from the cache, whichever way the response is decoded.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRepeatedReadIsCached() throws Exception {
+        System.out.println("repeatedReadIsCached");
+        server.respondWith(200, "{\"Data\": {\"Balance\": 12.5}}");
+        String first = cueCloud.getBalance();
+        assertEquals(first, cueCloud.getBalance());
+        assertEquals(12.5, cueCloud.fetchBalance().getBalance(), 0.0);
+        assertEquals(1, server.received().size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Different query strings are cached separately.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testQueryIsPartOfKey() throws Exception {
+        System.out.println("queryIsPartOfKey");
+        cueCloud.getCues(null, null, null, CueCloud.CueStatus.Active, null, 1);
+        cueCloud.getCues(null, null, null, CueCloud.CueStatus.Active, null, 2);
+        cueCloud.getCues(null, null, null, CueCloud.CueStatus.Active, null, 1);
+        assertEquals(2, server.received().size());
+    }
+
+    /**
+     * Responses are dropped once their time to live has passed.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testEntriesExpire() throws Exception {
+        System.out.println("entriesExpire");
+        cache.setTimeToLive("balance/", 20);
+        assertEquals(20, cache.getTimeToLive("balance/"));
+        assertEquals(600000, cache.getTimeToLive("cues/keywords/"));
+        cueCloud.getBalance();
+        Thread.sleep(40);
+        cueCloud.getBalance();
+        assertEquals(2, server.received().size());
+    }
+
+    /**
+     * Endpoints without a time to live, and state-changing calls, are never cached.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testUncachedCalls() throws Exception {
+        System.out.println("uncachedCalls");
+        cache.setTimeToLive("validate/", 0);
+        cueCloud.validateUser();
+        cueCloud.validateUser();
+        cueCloud.assignCue("cue-1");
+        cueCloud.assignCue("cue-1");
+        assertEquals(4, server.received().size());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * A payment drops the cached balance; creating a Cue drops cached Cue listings.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMutationInvalidates() throws Exception {
+        System.out.println("mutationInvalidates");
+        cueCloud.getBalance();
+        cueCloud.getKeywords();
+        cueCloud.withdrawFunds(5);
+        cueCloud.getBalance();
+        assertEquals(4, server.received().size());
+        cueCloud.cancelCue("cue-1");
+        cueCloud.getKeywords();
+        assertEquals(6, server.received().size());
+    }
+
+    /**
+     * A state-changing call that fails without a client error may still have been applied, so it
+     * drops the cached balance too; one refused with a 4xx leaves the cache alone.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFailedMutationInvalidates() throws Exception {
+        System.out.println("failedMutationInvalidates");
+        cueCloud.getBalance();
+        server.failNext(1, 400);
+        try {
+            cueCloud.withdrawFunds(5);
+            fail("Expected a 400");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        cueCloud.getBalance();
+        assertEquals(2, server.received().size());
+        server.failNext(1, 503);
+        try {
+            cueCloud.withdrawFunds(5);
+            fail("Expected a 503");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        cueCloud.getBalance();
+        assertEquals(4, server.received().size());
+        cueCloud.getBalance();
+        CueCloud impatient = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 100));
+        impatient.setCache(cache);
+        server.delay(300);
+        try {
+            impatient.withdrawFunds(5);
+            fail("Expected a read timeout");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(-1, e.getStatusCode());
+        }
+        server.delay(0);
+        cueCloud.getBalance();
+        assertEquals(6, server.received().size());
+    }
+
+    /**
+     * The least recently used response is evicted when the cache is full.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        System.out.println("leastRecentlyUsedIsEvicted");
+        cache = new CueCloudCache(2);
+        cueCloud.setCache(cache);
+        cueCloud.getBalance();
+        cueCloud.getKeywords();
+        cueCloud.getBalance();
+        cueCloud.validateUser();
+        assertEquals(1, cache.getEvictionCount());
+        cueCloud.getBalance();
+        cueCloud.getKeywords();
+        assertEquals(4, server.received().size());
+    }
+}
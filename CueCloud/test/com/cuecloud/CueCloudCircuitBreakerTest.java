@@ -0,0 +1,225 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudCircuitBreaker} applied by {@link CueCloud} against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudCircuitBreakerTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private CueCloudCircuitBreaker breaker;
+
+    public CueCloudCircuitBreakerTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(5, 5000, 5000));
+        breaker = new CueCloudCircuitBreaker(10, 4);
+        breaker.setOpenDuration(300);
+        breaker.setProbeCalls(2);
+        cueCloud.setCircuitBreaker(breaker);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Failures open the breaker of their group only; calls to it then fail without reaching the server
+     * until probes after the open period succeed.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testOpensAndRecovers() throws Exception {
+        System.out.println("opensAndRecovers");
+        server.failNext(4, 503);
+        for (int i = 0; i < 4; i++) {
+            try {
+                cueCloud.withdrawFunds(1);
+                fail("Expected a 503");
+            } catch (CueCloud.CueCloudException e) {
+                assertEquals(503, e.getStatusCode());
+            }
+        }
+        assertEquals(CueCloudCircuitBreaker.State.OPEN, breaker.getState(CueCloud.EndpointGroup.Payments));
+        try {
+            cueCloud.withdrawFunds(1);
+            fail("Expected the breaker to reject the call");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(-1, e.getStatusCode());
+        }
+        assertEquals(4, server.received().size());
+        assertEquals(1L, breaker.getRejectedCount(CueCloud.EndpointGroup.Payments));
+        // Other groups are unaffected.
+        cueCloud.getCues(null, null, null, null, null, null);
+        assertEquals(CueCloudCircuitBreaker.State.CLOSED, breaker.getState(CueCloud.EndpointGroup.Cues));
+
+        Thread.sleep(350);
+        assertEquals(CueCloudCircuitBreaker.State.HALF_OPEN, breaker.getState(CueCloud.EndpointGroup.Payments));
+        cueCloud.withdrawFunds(1);
+        assertEquals(CueCloudCircuitBreaker.State.HALF_OPEN, breaker.getState(CueCloud.EndpointGroup.Payments));
+        cueCloud.withdrawFunds(1);
+        assertEquals(CueCloudCircuitBreaker.State.CLOSED, breaker.getState(CueCloud.EndpointGroup.Payments));
+        cueCloud.withdrawFunds(1);
+        assertEquals(0, breaker.getInFlight(CueCloud.EndpointGroup.Payments));
+    }
+
+    /**
+     * A failed probe opens the breaker again for another period; slow calls open it as failures do.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFailedProbeReopens() throws Exception {
+        System.out.println("failedProbeReopens");
+        breaker.setSlowCallThreshold(50, 0.5);
+        server.delay(80);
+        for (int i = 0; i < 4; i++) {
+            cueCloud.getBalance();
+        }
+        assertEquals(CueCloudCircuitBreaker.State.OPEN, breaker.getState(CueCloud.EndpointGroup.Account));
+        server.delay(0);
+        server.failNext(1, 500);
+        Thread.sleep(350);
+        try {
+            cueCloud.getBalance();
+            fail("Expected a 500");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertEquals(CueCloudCircuitBreaker.State.OPEN, breaker.getState(CueCloud.EndpointGroup.Account));
+        try {
+            cueCloud.getBalance();
+            fail("Expected the breaker to reject the call");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(-1, e.getStatusCode());
+        }
+        assertEquals(5, server.received().size());
+    }
+
+    /**
+     * Calls held back by the client's own rate limiter are neither slow nor over the bulkhead: a throttled
+     * but healthy group stays closed.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testThrottledGroupStaysClosed() throws Exception {
+        System.out.println("throttledGroupStaysClosed");
+        CueCloudRateLimiter limiter = new CueCloudRateLimiter();
+        limiter.setRate(CueCloud.EndpointGroup.Cues, 10, 1);
+        cueCloud.setRateLimiter(limiter);
+        breaker.setSlowCallThreshold(50, 0.5);
+        breaker.setMaxConcurrentCalls(CueCloud.EndpointGroup.Cues, 1, 1000);
+        final List<Exception> failures = new ArrayList<>();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 2; j++) {
+                            cueCloud.getCues(null, null, null, null, null, null);
+                        }
+                    } catch (CueCloud.CueCloudException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        // Eight calls at ten a second: most wait far longer than the slow call threshold for their token.
+        assertEquals(0, failures.size());
+        assertEquals(8, server.received().size());
+        assertEquals(0L, breaker.getRejectedCount(CueCloud.EndpointGroup.Cues));
+        assertEquals(CueCloudCircuitBreaker.State.CLOSED, breaker.getState(CueCloud.EndpointGroup.Cues));
+    }
+
+    /**
+     * Hanging payment calls fill their own bulkhead only: further payment calls are refused at once,
+     * while calls to other groups still get connections.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBulkheadIsolatesGroups() throws Exception {
+        System.out.println("bulkheadIsolatesGroups");
+        final CountDownLatch release = new CountDownLatch(1);
+        server.respondWith(new StubCueCloudServer.Responder() {
+            @Override
+            public String respond(StubCueCloudServer.Received request) {
+                if (request.uri.contains("payments/")) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return "{\"StatusCode\": 200}";
+            }
+        });
+        breaker.setMaxConcurrentCalls(CueCloud.EndpointGroup.Payments, 3, 0);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cueCloud.withdrawFunds(1);
+                    } catch (CueCloud.CueCloudException e) {
+                        // Reported through the assertions below.
+                    }
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (breaker.getInFlight(CueCloud.EndpointGroup.Payments) < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, breaker.getInFlight(CueCloud.EndpointGroup.Payments));
+        try {
+            cueCloud.withdrawFunds(1);
+            fail("Expected the bulkhead to reject the call");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(-1, e.getStatusCode());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            cueCloud.getCues(null, null, null, null, null, null);
+            cueCloud.getBalance();
+        }
+        assertEquals(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, true);
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals(0, breaker.getInFlight(CueCloud.EndpointGroup.Payments));
+        assertEquals(1L, breaker.getRejectedCount(CueCloud.EndpointGroup.Payments));
+        assertEquals(CueCloudCircuitBreaker.State.CLOSED, breaker.getState(CueCloud.EndpointGroup.Payments));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudEndpoint} and the calls {@link CueCloud} makes through it.
+ *
+ * @author nmvictor
+ */
+public class CueCloudEndpointTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudEndpointTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Absent filters are left out of the query string rather than sent as <code>null</code>.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testQuerySkipsAbsentParameters() throws Exception {
+        System.out.println("querySkipsAbsentParameters");
+        cueCloud.getPayments(null, null, null, null);
+        cueCloud.getPayments(CueCloud.PaymentType.Bonuses, 12, "a&b c", 2);
+        cueCloud.getCues("", null, true, null, null, null);
+        assertEquals("/api/v1.0/payments/", server.received().get(0).uri);
+        assertEquals("/api/v1.0/payments/?PaymentType=Bonuses&PaymentID=12&Page=2&NoteToSelf=a%26b+c", server.received().get(1).uri);
+        assertEquals("/api/v1.0/cues/?CueID&HasPendingCueCompletions=true", server.received().get(2).uri);
+    }
+
+    /**
+     * Absent members are left out of the body, which matches the map kept for the same call.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBodySkipsAbsentParameters() throws Exception {
+        System.out.println("bodySkipsAbsentParameters");
+        cueCloud.grantBonus("c-1", 2.5, null, null);
+        cueCloud.submitCueCompletion("a-1", "caf\u00e9", null, null, null, false);
+        StubCueCloudServer.Received bonus = server.received().get(0);
+        assertEquals("POST", bonus.method);
+        assertEquals("/api/v1.0/payments/bonus/", bonus.uri);
+        assertEquals("{\"Amount\":2.5,\"CueCompletionID\":\"c-1\",\"Reason\":\"Thanks for your hard work!\"}", bonus.body);
+        StubCueCloudServer.Received submission = server.received().get(1);
+        assertEquals("{\"AssignmentID\":\"a-1\",\"AnswerText\":\"caf\u00e9\",\"IsAnonymous\":false}", submission.body);
+
+        JsonWriter writer = new JsonWriter();
+        writer.writeObject(CueCloud.bonusBody("c-1", 2.5, null, null));
+        assertEquals(bonus.body, new String(writer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A value must be given for every parameter, even an absent one.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongArity() {
+        System.out.println("wrongArity");
+        CueCloudEndpoint.PAYMENTS.withQuery("http://localhost/payments/", 1, 2);
+    }
+
+    /**
+     * The public query helper also leaves out parameters without a value.
+     */
+    @Test
+    public void testUrlWithQueryParams() {
+        System.out.println("urlWithQueryParams");
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("PaymentID", null);
+        params.put("Page", 3);
+        params.put("NoteToSelf", null);
+        assertEquals("http://localhost/payments/?Page=3", CueCloud.urlWithQueryParams("http://localhost/payments/", params));
+    }
+}
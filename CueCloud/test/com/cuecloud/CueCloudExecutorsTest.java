@@ -0,0 +1,128 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudExecutors} and virtual thread mode, run against {@link StubCueCloudServer}.
+ * Tests that need virtual threads are skipped on JVMs without them.
+ *
+ * @author nmvictor
+ */
+public class CueCloudExecutorsTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudExecutorsTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Without virtual threads, virtual thread mode is refused and platform threads are used.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPlatformThreads() throws Exception {
+        System.out.println("platformThreads");
+        assertEquals(CueCloudExecutors.isVirtual(Thread.currentThread()), false);
+        if (!CueCloudExecutors.isVirtualThreadAvailable()) {
+            try {
+                cueCloud.setVirtualThreads(true);
+                fail("Expected virtual threads to be unavailable");
+            } catch (UnsupportedOperationException e) {
+                assertEquals(cueCloud.isVirtualThreads(), false);
+            }
+        }
+        ExecutorService executor = CueCloudExecutors.newDaemonThreadPool("test-", 2);
+        try {
+            Thread thread = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            assertEquals(thread.isDaemon(), true);
+            assertEquals(thread.getName(), "test-1");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Many concurrent calls on virtual threads are signed correctly and share the transport's connections.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testVirtualThreads() throws Exception {
+        System.out.println("virtualThreads");
+        assumeTrue(CueCloudExecutors.isVirtualThreadAvailable());
+        server.delay(5);
+        ExecutorService executor = CueCloudExecutors.newVirtualThreadPerTaskExecutor();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        cueCloud.withdrawFunds(1);
+                        return CueCloudExecutors.isVirtual(Thread.currentThread());
+                    }
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertEquals(future.get(), true);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(200, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 8, true);
+        CueCloudSigner signer = new CueCloudSigner("pass");
+        for (StubCueCloudServer.Received request : server.received()) {
+            assertEquals(signer.sign(request.accessNonce, server.baseURL() + "payments/withdraw/", request.body.getBytes("UTF-8")), request.accessSignature);
+        }
+    }
+
+    /**
+     * In virtual thread mode, batches run on virtual threads.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testVirtualThreadBatch() throws Exception {
+        System.out.println("virtualThreadBatch");
+        assumeTrue(CueCloudExecutors.isVirtualThreadAvailable());
+        cueCloud.setVirtualThreads(true);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add("completion-" + i);
+        }
+        CueCloudBatchResult<String> result = cueCloud.approveAll(ids, 4);
+        assertEquals(result.isAllSucceeded(), true);
+        assertEquals(server.maxConcurrentRequests() <= 4, true);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link CueCloud} logs through <code>java.util.logging</code> only, and that
+ * concurrent callers are not serialised by logging, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudLoggingTest {
+
+    private static final Logger LOG = Logger.getLogger(CueCloud.class.getName());
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private final List<LogRecord> records = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public synchronized void publish(LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    public CueCloudLoggingTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+        LOG.addHandler(handler);
+    }
+
+    @After
+    public void tearDown() {
+        LOG.removeHandler(handler);
+        LOG.setLevel(null);
+        server.stop();
+    }
+
+    /**
+     * Nothing is written to standard output.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testNothingIsPrinted() throws Exception {
+        System.out.println("nothingIsPrinted");
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, "UTF-8"));
+        try {
+            cueCloud.getBalance();
+            cueCloud.withdrawFunds(1);
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(0, captured.size());
+        assertEquals(0, records.size());
+    }
+
+    /**
+     * Calls are logged at FINE when enabled; bodies only when sampled at FINEST.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testLevelsAndSampling() throws Exception {
+        System.out.println("levelsAndSampling");
+        server.respondWith(200, "{\"Data\": {\"Balance\": 42}}");
+        LOG.setLevel(Level.FINEST);
+        cueCloud.getBalance();
+        assertEquals(1, records.size());
+        assertEquals(Level.FINE, records.get(0).getLevel());
+        assertEquals("balance/", records.get(0).getParameters()[1]);
+        cueCloud.setBodyLogSampleRate(1);
+        cueCloud.getBalance();
+        assertEquals(3, records.size());
+        assertEquals(Level.FINEST, records.get(2).getLevel());
+        assertEquals("{\"Data\": {\"Balance\": 42}}", records.get(2).getParameters()[2]);
+        LOG.setLevel(Level.FINE);
+        cueCloud.getBalance();
+        assertEquals(4, records.size());
+    }
+
+    /**
+     * Calls from several threads reach the server together while every call is logged, instead of
+     * being serialised: the server holds each request until all of them have arrived.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConcurrentCallsAreNotSerialised() throws Exception {
+        System.out.println("concurrentCallsAreNotSerialised");
+        final int threads = 8;
+        final CountDownLatch arrived = new CountDownLatch(threads);
+        server.respondWith(new StubCueCloudServer.Responder() {
+            @Override
+            public String respond(StubCueCloudServer.Received request) {
+                arrived.countDown();
+                try {
+                    arrived.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "{\"Data\": {\"Balance\": 42}}";
+            }
+        });
+        LOG.setLevel(Level.FINEST);
+        cueCloud.setBodyLogSampleRate(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return cueCloud.getBalance();
+                    }
+                });
+            }
+            for (Future<String> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, arrived.getCount());
+        assertEquals(threads, server.maxConcurrentRequests());
+        assertEquals(threads * 2, records.size());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudMirror}, synced from {@link StubCueCloudServer} answering like the
+ * Cue and CueCompletion listings.
+ *
+ * @author nmvictor
+ */
+public class CueCloudMirrorTest {
+
+    private static final int CUES = 120;
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private File file;
+    private volatile String firstCueStatus = "Active";
+
+    public CueCloudMirrorTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(4, 5000, 5000));
+        server.respondWith(new StubCueCloudServer.Responder() {
+            @Override
+            public String respond(StubCueCloudServer.Received request) {
+                return listing(request.uri);
+            }
+        });
+        file = File.createTempFile("cuecloud-mirror", ".dat");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        file.delete();
+        new File(file.getPath() + ".compact").delete();
+    }
+
+    /**
+     * Cues <code>cue-0</code> to <code>cue-119</code> in groups of ten, each with two completions;
+     * the completion listings leave out the Cue's ID.
+     */
+    private String listing(String uri) {
+        Map<String, String> query = new HashMap<>();
+        for (String pair : URI.create(uri).getQuery() == null ? new String[0] : URI.create(uri).getQuery().split("&")) {
+            String[] parts = pair.split("=", 2);
+            query.put(parts[0], parts[1]);
+        }
+        int page = query.containsKey("Page") ? Integer.parseInt(query.get("Page")) : 1;
+        StringBuilder items = new StringBuilder();
+        if (uri.contains("/cues/")) {
+            for (int i = (page - 1) * 50; i < Math.min(CUES, page * 50); i++) {
+                String status = i == 0 ? firstCueStatus : i % 3 == 0 ? "Complete" : "Active";
+                items.append(items.length() == 0 ? "" : ",").append("{\"ID\": \"cue-").append(i).append("\", \"GroupID\": ").append(i / 10)
+                        .append(", \"Status\": \"").append(status).append("\", \"NoteToSelf\": \"batch ").append(i % 2).append("\"}");
+            }
+            return "{\"Data\": {\"NumTotalResults\": " + CUES + ", \"Cues\": [" + items + "]}}";
+        }
+        String cueID = query.get("CueID");
+        items.append("{\"ID\": \"").append(cueID).append("-a\", \"Status\": \"Pending\", \"Tags\": [1, \"x\"]},")
+                .append("{\"ID\": \"").append(cueID).append("-b\", \"Status\": \"Accepted\"}");
+        return "{\"Data\": {\"NumTotalResults\": 2, \"CueCompletions\": [" + (page == 1 ? items : "") + "]}}";
+    }
+
+    /**
+     * A sync records every Cue and completion, and queries use the indexes.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSyncAndQuery() throws Exception {
+        System.out.println("syncAndQuery");
+        try (CueCloudMirror mirror = new CueCloudMirror(cueCloud, file)) {
+            assertEquals(CUES * 3, mirror.sync());
+            assertEquals(CUES, mirror.getCueCount());
+            assertEquals(CUES * 2, mirror.getCueCompletionCount());
+            assertEquals(39, mirror.findCues(CueCloud.CueStatus.Complete, null, null).size());
+            assertEquals(10, mirror.findCues(null, 3, null).size());
+            assertEquals(5, mirror.findCues(null, 3, "batch 1").size());
+            assertEquals("cue-31", mirror.findCues(null, 3, "batch 1").get(0).getID());
+            assertEquals(3, mirror.findCues(CueCloud.CueStatus.Active, 3, "batch 1").size());
+            assertEquals(0, mirror.findCues(null, 99, null).size());
+            assertEquals(2, mirror.findCueCompletions("cue-7", null).size());
+            assertEquals("cue-7-a", mirror.findCueCompletions("cue-7", CueCloud.CueCompletionStatus.Pending).get(0).getID());
+            assertEquals(CUES, mirror.findCueCompletions(null, CueCloud.CueCompletionStatus.Accepted).size());
+            int requests = server.received().size();
+            assertEquals(0, mirror.sync());
+            assertEquals(requests * 2, server.received().size());
+        }
+    }
+
+    /**
+     * A reopened mirror holds what was synced, including changes, and survives a record cut short.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReopen() throws Exception {
+        System.out.println("reopen");
+        try (CueCloudMirror mirror = new CueCloudMirror(cueCloud, file)) {
+            mirror.sync();
+            firstCueStatus = "Canceled";
+            assertEquals(1, mirror.syncCues());
+            assertEquals(1, mirror.findCues(CueCloud.CueStatus.Canceled, null, null).size());
+        }
+        long length = file.length();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(length);
+            raw.writeInt(1000);
+            raw.write('C');
+        }
+        try (CueCloudMirror mirror = new CueCloudMirror(cueCloud, file)) {
+            assertEquals(length, mirror.getFileSize());
+            assertEquals(CUES, mirror.getCueCount());
+            assertEquals(CUES * 2, mirror.getCueCompletionCount());
+            assertEquals(CueCloud.CueStatus.Canceled, mirror.getCue("cue-0").getStatus());
+            assertEquals(3, mirror.findCues(CueCloud.CueStatus.Active, 0, "batch 0").size());
+            assertEquals(java.util.Arrays.<Object>asList(1L, "x"), mirror.getCueCompletion("cue-5-a").get("Tags"));
+            assertEquals("cue-5", mirror.getCueCompletion("cue-5-a").getCueID());
+        }
+    }
+
+    /**
+     * Compaction drops replaced records and keeps the latest ones.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompact() throws Exception {
+        System.out.println("compact");
+        try (CueCloudMirror mirror = new CueCloudMirror(cueCloud, file)) {
+            mirror.syncCues();
+            firstCueStatus = "Expired";
+            mirror.syncCues();
+            long before = mirror.getFileSize();
+            mirror.compact();
+            assertEquals(mirror.getFileSize() < before, true);
+            firstCueStatus = "Canceled";
+            assertEquals(1, mirror.syncCues());
+        }
+        try (CueCloudMirror mirror = new CueCloudMirror(cueCloud, file)) {
+            assertEquals(CUES, mirror.getCueCount());
+            assertEquals(CueCloud.CueStatus.Canceled, mirror.getCue("cue-0").getStatus());
+        }
+    }
+}
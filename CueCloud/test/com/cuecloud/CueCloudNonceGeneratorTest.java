@@ -0,0 +1,148 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudNonceGenerator}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudNonceGeneratorTest {
+
+    public CueCloudNonceGeneratorTest() {
+    }
+
+    /**
+     * Millions of nonces taken from many threads at once are all distinct and grow on every thread.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConcurrentNoncesAreUnique() throws Exception {
+        System.out.println("concurrentNoncesAreUnique");
+        final CueCloudNonceGenerator generator = new CueCloudNonceGenerator();
+        final int threads = 8;
+        final int perThread = 250000;
+        final long[][] taken = new long[threads][perThread];
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long[] mine = taken[t];
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            mine[i] = generator.next();
+                            if (i > 0 && mine[i] <= mine[i - 1]) {
+                                outOfOrder.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        outOfOrder.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, outOfOrder.get());
+        long[] all = new long[threads * perThread];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(taken[t], 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        int duplicates = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                duplicates++;
+            }
+        }
+        assertEquals(0, duplicates);
+    }
+
+    /**
+     * Instances with the same API key share a generator, so their requests never share a nonce.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSharedPerKey() throws Exception {
+        System.out.println("sharedPerKey");
+        StubCueCloudServer server = new StubCueCloudServer();
+        try {
+            CueCloud first = new CueCloud("shared-key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+            CueCloud second = new CueCloud("shared-key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+            CueCloud other = new CueCloud("other-key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+            assertEquals(first.getNonceGenerator() == second.getNonceGenerator(), true);
+            assertEquals(first.getNonceGenerator() == other.getNonceGenerator(), false);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                ids.add("c-" + i);
+            }
+            first.approveAll(ids, 8);
+            second.declineAll(ids, 8);
+            Set<String> nonces = new HashSet<>();
+            for (StubCueCloudServer.Received request : server.received()) {
+                nonces.add(request.accessNonce);
+            }
+            assertEquals(200, server.received().size());
+            assertEquals(200, nonces.size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * A persisted generator starts above the ceiling kept by the one before, even one far ahead of the clock.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPersisted() throws Exception {
+        System.out.println("persisted");
+        File file = File.createTempFile("cuecloud-nonce", ".dat");
+        file.deleteOnExit();
+        try {
+            long ahead = System.currentTimeMillis() * 1000 + 3600000000L;
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.writeLong(ahead);
+            }
+            CueCloudNonceGenerator generator = new CueCloudNonceGenerator();
+            generator.persistTo(file);
+            long last = 0;
+            for (int i = 0; i < 1000; i++) {
+                last = generator.next();
+            }
+            assertEquals(last > ahead, true);
+            long ceiling;
+            try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+                ceiling = raw.readLong();
+            }
+            assertEquals(ceiling >= last, true);
+            CueCloudNonceGenerator restarted = new CueCloudNonceGenerator();
+            restarted.persistTo(file);
+            assertEquals(restarted.next() > ceiling, true);
+        } finally {
+            file.delete();
+        }
+    }
+}
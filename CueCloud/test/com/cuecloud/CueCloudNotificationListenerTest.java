@@ -0,0 +1,150 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudNotificationListener}, posting notifications to it over loopback.
+ *
+ * @author nmvictor
+ */
+public class CueCloudNotificationListenerTest {
+
+    private static final String CALLBACK_URL = "https://example.com/cuecloud/notify";
+
+    private CueCloudNotificationListener listener;
+    private final List<CueCompletion> handled = new CopyOnWriteArrayList<>();
+    /**
+     * Released by the handler as it starts on each completion, once a worker has taken it off the queue.
+     */
+    private final Semaphore started = new Semaphore(0);
+
+    public CueCloudNotificationListenerTest() {
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (listener != null) {
+            listener.stop(1);
+        }
+    }
+
+    private void start(final CountDownLatch done, final CountDownLatch release, int workers, int queue) throws Exception {
+        listener = new CueCloudNotificationListener("pass", CALLBACK_URL, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new CueCompletionHandler() {
+                    @Override
+                    public void onCueCompletion(CueCompletion completion) throws Exception {
+                        started.release();
+                        release.await(5, TimeUnit.SECONDS);
+                        handled.add(completion);
+                        done.countDown();
+                    }
+                }, workers, queue);
+        listener.start();
+    }
+
+    private int post(String body, String signedWith) throws Exception {
+        String nonce = String.valueOf(System.currentTimeMillis() * 1000);
+        HttpURLConnection con = (HttpURLConnection) new URL("http://127.0.0.1:" + listener.getAddress().getPort() + "/cuecloud/notify").openConnection();
+        con.setRequestMethod("POST");
+        con.setDoOutput(true);
+        con.setRequestProperty("Access-Nonce", nonce);
+        con.setRequestProperty("Access-Signature", CueCloud.HMAC_SHA256encode(signedWith, nonce + CALLBACK_URL + body));
+        try (OutputStream os = con.getOutputStream()) {
+            os.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = con.getResponseCode();
+        con.disconnect();
+        return status;
+    }
+
+    /**
+     * A signed notification is handed to the handler as a typed completion; a repeated one is not.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDeliveryAndDeduplication() throws Exception {
+        System.out.println("deliveryAndDeduplication");
+        CountDownLatch done = new CountDownLatch(1);
+        start(done, new CountDownLatch(0), 2, 10);
+        String body = "{\"ID\": \"c-1\", \"CueID\": \"cue-9\", \"Status\": \"Pending\", \"AnswerText\": \"A cat\"}";
+        assertEquals(200, post(body, "pass"));
+        assertEquals(200, post(body, "pass"));
+        assertEquals(done.await(5, TimeUnit.SECONDS), true);
+        assertEquals(1, listener.getReceivedCount());
+        assertEquals(1, listener.getDuplicateCount());
+        // Waits for the workers to finish, so a duplicate wrongly handed over would be handled by now.
+        listener.stop(5);
+        listener = null;
+        assertEquals(1, handled.size());
+        assertEquals("cue-9", handled.get(0).getCueID());
+        assertEquals(CueCloud.CueCompletionStatus.Pending, handled.get(0).getStatus());
+        assertEquals("A cat", handled.get(0).getAnswerText());
+    }
+
+    /**
+     * Notifications with a wrong signature or malformed content are refused.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRejected() throws Exception {
+        System.out.println("rejected");
+        start(new CountDownLatch(1), new CountDownLatch(0), 1, 10);
+        assertEquals(401, post("{\"ID\": \"c-1\"}", "wrong"));
+        assertEquals(400, post("{\"ID\": ", "pass"));
+        assertEquals(2, listener.getRejectedCount());
+        assertEquals(0, handled.size());
+    }
+
+    /**
+     * A list of completions wrapped in <code>Data</code> is delivered one by one.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompletionList() throws Exception {
+        System.out.println("completionList");
+        CountDownLatch done = new CountDownLatch(3);
+        start(done, new CountDownLatch(0), 2, 10);
+        assertEquals(200, post("{\"Data\": {\"CueCompletions\": [{\"ID\": \"a\"}, {\"ID\": \"b\"}, {\"ID\": \"c\"}]}}", "pass"));
+        assertEquals(done.await(5, TimeUnit.SECONDS), true);
+        assertEquals(3, listener.getReceivedCount());
+    }
+
+    /**
+     * When the workers' queue is full, the notification is refused so it is sent again, and then delivered.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBoundedQueue() throws Exception {
+        System.out.println("boundedQueue");
+        CountDownLatch done = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        start(done, release, 1, 1);
+        assertEquals(200, post("{\"ID\": \"1\"}", "pass"));
+        assertEquals(started.tryAcquire(5, TimeUnit.SECONDS), true);
+        assertEquals(200, post("{\"ID\": \"2\"}", "pass"));
+        assertEquals(503, post("{\"ID\": \"3\"}", "pass"));
+        release.countDown();
+        assertEquals(started.tryAcquire(5, TimeUnit.SECONDS), true);
+        assertEquals(200, post("{\"ID\": \"3\"}", "pass"));
+        assertEquals(done.await(5, TimeUnit.SECONDS), true);
+        assertEquals(0, listener.getDuplicateCount());
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudOutbox}, sending through {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudOutboxTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private File file;
+
+    public CueCloudOutboxTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+        file = File.createTempFile("cuecloud-outbox", ".dat");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        file.delete();
+    }
+
+    /**
+     * A delivered call carries an idempotency key and is not pending afterwards, nor after reopening.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDelivered() throws Exception {
+        System.out.println("delivered");
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            outbox.grantBonus("c-1", 2.5, null, "batch 7");
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(2, outbox.getRecordCount());
+            assertEquals(1, outbox.getSyncCount());
+        }
+        StubCueCloudServer.Received request = server.lastReceived();
+        assertEquals(request.uri.endsWith("payments/bonus/"), true);
+        assertEquals(request.idempotencyKey != null, true);
+        assertEquals(request.body.contains("\"CueCompletionID\":\"c-1\""), true);
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(0, outbox.replay().getItems().size());
+        }
+        assertEquals(0, file.length());
+    }
+
+    /**
+     * A call that failed stays pending across a restart, even with its last record cut short. Its
+     * outcome is unknown, so replay leaves it to be reconciled; sent again, it carries the same key and body.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        System.out.println("replayAfterRestart");
+        server.failNext(1, 503);
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            try {
+                outbox.makeDeposit(10, 1234);
+                fail("Expected the call to fail");
+            } catch (CueCloud.CueCloudException e) {
+                assertEquals(503, e.getStatusCode());
+            }
+            assertEquals(1, outbox.getPendingCount());
+            assertEquals(1, outbox.getUnknown().size());
+        }
+        StubCueCloudServer.Received first = server.lastReceived();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(raw.length());
+            raw.writeInt(500);
+            raw.write('D');
+        }
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            assertEquals(1, outbox.getPending().size());
+            assertEquals(CueCloud.DEPOSIT_PATH, outbox.getPending().get(0).getPath());
+            assertEquals(outbox.getPending().get(0).isOutcomeUnknown(), true);
+            assertEquals(0, outbox.replay().getItems().size());
+            assertEquals(1, server.received().size());
+            outbox.resend(first.idempotencyKey);
+            assertEquals(0, outbox.getPendingCount());
+        }
+        StubCueCloudServer.Received resent = server.lastReceived();
+        assertEquals(first.idempotencyKey, resent.idempotencyKey);
+        assertEquals(first.body, resent.body);
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    /**
+     * A tail left by a crash, whether zero-filled, garbage or a record of the wrong shape, is dropped
+     * from the first record that cannot be read; the calls before it are still loaded.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testUnreadableTailIsDropped() throws Exception {
+        System.out.println("unreadableTailIsDropped");
+        server.failNext(1, 503);
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            try {
+                outbox.withdrawFunds(5);
+                fail("Expected the call to fail");
+            } catch (CueCloud.CueCloudException e) {
+                assertEquals(503, e.getStatusCode());
+            }
+        }
+        long recorded = file.length();
+        byte[][] tails = {
+            new byte[64],
+            "{\"Key\": 12, \"Path\": [], \"Body\": \"x\"}".getBytes(StandardCharsets.UTF_8),
+            "{\"Key\": \"k\", tr".getBytes(StandardCharsets.UTF_8)
+        };
+        for (byte[] tail : tails) {
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.seek(raw.length());
+                if (tail.length != 64) {
+                    raw.writeInt(tail.length);
+                    raw.write('R');
+                }
+                raw.write(tail);
+            }
+            try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+                assertEquals(1, outbox.getPendingCount());
+                assertEquals(CueCloud.WITHDRAW_PATH, outbox.getPending().get(0).getPath());
+            }
+            assertEquals(recorded, file.length());
+        }
+    }
+
+    /**
+     * A call found applied when reconciling is resolved without being sent again; once the server is
+     * declared to honour idempotency keys, replay sends calls of unknown outcome again.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testResolveAndReplayWithHonouredKeys() throws Exception {
+        System.out.println("resolveAndReplayWithHonouredKeys");
+        server.failNext(2, 503);
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    outbox.withdrawFunds(5);
+                    fail("Expected the call to fail");
+                } catch (CueCloud.CueCloudException e) {
+                    assertEquals(503, e.getStatusCode());
+                }
+            }
+        }
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            String applied = outbox.getUnknown().get(0).getKey();
+            String notApplied = outbox.getUnknown().get(1).getKey();
+            assertEquals(outbox.resolve(applied), true);
+            assertEquals(outbox.resolve(applied), false);
+            cueCloud.setIdempotencyKeysHonoured(true);
+            CueCloudBatchResult<String> result = outbox.replay();
+            assertEquals(result.isAllSucceeded(), true);
+            assertEquals(notApplied, result.getSucceeded().get(0));
+            assertEquals(0, outbox.getPendingCount());
+        }
+        assertEquals(3, server.received().size());
+    }
+
+    /**
+     * A call the server refused is not replayed, and one it turned away is. A money-moving call with
+     * an idempotency key is retried only once the server is declared to honour the key.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRefusedAndRetried() throws Exception {
+        System.out.println("refusedAndRetried");
+        try (CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            server.failNext(1, 400);
+            try {
+                outbox.withdrawFunds(5);
+                fail("Expected the call to fail");
+            } catch (CueCloud.CueCloudException e) {
+                assertEquals(400, e.getStatusCode());
+            }
+            assertEquals(0, outbox.getPendingCount());
+
+            server.failNext(1, 429);
+            try {
+                outbox.withdrawFunds(5);
+                fail("Expected the call to fail");
+            } catch (CueCloud.CueCloudException e) {
+                assertEquals(429, e.getStatusCode());
+            }
+            assertEquals(1, outbox.getPendingCount());
+            assertEquals(0, outbox.getUnknown().size());
+            assertEquals(1, outbox.replay().getSuccessCount());
+            assertEquals(0, outbox.getPendingCount());
+
+            cueCloud.setRetryPolicy(new CueCloudRetryPolicy(3, 2, 10, CueCloudRetryPolicy.DEFAULT_RETRY_ON_STATUS));
+            server.failNext(1, 503);
+            int before = server.received().size();
+            try {
+                outbox.withdrawFunds(5);
+                fail("Expected the call to fail");
+            } catch (CueCloud.CueCloudException e) {
+                assertEquals(503, e.getStatusCode());
+            }
+            assertEquals(before + 1, server.received().size());
+            assertEquals(1, outbox.getUnknown().size());
+
+            cueCloud.setIdempotencyKeysHonoured(true);
+            server.failNext(1, 503);
+            before = server.received().size();
+            outbox.withdrawFunds(5);
+            assertEquals(before + 2, server.received().size());
+            assertEquals(server.received().get(before).idempotencyKey, server.lastReceived().idempotencyKey);
+            assertEquals(1, outbox.getPendingCount());
+        }
+    }
+
+    /**
+     * Calls made at once from many threads share syncs.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        System.out.println("groupCommit");
+        server.delay(5);
+        final int threads = 16;
+        final int callsPerThread = 20;
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (final CueCloudOutbox outbox = new CueCloudOutbox(cueCloud, file)) {
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int i = 0; i < callsPerThread; i++) {
+                                outbox.grantBonus("c-" + thread + "-" + i, 1.0, null, null);
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertEquals(executor.awaitTermination(30, TimeUnit.SECONDS), true);
+            assertEquals(0, failures.get());
+            assertEquals(threads * callsPerThread, server.received().size());
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(threads * callsPerThread * 2, outbox.getRecordCount());
+            assertEquals(outbox.getSyncCount() < threads * callsPerThread, true);
+        }
+    }
+}
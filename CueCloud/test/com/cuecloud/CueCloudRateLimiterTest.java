@@ -0,0 +1,153 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudRateLimiter}, alone and applied by {@link CueCloud} against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudRateLimiterTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudRateLimiterTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Calls are mapped to the group of their endpoint.
+     */
+    @Test
+    public void testEndpointGroups() {
+        System.out.println("endpointGroups");
+        String base = "https://cuecloud.com/api/v1.0/";
+        assertEquals(CueCloud.EndpointGroup.Payments, CueCloud.EndpointGroup.forUrl(base, base + "payments/withdraw/"));
+        assertEquals(CueCloud.EndpointGroup.Cues, CueCloud.EndpointGroup.forUrl(base, base + "cues/create"));
+        assertEquals(CueCloud.EndpointGroup.Completions, CueCloud.EndpointGroup.forUrl(base, base + "completions/approve/"));
+        assertEquals(CueCloud.EndpointGroup.Completions, CueCloud.EndpointGroup.forUrl(base, base + "cues/complete"));
+        assertEquals(CueCloud.EndpointGroup.Account, CueCloud.EndpointGroup.forUrl(base, base + "balance/"));
+    }
+
+    /**
+     * Once the burst is used up, calls are paced at the configured rate.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRateIsLimited() throws Exception {
+        System.out.println("rateIsLimited");
+        CueCloudRateLimiter limiter = new CueCloudRateLimiter();
+        limiter.setRate(CueCloud.EndpointGroup.Account, 20, 2);
+        cueCloud.setRateLimiter(limiter);
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            cueCloud.fetchBalance();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        // Two calls from the burst, then four at 50ms intervals.
+        assertEquals(elapsedMillis >= 180, true);
+        assertEquals(6, server.received().size());
+    }
+
+    /**
+     * Groups are limited independently.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGroupsAreIndependent() throws Exception {
+        System.out.println("groupsAreIndependent");
+        CueCloudRateLimiter limiter = new CueCloudRateLimiter();
+        limiter.setRate(CueCloud.EndpointGroup.Payments, 1, 1);
+        cueCloud.setRateLimiter(limiter);
+        long start = System.nanoTime();
+        cueCloud.withdrawFunds(1);
+        for (int i = 0; i < 5; i++) {
+            cueCloud.fetchBalance();
+        }
+        assertEquals((System.nanoTime() - start) / 1000000 < 1000, true);
+        assertEquals(0.0, limiter.getRate(CueCloud.EndpointGroup.Account), 0.0);
+    }
+
+    /**
+     * Throttled responses halve the concurrency limit; successful ones raise it again.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConcurrencyAdaptsToThrottling() throws Exception {
+        System.out.println("concurrencyAdaptsToThrottling");
+        CueCloudRateLimiter limiter = new CueCloudRateLimiter();
+        limiter.setConcurrencyLimits(CueCloud.EndpointGroup.Account, 8, 1, 16);
+        limiter.setLatencyTolerance(1000);
+        cueCloud.setRateLimiter(limiter);
+        server.respondWith(429, "{\"Error\": \"Too many requests\"}");
+        try {
+            cueCloud.fetchBalance();
+            fail("Expected the call to fail");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(e.getMessage().contains("429"), true);
+        }
+        assertEquals(4, limiter.getConcurrencyLimit(CueCloud.EndpointGroup.Account));
+        assertEquals(0, limiter.getInFlight(CueCloud.EndpointGroup.Account));
+        server.respondWith(200, "{\"Data\": {\"Balance\": 1.5}}");
+        for (int i = 0; i < 20; i++) {
+            cueCloud.fetchBalance();
+        }
+        assertEquals(limiter.getConcurrencyLimit(CueCloud.EndpointGroup.Account) >= 6, true);
+        assertEquals(CueCloudRateLimiter.DEFAULT_INITIAL_CONCURRENCY, limiter.getConcurrencyLimit(CueCloud.EndpointGroup.Cues));
+    }
+
+    /**
+     * No more calls than the concurrency limit are in flight at once.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConcurrencyIsBounded() throws Exception {
+        System.out.println("concurrencyIsBounded");
+        CueCloudRateLimiter limiter = new CueCloudRateLimiter();
+        limiter.setConcurrencyLimits(CueCloud.EndpointGroup.Account, 2, 2, 2);
+        cueCloud.setRateLimiter(limiter);
+        server.delay(20);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cueCloud.fetchBalance();
+                    } catch (CueCloud.CueCloudException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(6, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 2, true);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the typed responses of {@link CueCloud} and the {@link JsonReader} behind them.
+ *
+ * @author nmvictor
+ */
+public class CueCloudResponsesTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudResponsesTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * A page of completions is decoded into typed objects along with the listing totals.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFetchCueCompletions() throws Exception {
+        System.out.println("fetchCueCompletions");
+        server.respondWith(200, "{\n  \"Data\": {\n    \"NumTotalResults\": 2,\n    \"NumberOfCueCompletionsPendingReview\": 1,\n"
+                + "    \"CueCompletions\": [\n      {\"ID\": 41, \"CueID\": \"7\", \"Status\": \"Pending\", \"AnswerText\": \"caf\\u00e9 \\\"ok\\\"\"},\n"
+                + "      {\"ID\": 40, \"CueID\": \"7\", \"Status\": \"Accepted\", \"Extra\": {\"Nested\": [1, 2.5, true, null]}}\n    ]\n  },\n  \"StatusCode\": 200\n}");
+        Page<CueCompletion> page = cueCloud.fetchCueCompletions("7", null, null, 3);
+        assertEquals(3, page.getPageNumber());
+        assertEquals(2, page.getTotalResults());
+        assertEquals(1L, page.getAttributes().get("NumberOfCueCompletionsPendingReview"));
+        List<CueCompletion> completions = page.getItems();
+        assertEquals(2, completions.size());
+        assertEquals("41", completions.get(0).getID());
+        assertEquals(CueCloud.CueCompletionStatus.Pending, completions.get(0).getStatus());
+        assertEquals("caf\u00e9 \"ok\"", completions.get(0).getAnswerText());
+        assertEquals(CueCloud.CueCompletionStatus.Accepted, completions.get(1).getStatus());
+        assertEquals(4, ((List<?>) ((Map<?, ?>) completions.get(1).get("Extra")).get("Nested")).size());
+    }
+
+    /**
+     * The balance is decoded from the Data object.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFetchBalance() throws Exception {
+        System.out.println("fetchBalance");
+        server.respondWith(200, "{\"Data\": {\"Balance\": 125.75}, \"StatusCode\": 200}");
+        assertEquals(125.75, cueCloud.fetchBalance().getBalance(), 0.0);
+    }
+
+    /**
+     * The raw String methods return the body unchanged, including line breaks and non-ASCII text.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testStringResponseIsUnchanged() throws Exception {
+        System.out.println("stringResponseIsUnchanged");
+        String body = "{\n  \"Data\": {\"Keywords\": [\"caf\u00e9\"]},\n  \"StatusCode\": 200\n}";
+        server.respondWith(200, body);
+        assertEquals(body, cueCloud.getKeywords());
+    }
+
+    /**
+     * Values of every kind are read, and unknown members can be skipped.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testJsonReader() throws Exception {
+        System.out.println("jsonReader");
+        String json = "{\"skip\": {\"a\": [1, {\"b\": \"}\"}]}, \"n\": -12, \"d\": 1.5e2, \"s\": \"tab\\tslash\\/\", \"t\": true, \"z\": null}";
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("n", reader.nextName());
+        assertEquals(-12L, reader.nextValue());
+        assertEquals("d", reader.nextName());
+        assertEquals(150.0, reader.nextValue());
+        assertEquals("s", reader.nextName());
+        assertEquals("tab\tslash/", reader.nextValue());
+        assertEquals("t", reader.nextName());
+        assertEquals(Boolean.TRUE, reader.nextValue());
+        assertEquals("z", reader.nextName());
+        assertEquals(null, reader.nextValue());
+        assertEquals(reader.hasNext(), false);
+        reader.endObject();
+        assertEquals(JsonReader.Kind.END, reader.peek());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudRetryPolicy}, applied by {@link CueCloud} against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudRetryPolicyTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public CueCloudRetryPolicyTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+        cueCloud.setRetryPolicy(new CueCloudRetryPolicy(3, 2, 10, CueCloudRetryPolicy.DEFAULT_RETRY_ON_STATUS));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * A transient 502 is retried with a fresh nonce and signature.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTransientFailureIsRetried() throws Exception {
+        System.out.println("transientFailureIsRetried");
+        server.failNext(2, 502);
+        cueCloud.getBalance();
+        assertEquals(3, server.received().size());
+        StubCueCloudServer.Received first = server.received().get(0);
+        StubCueCloudServer.Received last = server.lastReceived();
+        assertEquals(first.accessNonce.equals(last.accessNonce), false);
+        assertEquals(first.accessSignature.equals(last.accessSignature), false);
+        CueCloudSigner signer = new CueCloudSigner("pass");
+        assertEquals(signer.sign(last.accessNonce, server.baseURL() + "balance/", null), last.accessSignature);
+    }
+
+    /**
+     * The last failure is reported, with its status, once the attempts are used up.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testAttemptsAreBounded() throws Exception {
+        System.out.println("attemptsAreBounded");
+        server.failNext(10, 503);
+        try {
+            cueCloud.getBalance();
+            fail("Expected the call to fail");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(503, e.getStatusCode());
+            assertEquals(e.getCause() != null, true);
+        }
+        assertEquals(3, server.received().size());
+    }
+
+    /**
+     * Statuses outside the retry set fail at once.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testClientErrorIsNotRetried() throws Exception {
+        System.out.println("clientErrorIsNotRetried");
+        server.failNext(1, 400);
+        try {
+            cueCloud.getBalance();
+            fail("Expected the call to fail");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+        assertEquals(1, server.received().size());
+    }
+
+    /**
+     * A deposit that may have been applied is not sent again, but a throttled one is.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDepositIsNotRepeated() throws Exception {
+        System.out.println("depositIsNotRepeated");
+        server.failNext(1, 502);
+        try {
+            cueCloud.makeDeposit(10, 1234);
+            fail("Expected the call to fail");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(502, e.getStatusCode());
+        }
+        assertEquals(1, server.received().size());
+        server.failNext(1, 429);
+        cueCloud.grantBonus("completion-1", 1.0, "Thanks", null);
+        assertEquals(3, server.received().size());
+    }
+
+    /**
+     * Approvals can be repeated safely, so they are retried.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testApprovalIsRetried() throws Exception {
+        System.out.println("approvalIsRetried");
+        server.failNext(1, 504);
+        cueCloud.approveCueCompletion("completion-1");
+        assertEquals(2, server.received().size());
+    }
+
+    /**
+     * A refused connection is retried even for calls that are not idempotent, since nothing was sent.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRefusedConnectionIsRetried() throws Exception {
+        System.out.println("refusedConnectionIsRetried");
+        String baseURL = server.baseURL();
+        server.stop();
+        CueCloud offline = new CueCloud("key", "pass", baseURL, new KeepAliveHttpTransport(2, 1000, 1000));
+        offline.setRetryPolicy(new CueCloudRetryPolicy(2, 1, 1, new HashSet<>(Arrays.asList(503))));
+        try {
+            offline.withdrawFunds(5);
+            fail("Expected the call to fail");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(-1, e.getStatusCode());
+            assertEquals(e.getCause() instanceof java.net.ConnectException, true);
+        }
+        assertEquals(offline.getRetryPolicy().shouldRetry(1, offline.new CueCloudException("refused", new java.net.ConnectException()), false), true);
+        server = new StubCueCloudServer();
+    }
+
+    /**
+     * Backoff grows exponentially, stays within its bounds and is jittered.
+     */
+    @Test
+    public void testBackoff() {
+        System.out.println("backoff");
+        CueCloudRetryPolicy policy = new CueCloudRetryPolicy(10, 100, 1000, CueCloudRetryPolicy.DEFAULT_RETRY_ON_STATUS);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffMillis(1);
+            assertEquals(first >= 50 && first <= 100, true);
+            long third = policy.backoffMillis(3);
+            assertEquals(third >= 200 && third <= 400, true);
+            long capped = policy.backoffMillis(40);
+            assertEquals(capped >= 500 && capped <= 1000, true);
+        }
+    }
+}
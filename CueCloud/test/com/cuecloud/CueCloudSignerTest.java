@@ -0,0 +1,97 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudSigner}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudSignerTest {
+
+    private static final String API_PASS = "2152b0f3cc1649fb";
+
+    public CueCloudSignerTest() {
+    }
+
+    /**
+     * Signatures match HMAC_SHA256encode over the concatenated message, with and without a body.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesHmacOfConcatenatedMessage() throws Exception {
+        System.out.println("matchesHmacOfConcatenatedMessage");
+        CueCloudSigner signer = new CueCloudSigner(API_PASS);
+        String nonce = "1400000000000000";
+        String url = "https://cuecloud.com/api/v1.0/completions/?CueID=7&Page=2";
+        String body = "{\"CueCompletionID\":\"41\",\"Reason\":\"Thanks for your hard work!\"}";
+        assertEquals(CueCloud.HMAC_SHA256encode(API_PASS, nonce + url + body), signer.sign(nonce, url, body.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(CueCloud.HMAC_SHA256encode(API_PASS, nonce + url), signer.sign(nonce, url, null));
+        // The signer keeps no state between calls.
+        assertEquals(CueCloud.HMAC_SHA256encode(API_PASS, nonce + url), signer.sign(nonce, url, new byte[0]));
+    }
+
+    /**
+     * Non-ASCII text is signed as UTF-8, and a body slice signs like the equivalent array.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testUtf8AndSlices() throws Exception {
+        System.out.println("utf8AndSlices");
+        CueCloudSigner signer = new CueCloudSigner(API_PASS);
+        String url = "http://localhost/api/v1.0/cues/?NoteToSelf=caf\u00e9";
+        byte[] body = "xx{\"Title\":\"na\u00efve\"}yy".getBytes(StandardCharsets.UTF_8);
+        byte[] slice = "{\"Title\":\"na\u00efve\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(signer.sign("1", url, slice), signer.sign("1", url, body, 2, slice.length));
+        CueCloudSigner expected = new CueCloudSigner(API_PASS);
+        assertEquals(expected.sign("1", url, slice), signer.sign("1", url, slice));
+    }
+
+    /**
+     * Concurrent callers each get the correct signature.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        System.out.println("concurrentSigning");
+        final CueCloudSigner signer = new CueCloudSigner(API_PASS);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 500; i++) {
+                            String nonce = thread + "-" + i;
+                            String url = "http://localhost/api/v1.0/balance/";
+                            if (!CueCloud.HMAC_SHA256encode(API_PASS, nonce + url).equals(signer.sign(nonce, url, null))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(result.get(), true);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCloudTransports}, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueCloudTransportsTest {
+
+    private StubCueCloudServer server;
+
+    public CueCloudTransportsTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * HTTP/1.1 is served by the keep-alive connection pool.
+     */
+    @Test
+    public void testHttp11() {
+        System.out.println("http11");
+        CueCloudTransport transport = CueCloudTransports.newTransport(CueCloudTransports.Protocol.HTTP_1_1, 3, 1000, 2000);
+        assertEquals(transport instanceof KeepAliveHttpTransport, true);
+        assertEquals(3, ((KeepAliveHttpTransport) transport).getMaxConnectionsPerHost());
+    }
+
+    /**
+     * The HTTP/2 transport sends signed requests and reads compressed and error responses, falling back
+     * to HTTP/1.1 against a server that does not speak HTTP/2.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testHttp2() throws Exception {
+        System.out.println("http2");
+        assumeTrue(CueCloudTransports.isHttp2Available());
+        CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(),
+                CueCloudTransports.newTransport(CueCloudTransports.Protocol.HTTP_2, 4, 5000, 5000));
+        server.respondWith(200, "{\"Data\": {\"Balance\": 12.5}, \"StatusCode\": 200}");
+        server.compressResponses("gzip");
+        assertEquals(cueCloud.fetchBalance().getBalance(), 12.5, 0);
+        StubCueCloudServer.Received request = server.lastReceived();
+        assertEquals("GET", request.method);
+        assertEquals("key", request.accessKey);
+        assertEquals(request.acceptEncoding.contains("gzip"), true);
+        cueCloud.withdrawFunds(5);
+        request = server.lastReceived();
+        assertEquals("POST", request.method);
+        CueCloudSigner signer = new CueCloudSigner("pass");
+        assertEquals(signer.sign(request.accessNonce, server.baseURL() + "payments/withdraw/", request.body.getBytes(StandardCharsets.UTF_8)),
+                request.accessSignature);
+        server.respondWith(503, "{\"StatusCode\": 503}");
+        try {
+            cueCloud.getKeywords();
+            fail("Expected CueCloudException");
+        } catch (CueCloud.CueCloudException expected) {
+            assertEquals(503, expected.getStatusCode());
+        }
+    }
+
+    /**
+     * A GET call with a body goes out as a POST over either protocol, as <code>HttpURLConnection</code> sends it.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetWithBodyIsSentAsPost() throws Exception {
+        System.out.println("getWithBodyIsSentAsPost");
+        for (CueCloudTransports.Protocol protocol : CueCloudTransports.Protocol.values()) {
+            if (protocol == CueCloudTransports.Protocol.HTTP_2 && !CueCloudTransports.isHttp2Available()) {
+                continue;
+            }
+            CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), CueCloudTransports.newTransport(protocol, 4, 5000, 5000));
+            cueCloud.assignCue("cue-1");
+            StubCueCloudServer.Received request = server.lastReceived();
+            assertEquals(protocol.toString(), "POST", request.method);
+            assertEquals(protocol.toString(), "{\"CueID\":\"cue-1\"}", request.body);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueCompletionPoller}, run against {@link StubCueCloudServer} answering like the
+ * Cue and CueCompletion listings.
+ *
+ * @author nmvictor
+ */
+public class CueCompletionPollerTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private final Map<String, Integer> completions = new LinkedHashMap<>();
+    private final List<CueCompletion> handled = new CopyOnWriteArrayList<>();
+    private CueCompletionPoller poller;
+
+    public CueCompletionPollerTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(4, 5000, 5000));
+        server.respondWith(new StubCueCloudServer.Responder() {
+            @Override
+            public String respond(StubCueCloudServer.Received request) {
+                return listing(request.uri);
+            }
+        });
+        poller = new CueCompletionPoller(cueCloud, new CueCompletionHandler() {
+            @Override
+            public void onCueCompletion(CueCompletion completion) {
+                handled.add(completion);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Answers <code>cues/</code> with every Cue, and <code>completions/</code> with a page of the Cue's completions.
+     */
+    private synchronized String listing(String uri) {
+        Map<String, String> query = new LinkedHashMap<>();
+        String rawQuery = URI.create(uri).getQuery();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                String[] parts = pair.split("=", 2);
+                query.put(parts[0], parts.length > 1 ? parts[1] : "");
+            }
+        }
+        int page = query.containsKey("Page") ? Integer.parseInt(query.get("Page")) : 1;
+        if (uri.contains("/cues/")) {
+            StringBuilder cues = new StringBuilder();
+            for (String cueID : completions.keySet()) {
+                cues.append(cues.length() == 0 ? "" : ",").append("{\"ID\": \"").append(cueID).append("\"}");
+            }
+            return "{\"Data\": {\"NumTotalResults\": " + completions.size() + ", \"Cues\": [" + (page == 1 ? cues : "") + "]}}";
+        }
+        String cueID = query.get("CueID");
+        int total = completions.get(cueID);
+        StringBuilder items = new StringBuilder();
+        for (int i = (page - 1) * 50; i < Math.min(total, page * 50); i++) {
+            items.append(items.length() == 0 ? "" : ",").append("{\"ID\": \"").append(cueID).append('-').append(i).append("\"}");
+        }
+        return "{\"Data\": {\"NumTotalResults\": " + total + ", \"CueCompletions\": [" + items + "]}}";
+    }
+
+    private synchronized void setCompletions(String cueID, int count) {
+        completions.put(cueID, count);
+    }
+
+    private List<String> completionRequests() {
+        List<String> uris = new ArrayList<>();
+        for (StubCueCloudServer.Received request : server.received()) {
+            if (request.uri.contains("/completions/")) {
+                uris.add(request.uri);
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Only new completions are handed over, and only the pages after the cursor are fetched.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDeltas() throws Exception {
+        System.out.println("deltas");
+        setCompletions("A", 120);
+        setCompletions("B", 3);
+        assertEquals(123, poller.poll().size());
+        assertEquals(123, handled.size());
+        assertEquals(120, poller.getCursor("A"));
+        assertEquals(3, poller.getCursor("B"));
+        assertEquals(0, poller.poll().size());
+        setCompletions("A", 125);
+        int before = completionRequests().size();
+        List<CueCompletion> found = poller.poll();
+        assertEquals(5, found.size());
+        assertEquals("A-120", found.get(0).getID());
+        assertEquals("A-124", found.get(4).getID());
+        List<String> requests = completionRequests().subList(before, completionRequests().size());
+        assertEquals(2, requests.size());
+        assertEquals(requests.get(0).contains("Page=3"), true);
+        assertEquals(requests.get(1).contains("Page=1"), true);
+    }
+
+    /**
+     * A restored cursor resumes where a previous poller stopped.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRestoredCursor() throws Exception {
+        System.out.println("restoredCursor");
+        setCompletions("A", 120);
+        poller.setCursor("A", 100);
+        List<CueCompletion> found = poller.poll();
+        assertEquals(20, found.size());
+        assertEquals("A-100", found.get(0).getID());
+        assertEquals(1, completionRequests().size());
+        assertEquals(completionRequests().get(0).contains("Page=3"), true);
+    }
+
+    /**
+     * A completion whose handler fails is not passed: the cursor stays before it, and the next poll
+     * hands it over again along with the ones after it.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFailedHandlerIsRetried() throws Exception {
+        System.out.println("failedHandlerIsRetried");
+        final AtomicBoolean failed = new AtomicBoolean();
+        poller = new CueCompletionPoller(cueCloud, new CueCompletionHandler() {
+            @Override
+            public void onCueCompletion(CueCompletion completion) throws Exception {
+                if (completion.getID().equals("A-5") && failed.compareAndSet(false, true)) {
+                    throw new Exception("Not now");
+                }
+            }
+        });
+        setCompletions("A", 8);
+        setCompletions("B", 2);
+        assertEquals(7, poller.poll().size());
+        assertEquals(5, poller.getCursor("A"));
+        assertEquals(2, poller.getCursor("B"));
+        List<CueCompletion> found = poller.poll();
+        assertEquals(3, found.size());
+        assertEquals("A-5", found.get(0).getID());
+        assertEquals(8, poller.getCursor("A"));
+    }
+
+    /**
+     * A listing shorter than the cursor breaks the assumption that completions are only ever appended,
+     * so the Cue is read again from the start.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testShrunkListingIsRescanned() throws Exception {
+        System.out.println("shrunkListingIsRescanned");
+        setCompletions("A", 120);
+        poller.setCursor("A", 120);
+        assertEquals(0, poller.poll().size());
+        setCompletions("A", 60);
+        List<CueCompletion> found = poller.poll();
+        assertEquals(60, found.size());
+        assertEquals("A-0", found.get(0).getID());
+        assertEquals(60, poller.getCursor("A"));
+    }
+
+    /**
+     * The interval is the longest while nothing arrives, shortens as completions arrive and grows with the target per poll.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testAdaptiveInterval() throws Exception {
+        System.out.println("adaptiveInterval");
+        poller.setIntervalBounds(10, 10000);
+        setCompletions("A", 0);
+        poller.poll();
+        assertEquals(10000, poller.getIntervalMillis());
+        setCompletions("A", 50);
+        Thread.sleep(50);
+        poller.poll();
+        assertEquals(poller.getArrivalsPerSecond() > 0, true);
+        long interval = poller.getIntervalMillis();
+        assertEquals(interval < 1000, true);
+        poller.setTargetCompletionsPerPoll(1000);
+        Thread.sleep(50);
+        poller.poll();
+        assertEquals(poller.getIntervalMillis() > interval, true);
+    }
+}
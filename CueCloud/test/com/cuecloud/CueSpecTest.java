@@ -0,0 +1,138 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CueSpec}, {@link CueCloud#createCue(CueSpec)} and {@link CueCloud#createCues(List)},
+ * run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class CueSpecTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private CueSpec template;
+
+    public CueSpecTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(8, 5000, 5000));
+        template = new CueSpec.Builder()
+                .setAmount(0.25)
+                .setNumOpportunities(10)
+                .setDisallowAnonymousCueCompletions(true)
+                .setLifetimeInMinutes(1440)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private static Map<String, Object> parse(String body) throws Exception {
+        return new JsonReader(new StringReader(body)).nextObject();
+    }
+
+    /**
+     * Specs derived from a template share its encoded settings until a setting changes.
+     */
+    @Test
+    public void testTemplateIsShared() {
+        System.out.println("templateIsShared");
+        CueSpec first = template.toBuilder().setTitle("First").setKeywords("a").build();
+        CueSpec second = template.toBuilder().setTitle("Second").setNoteToSelf("b").setDescription("c").build();
+        assertEquals(template.encodedSettings(), first.encodedSettings());
+        assertEquals(template.encodedSettings(), second.encodedSettings());
+        CueSpec changed = template.toBuilder().setTitle("Third").setAmount(0.5).build();
+        assertEquals(template.encodedSettings() != changed.encodedSettings(), true);
+        assertEquals(0.25, template.getAmount(), 0.0);
+        assertEquals(0.5, changed.getAmount(), 0.0);
+        assertEquals(null, template.getTitle());
+        assertEquals("Second", second.getTitle());
+        assertEquals(Integer.valueOf(1440), second.getLifetimeInMinutes());
+    }
+
+    /**
+     * The body holds every field set on the spec, and the positional method sends the same body.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCreateCue() throws Exception {
+        System.out.println("createCue");
+        cueCloud.createCue(template.toBuilder().setTitle("Label \"this\"").setDescription("Describe").setKeywords("cats,dogs").build());
+        StubCueCloudServer.Received request = server.lastReceived();
+        assertEquals("/api/v1.0/cues/create", request.uri);
+        Map<String, Object> body = parse(request.body);
+        assertEquals(7, body.size());
+        assertEquals("Label \"this\"", body.get("Title"));
+        assertEquals(0.25, body.get("Amount"));
+        assertEquals(10L, body.get("NumOpportunities"));
+        assertEquals(true, body.get("DisallowAnonymousCueCompletions"));
+        assertEquals(1440L, body.get("LifetimeInMinutes"));
+        assertEquals("Describe", body.get("Description"));
+        assertEquals("cats,dogs", body.get("Keywords"));
+        assertEquals(body.containsKey("NoteToSelf"), false);
+        CueCloudSigner signer = new CueCloudSigner("pass");
+        assertEquals(signer.sign(request.accessNonce, server.baseURL() + "cues/create", request.body.getBytes("UTF-8")), request.accessSignature);
+
+        cueCloud.createCue("Label \"this\"", 0.25, 10, "Describe", null, null, true, null, null, null, 1440, null, null, null, "cats,dogs");
+        assertEquals(body, parse(server.lastReceived().body));
+    }
+
+    /**
+     * Fields that are not set are left out of the body rather than sent as <code>null</code>.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testAbsentFieldsAreLeftOut() throws Exception {
+        System.out.println("absentFieldsAreLeftOut");
+        cueCloud.createCue(template.toBuilder().setTitle("Untitled").build());
+        String raw = server.lastReceived().body;
+        Map<String, Object> body = parse(raw);
+        assertEquals(body.containsKey("Description"), false);
+        assertEquals(body.containsKey("NoteToSelf"), false);
+        assertEquals(body.containsKey("IsAnonymous"), false);
+        assertEquals(body.containsKey("iFrameURL"), false);
+        assertEquals(raw.contains("null"), false);
+        assertEquals("Untitled", body.get("Title"));
+        assertEquals(1440L, body.get("LifetimeInMinutes"));
+    }
+
+    /**
+     * Every spec of a batch is created within the concurrency limit, with failures reported per spec.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCreateCues() throws Exception {
+        System.out.println("createCues");
+        server.delay(5);
+        server.failRequestsContaining("bad-");
+        List<CueSpec> specs = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            specs.add(template.toBuilder().setTitle((i % 10 == 0 ? "bad-" : "good-") + i).build());
+        }
+        CueCloudBatchResult<CueSpec> result = cueCloud.createCues(specs, 4);
+        assertEquals(30, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 4, true);
+        assertEquals(27, result.getSuccessCount());
+        assertEquals(specs.get(10), result.getFailed().get(1).getKey());
+        assertEquals(specs.get(1), result.getItems().get(1).getKey());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link InMemoryCueCloudMetrics} and {@link LatencyHistogram}, fed by {@link CueCloud} calls
+ * against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class InMemoryCueCloudMetricsTest {
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private InMemoryCueCloudMetrics metrics;
+
+    public InMemoryCueCloudMetricsTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(4, 5000, 5000));
+        metrics = new InMemoryCueCloudMetrics();
+        cueCloud.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Each call is timed per endpoint, with its status, connect and server time and sizes.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCallsAreMeasured() throws Exception {
+        System.out.println("callsAreMeasured");
+        String response = "{\"Data\": {\"Balance\": 3}}";
+        server.respondWith(200, response);
+        server.delay(10);
+        cueCloud.getBalance();
+        cueCloud.getBalance();
+        String withdrawal = cueCloud.withdrawFunds(2);
+        InMemoryCueCloudMetrics.EndpointMetrics balance = metrics.getEndpoint("balance/");
+        assertEquals(2, balance.getCallLatency().getCount());
+        assertEquals(2, balance.getStatusCount(200));
+        assertEquals(2, balance.getServerTime().getCount());
+        assertEquals(balance.getServerTime().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(10), true);
+        assertEquals(2L * response.length(), balance.getBytesReceived());
+        assertEquals(0, balance.getBytesSent());
+        InMemoryCueCloudMetrics.EndpointMetrics withdraw = metrics.getEndpoint("payments/withdraw/");
+        assertEquals((long) server.lastReceived().body.length(), withdraw.getBytesSent());
+        assertEquals((long) withdrawal.length(), withdraw.getBytesReceived());
+        assertEquals(2, metrics.getEndpoints().size());
+    }
+
+    /**
+     * Error statuses and retries are counted; the call is timed once across its attempts.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRetriesAndStatuses() throws Exception {
+        System.out.println("retriesAndStatuses");
+        cueCloud.setRetryPolicy(new CueCloudRetryPolicy(3, 1, 2, CueCloudRetryPolicy.DEFAULT_RETRY_ON_STATUS));
+        server.failNext(2, 503);
+        cueCloud.getCues(null, null, null, null, null, 1);
+        server.failNext(1, 404);
+        try {
+            cueCloud.getCues(null, null, null, null, null, 2);
+            fail("Expected the call to fail");
+        } catch (CueCloud.CueCloudException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+        InMemoryCueCloudMetrics.EndpointMetrics cues = metrics.getEndpoint("cues/");
+        assertEquals(2, cues.getCallLatency().getCount());
+        assertEquals(2, cues.getRetryCount());
+        assertEquals(2, cues.getStatusCount(503));
+        assertEquals(1, cues.getStatusCount(404));
+        assertEquals(1, cues.getStatusCount(200));
+    }
+
+    /**
+     * Calls answered from the cache are timed but send no request.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCacheHitsAreTimed() throws Exception {
+        System.out.println("cacheHitsAreTimed");
+        cueCloud.setCache(new CueCloudCache());
+        cueCloud.getKeywords();
+        cueCloud.getKeywords();
+        InMemoryCueCloudMetrics.EndpointMetrics keywords = metrics.getEndpoint("cues/keywords/");
+        assertEquals(2, keywords.getCallLatency().getCount());
+        assertEquals(1, keywords.getConnectTime().getCount());
+    }
+
+    /**
+     * Connection pool usage is reported per host.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPoolUsage() throws Exception {
+        System.out.println("poolUsage");
+        cueCloud.validateUser();
+        assertEquals(1, metrics.getPools().size());
+        InMemoryCueCloudMetrics.PoolMetrics pool = metrics.getPools().values().iterator().next();
+        assertEquals(4, pool.getCapacity());
+        assertEquals(1, pool.getPeakInUse());
+        assertEquals(0.25, pool.getPeakUtilisation(), 0.0);
+    }
+
+    /**
+     * Percentiles are accurate to within the bucket resolution.
+     */
+    @Test
+    public void testHistogramPercentiles() {
+        System.out.println("histogramPercentiles");
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMaxNanos());
+        long median = histogram.getPercentileNanos(50);
+        assertEquals(median >= TimeUnit.MICROSECONDS.toNanos(500) && median <= TimeUnit.MICROSECONDS.toNanos(600), true);
+        long p99 = histogram.getPercentileNanos(99);
+        assertEquals(p99 >= TimeUnit.MICROSECONDS.toNanos(990) && p99 <= TimeUnit.MICROSECONDS.toNanos(1000), true);
+        assertEquals(histogram.getMeanNanos(), TimeUnit.MICROSECONDS.toNanos(1001) / 2);
+    }
+}
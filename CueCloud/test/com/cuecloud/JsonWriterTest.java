@@ -0,0 +1,178 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonWriter}: its output must match flexjson byte for byte, so requests are unchanged on the wire.
+ *
+ * @author nmvictor
+ */
+public class JsonWriterTest {
+
+    private StubCueCloudServer server;
+
+    public JsonWriterTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private static String write(Map<String, Object> map) {
+        JsonWriter writer = new JsonWriter(4);
+        writer.writeObject(map);
+        return new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameAsFlexjson(Map<String, Object> map) {
+        assertEquals(JsonWriter.isSupported(map), true);
+        assertEquals(new flexjson.JSONSerializer().serialize(map), write(map));
+    }
+
+    /**
+     * Every kind of value the API methods send is encoded as flexjson does.
+     */
+    @Test
+    public void testScalars() {
+        System.out.println("scalars");
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("Title", "Label this image");
+        map.put("Amount", 1.0);
+        map.put("Big", 1e21);
+        map.put("Small", 0.0001);
+        map.put("NumOpportunities", 5);
+        map.put("Long", Long.MAX_VALUE);
+        map.put("IsAnonymous", true);
+        map.put("Status", CueCloud.CueStatus.Active);
+        map.put("NoteToSelf", null);
+        map.put("Char", 'c');
+        map.put("Nested", Collections.singletonMap("k", "v"));
+        assertSameAsFlexjson(map);
+    }
+
+    /**
+     * Strings are escaped as flexjson does, and other characters are encoded as UTF-8.
+     */
+    @Test
+    public void testStrings() {
+        System.out.println("strings");
+        StringBuilder all = new StringBuilder();
+        for (char c = 0; c < 0x100; c++) {
+            all.append(c);
+        }
+        all.append("\u20ac\u2028\ud83d\ude00\uffff");
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("All", all.toString());
+        map.put("Quote\"Key", "a\\b/c");
+        assertSameAsFlexjson(map);
+        map.put("Unpaired", "x\ud83dy");
+        assertEquals(new String(new flexjson.JSONSerializer().serialize(map).getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), write(map));
+    }
+
+    /**
+     * Unordered maps are written in iteration order, like flexjson.
+     */
+    @Test
+    public void testHashMap() {
+        System.out.println("hashMap");
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            map.put("Key" + i, i % 2 == 0 ? (Object) ("value " + i) : (Object) (i * 0.5));
+        }
+        assertSameAsFlexjson(map);
+    }
+
+    /**
+     * Payloads with values flexjson treats specially are left to flexjson.
+     */
+    @Test
+    public void testUnsupported() {
+        System.out.println("unsupported");
+        assertEquals(JsonWriter.isSupported("text"), false);
+        assertEquals(JsonWriter.isSupported(Collections.singletonMap("List", Arrays.asList(1, 2))), false);
+        assertEquals(JsonWriter.isSupported(Collections.singletonMap(1, "v")), false);
+        assertEquals(JsonWriter.isSupported(Collections.singletonMap("Object", new Object())), false);
+    }
+
+    /**
+     * Resetting reuses the buffer; a buffer grown by a large payload is released.
+     */
+    @Test
+    public void testReset() {
+        System.out.println("reset");
+        JsonWriter writer = new JsonWriter();
+        writer.writeObject(Collections.singletonMap("a", "b"));
+        byte[] buffer = writer.buffer();
+        writer.reset();
+        writer.writeObject(Collections.singletonMap("c", "d"));
+        assertEquals(buffer, writer.buffer());
+        assertEquals("{\"c\":\"d\"}", new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8));
+        char[] large = new char[100000];
+        Arrays.fill(large, 'x');
+        writer.writeObject(Collections.singletonMap("e", new String(large)));
+        writer.reset();
+        assertEquals(writer.buffer().length < 100000, true);
+    }
+
+    /**
+     * Objects written member by member, with members encoded earlier, are well formed.
+     */
+    @Test
+    public void testMembers() {
+        System.out.println("members");
+        JsonWriter writer = new JsonWriter();
+        writer.writeMember("a", 1);
+        writer.writeMember("b", Collections.emptyMap());
+        byte[] members = writer.toByteArray();
+        writer.reset();
+        writer.beginObject();
+        writer.writeRaw(new byte[0]);
+        writer.writeMember("x", "y");
+        writer.writeRaw(members);
+        writer.writeMember("z", null);
+        writer.endObject();
+        assertEquals("{\"x\":\"y\",\"a\":1,\"b\":{},\"z\":null}", new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The encoded body is what the server receives, and it is what was signed.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRequestBody() throws Exception {
+        System.out.println("requestBody");
+        CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(2, 5000, 5000));
+        cueCloud.grantBonus("completion-\u00e9", 1.25, "Great \"work\"", null);
+        StubCueCloudServer.Received request = server.lastReceived();
+        // Members in the order the endpoint declares them; the absent note to self is left out.
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("Amount", 1.25);
+        expected.put("CueCompletionID", "completion-\u00e9");
+        expected.put("Reason", "Great \"work\"");
+        assertEquals(new flexjson.JSONSerializer().serialize(expected), request.body);
+        CueCloudSigner signer = new CueCloudSigner("pass");
+        assertEquals(signer.sign(request.accessNonce, server.baseURL() + "payments/bonus/", request.body.getBytes(StandardCharsets.UTF_8)), request.accessSignature);
+        cueCloud.withdrawFunds(2);
+        assertEquals("{\"AmountInUSD\":2.0}", server.lastReceived().body);
+    }
+}
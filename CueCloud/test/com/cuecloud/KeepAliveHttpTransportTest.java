@@ -0,0 +1,174 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link KeepAliveHttpTransport}, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class KeepAliveHttpTransportTest {
+
+    private StubCueCloudServer server;
+
+    public KeepAliveHttpTransportTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Requests carry the credentials and signature headers and return the response body.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSignedRequestReachesServer() throws Exception {
+        System.out.println("signedRequestReachesServer");
+        server.respondWith(200, "{\"Data\": {\"Balance\": 12.5}, \"StatusCode\": 200}");
+        CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport());
+        String result = cueCloud.getBalance();
+        assertEquals(result.contains("12.5"), true);
+        StubCueCloudServer.Received request = server.lastReceived();
+        assertEquals("GET", request.method);
+        assertEquals("/api/v1.0/balance/", request.uri);
+        assertEquals("key", request.accessKey);
+        assertEquals(request.accessSignature.length(), 64);
+    }
+
+    /**
+     * Sequential calls on one instance reuse a single keep-alive connection, including after an error response.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        System.out.println("connectionIsReused");
+        CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport());
+        for (int i = 0; i < 10; i++) {
+            cueCloud.getKeywords();
+        }
+        server.respondWith(500, "{\"Message\": \"boom\", \"StatusCode\": 500}");
+        try {
+            cueCloud.getKeywords();
+            fail("Expected CueCloudException");
+        } catch (CueCloud.CueCloudException expected) {
+            assertEquals(expected.getMessage().contains("500"), true);
+        }
+        server.respondWith(200, "{\"Data\": {}, \"StatusCode\": 200}");
+        cueCloud.getKeywords();
+        assertEquals(12, server.received().size());
+        assertEquals(1, server.connectionCount());
+    }
+
+    /**
+     * Concurrent callers never have more requests in flight against one host than the pool allows.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testConnectionsPerHostAreBounded() throws Exception {
+        System.out.println("connectionsPerHostAreBounded");
+        server.delay(20);
+        final CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(2, 5000, 5000));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return cueCloud.validateUser();
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(32, server.received().size());
+        assertEquals(server.maxConcurrentRequests() <= 2, true);
+        assertEquals(server.connectionCount() <= 2, true);
+    }
+
+    /**
+     * Compressed responses, in any of the accepted encodings, are inflated as they are read and keep the connection reusable.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompressedResponses() throws Exception {
+        System.out.println("compressedResponses");
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            items.append(i == 0 ? "" : ",").append("{\"ID\": \"c-").append(i).append("\", \"Status\": \"Pending\", \"AnswerText\": \"A cat on a mat\"}");
+        }
+        server.respondWith(200, "{\"Data\": {\"NumTotalResults\": 50, \"CueCompletions\": [" + items + "]}, \"StatusCode\": 200}");
+        KeepAliveHttpTransport transport = new KeepAliveHttpTransport();
+        CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), transport);
+        for (String encoding : new String[]{"gzip", "deflate", "raw-deflate"}) {
+            server.compressResponses(encoding);
+            Page<CueCompletion> page = cueCloud.fetchCueCompletions("cue-1", null, null, 1);
+            assertEquals(50, page.getItems().size());
+            assertEquals("c-49", page.getItems().get(49).getID());
+        }
+        assertEquals("gzip, deflate", server.lastReceived().acceptEncoding);
+        server.respondWith(500, "{\"Message\": \"boom\", \"StatusCode\": 500}");
+        try {
+            cueCloud.getKeywords();
+            fail("Expected CueCloudException");
+        } catch (CueCloud.CueCloudException expected) {
+            assertEquals(500, expected.getStatusCode());
+        }
+        assertEquals(1, server.connectionCount());
+        assertEquals(transport.getBytesReceived() * 5 < transport.getDecodedBytesReceived(), true);
+    }
+
+    /**
+     * With request compression on, large bodies are sent gzipped and signed as the server reads them; small ones are sent as they are.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompressedRequests() throws Exception {
+        System.out.println("compressedRequests");
+        KeepAliveHttpTransport transport = new KeepAliveHttpTransport();
+        transport.setRequestCompressionMinBytes(256);
+        CueCloud cueCloud = new CueCloud("key", "pass", server.baseURL(), transport);
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            description.append("Describe the picture in one sentence. ");
+        }
+        cueCloud.createCue(new CueSpec.Builder().setTitle("Picture").setAmount(0.5).setNumOpportunities(3)
+                .setDescription(description.toString()).build());
+        StubCueCloudServer.Received request = server.lastReceived();
+        assertEquals("gzip", request.contentEncoding);
+        assertEquals(request.body.contains(description.toString()), true);
+        CueCloudSigner signer = new CueCloudSigner("pass");
+        assertEquals(signer.sign(request.accessNonce, server.baseURL() + "cues/create", request.body.getBytes(StandardCharsets.UTF_8)), request.accessSignature);
+        assertEquals(transport.getBytesSent() * 5 < transport.getUncompressedBytesSent(), true);
+        cueCloud.withdrawFunds(5);
+        assertEquals(server.lastReceived().contentEncoding, null);
+        assertEquals(server.lastReceived().body.contains("AmountInUSD"), true);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the paginated iterators of {@link CueCloud}, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class PagedIterableTest {
+
+    private static final Pattern PAGE = Pattern.compile("Page=(\\d+)");
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+
+    public PagedIterableTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport());
+        // 7 Cues, served 3 per page.
+        server.respondWith(new StubCueCloudServer.Responder() {
+            @Override
+            public String respond(StubCueCloudServer.Received request) {
+                Matcher matcher = PAGE.matcher(request.uri);
+                int page = matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+                StringBuilder cues = new StringBuilder();
+                for (int id = (page - 1) * 3 + 1; id <= Math.min(page * 3, 7); id++) {
+                    cues.append(cues.length() == 0 ? "" : ", ").append("{\"ID\": ").append(id).append("}");
+                }
+                return "{\"Data\": {\"NumTotalResults\": 7, \"Cues\": [" + cues + "]}, \"StatusCode\": 200}";
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * All items are returned, pages are only fetched as needed and iteration stops after the last page.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testIterateCues() throws Exception {
+        System.out.println("iterateCues");
+        List<Object> ids = new ArrayList<>();
+        for (Cue cue : cueCloud.iterateCues(null, null, null, CueCloud.CueStatus.Active, null)) {
+            ids.add(cue.getID());
+            assertEquals((ids.size() + 2) / 3, server.received().size());
+        }
+        assertEquals(7, ids.size());
+        assertEquals(3, server.received().size());
+    }
+
+    /**
+     * With prefetching, the next page is already requested while the current one is consumed.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPrefetch() throws Exception {
+        System.out.println("prefetch");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int count = 0;
+            for (Cue cue : cueCloud.iterateCues(null, null, null, null, null).prefetchingOn(executor)) {
+                count++;
+                if (count == 1) {
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (server.received().size() < 2 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(5);
+                    }
+                    assertEquals(2, server.received().size());
+                }
+            }
+            assertEquals(7, count);
+            assertEquals(3, server.received().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Closing an iterator abandoned before the end cancels the page being prefetched.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCloseCancelsPrefetch() throws Exception {
+        System.out.println("closeCancelsPrefetch");
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        PagedIterable<Integer> pages = new PagedIterable<>(new PagedIterable.PageSource<Integer>() {
+            @Override
+            public Page<Integer> fetch(int pageNumber) {
+                if (pageNumber == 2) {
+                    fetching.countDown();
+                    try {
+                        new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        cancelled.countDown();
+                    }
+                }
+                return new Page<>(pageNumber, 6, Arrays.asList(pageNumber * 3 - 2, pageNumber * 3 - 1, pageNumber * 3));
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            try (PagedIterable.CloseableIterator<Integer> it = pages.prefetchingOn(executor).iterator()) {
+                assertEquals(Integer.valueOf(1), it.next());
+                assertEquals(fetching.await(5, TimeUnit.SECONDS), true);
+            }
+            assertEquals(cancelled.await(5, TimeUnit.SECONDS), true);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A failing page surfaces as a PageFetchException.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFetchFailure() throws Exception {
+        System.out.println("fetchFailure");
+        server.failRequestsContaining("Page=2");
+        int count = 0;
+        try {
+            for (Cue cue : cueCloud.iterateCues(null, null, null, null, null)) {
+                count++;
+            }
+            fail("Expected PageFetchException");
+        } catch (PagedIterable.PageFetchException expected) {
+            assertEquals(expected.getCause() instanceof CueCloud.CueCloudException, true);
+        }
+        assertEquals(3, count);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for coalescing identical concurrent reads with {@link SingleFlight}, run against {@link StubCueCloudServer}.
+ *
+ * @author nmvictor
+ */
+public class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    private StubCueCloudServer server;
+    private CueCloud cueCloud;
+    private ExecutorService executor;
+
+    public SingleFlightTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubCueCloudServer();
+        cueCloud = new CueCloud("key", "pass", server.baseURL(), new KeepAliveHttpTransport(THREADS, 5000, 5000));
+        cueCloud.setCoalescingReads(true);
+        executor = Executors.newFixedThreadPool(THREADS);
+        server.delay(200);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    private List<Future<String>> getCuesConcurrently(final boolean distinct) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int page = distinct ? i + 1 : 1;
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    start.await();
+                    return cueCloud.getCues("cue-1", null, null, null, null, page);
+                }
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    /**
+     * Concurrent identical GETs share one request and its response.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testIdenticalReadsShareRequest() throws Exception {
+        System.out.println("identicalReadsShareRequest");
+        server.respondWith(200, "{\"Data\": {\"Cues\": []}}");
+        for (Future<String> future : getCuesConcurrently(false)) {
+            assertEquals("{\"Data\": {\"Cues\": []}}", future.get());
+        }
+        assertEquals(1, server.received().size());
+        assertEquals(THREADS - 1, cueCloud.getCoalescedReadCount());
+    }
+
+    /**
+     * Reads of different URLs are not coalesced.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDifferentReadsAreSeparate() throws Exception {
+        System.out.println("differentReadsAreSeparate");
+        for (Future<String> future : getCuesConcurrently(true)) {
+            future.get();
+        }
+        assertEquals(THREADS, server.received().size());
+        assertEquals(0, cueCloud.getCoalescedReadCount());
+    }
+
+    /**
+     * A failed shared request fails every caller waiting for it.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFailureIsShared() throws Exception {
+        System.out.println("failureIsShared");
+        server.failNext(1, 503);
+        for (Future<String> future : getCuesConcurrently(false)) {
+            try {
+                future.get();
+                fail("Expected the call to fail");
+            } catch (ExecutionException e) {
+                assertEquals(503, ((CueCloud.CueCloudException) e.getCause()).getStatusCode());
+            }
+        }
+        assertEquals(1, server.received().size());
+        cueCloud.getCues("cue-1", null, null, null, null, 1);
+        assertEquals(2, server.received().size());
+    }
+
+    /**
+     * An error thrown by the shared call is rethrown to the callers that waited for it, rather than
+     * leaving them with no result and no failure.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testErrorIsShared() throws Exception {
+        System.out.println("errorIsShared");
+        final SingleFlight<String> flights = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<SingleFlight.Flight<String>> leader = executor.submit(new Callable<SingleFlight.Flight<String>>() {
+            @Override
+            public SingleFlight.Flight<String> call() throws Exception {
+                return flights.execute("key", new SingleFlight.Call<String>() {
+                    @Override
+                    public String call() {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw new StackOverflowError();
+                    }
+                });
+            }
+        });
+        Future<SingleFlight.Flight<String>> follower = executor.submit(new Callable<SingleFlight.Flight<String>>() {
+            @Override
+            public SingleFlight.Flight<String> call() throws Exception {
+                started.await();
+                return flights.execute("key", new SingleFlight.Call<String>() {
+                    @Override
+                    public String call() {
+                        return "not shared";
+                    }
+                });
+            }
+        });
+        while (flights.getSharedCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        try {
+            leader.get();
+            fail("Expected the leader's call to fail");
+        } catch (ExecutionException e) {
+            assertEquals(e.getCause() instanceof StackOverflowError, true);
+        }
+        SingleFlight.Flight<String> shared = follower.get();
+        assertEquals(shared.isShared(), true);
+        try {
+            shared.getValue();
+            fail("Expected the error to be shared");
+        } catch (StackOverflowError e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Without coalescing every caller sends its own request.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        System.out.println("disabled");
+        cueCloud.setCoalescingReads(false);
+        for (Future<String> future : getCuesConcurrently(false)) {
+            future.get();
+        }
+        assertEquals(THREADS, server.received().size());
+    }
+}
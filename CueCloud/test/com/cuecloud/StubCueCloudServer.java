@@ -0,0 +1,240 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package com.cuecloud;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process HTTP server standing in for the CueCloud API in tests.
+ * Every request is answered with the configured status and body, and recorded.
+ *
+ * @author nmvictor
+ */
+class StubCueCloudServer {
+
+    /**
+     * A request received by the stub.
+     */
+    static class Received {
+        final String method;
+        final String uri;
+        final String accessKey;
+        final String accessNonce;
+        final String accessSignature;
+        final String idempotencyKey;
+        final String acceptEncoding;
+        final String contentEncoding;
+        final String body;
+
+        Received(HttpExchange exchange, String body) {
+            this.method = exchange.getRequestMethod();
+            this.uri = exchange.getRequestURI().toString();
+            this.accessKey = exchange.getRequestHeaders().getFirst("Access-Key");
+            this.accessNonce = exchange.getRequestHeaders().getFirst("Access-Nonce");
+            this.accessSignature = exchange.getRequestHeaders().getFirst("Access-Signature");
+            this.idempotencyKey = exchange.getRequestHeaders().getFirst(CueCloud.IDEMPOTENCY_KEY_HEADER);
+            this.acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            this.contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            this.body = body;
+        }
+    }
+
+    /**
+     * Computes the response body for a request.
+     */
+    interface Responder {
+        String respond(Received request);
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Received> received = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile String responseBody = "{\"Data\": {}, \"StatusCode\": 200}";
+    private volatile long delayMillis;
+    private volatile String failMarker;
+    private volatile Responder responder;
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile String responseEncoding;
+
+    static {
+        // Otherwise Nagle's algorithm delays every response by ~40ms.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    StubCueCloudServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int concurrent = inFlight.incrementAndGet();
+                boolean counted = true;
+                try {
+                    int max;
+                    while (concurrent > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, concurrent)) {
+                        // retry
+                    }
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                    InputStream requestBody = exchange.getRequestBody();
+                    if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                        requestBody = new GZIPInputStream(requestBody);
+                    }
+                    Received request = new Received(exchange, read(requestBody));
+                    received.add(request);
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    String marker = failMarker;
+                    int code = status;
+                    boolean fail = false;
+                    if (failuresLeft.getAndDecrement() > 0) {
+                        fail = true;
+                        code = failureStatus;
+                    } else if (marker != null && (request.body.contains(marker) || request.uri.contains(marker))) {
+                        fail = true;
+                        code = 500;
+                    }
+                    Responder current = responder;
+                    String body = fail ? "{\"StatusCode\": " + code + "}" : current != null ? current.respond(request) : responseBody;
+                    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                    String encoding = responseEncoding;
+                    if (encoding != null && request.acceptEncoding != null && request.acceptEncoding.contains(encoding.replace("raw-", ""))) {
+                        bytes = compress(bytes, encoding);
+                        exchange.getResponseHeaders().set("Content-Encoding", encoding.replace("raw-", ""));
+                    }
+                    // The client may send its next request as soon as it has read this response.
+                    inFlight.decrementAndGet();
+                    counted = false;
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(code, bytes.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(bytes);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (counted) {
+                        inFlight.decrementAndGet();
+                    }
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = "gzip".equals(encoding) ? new GZIPOutputStream(out)
+                : new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, "raw-deflate".equals(encoding)))) {
+            compressed.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The base URL to hand to {@link CueCloud}, ending with a slash.
+     */
+    String baseURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1.0/";
+    }
+
+    void respondWith(int status, String body) {
+        this.status = status;
+        this.responseBody = body;
+    }
+
+    void respondWith(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * Answer requests whose URI or body contains <code>marker</code> with a 500.
+     */
+    void failRequestsContaining(String marker) {
+        this.failMarker = marker;
+    }
+
+    /**
+     * Answer the next <code>count</code> requests with <code>status</code>, then respond as configured again.
+     */
+    void failNext(int count, int status) {
+        this.failureStatus = status;
+        this.failuresLeft.set(count);
+    }
+
+    /**
+     * Compress responses to clients that accept <code>encoding</code>: <code>gzip</code>, <code>deflate</code>,
+     * or <code>raw-deflate</code> for deflate data without the zlib wrapper, sent as <code>deflate</code>.
+     */
+    void compressResponses(String encoding) {
+        this.responseEncoding = encoding;
+    }
+
+    void delay(long millis) {
+        this.delayMillis = millis;
+    }
+
+    List<Received> received() {
+        return received;
+    }
+
+    Received lastReceived() {
+        return received.get(received.size() - 1);
+    }
+
+    /**
+     * @return Number of distinct client sockets that sent requests.
+     */
+    int connectionCount() {
+        return clientPorts.size();
+    }
+
+    int maxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}